@@ -0,0 +1,317 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * The hot paths that are measured by the JMH benchmarks (in the "benchmark" package.)
+ * 
+ * Telemetry Viewer is in the default package, which can not be imported from a named package, and JMH does not allow benchmarks in the default package.
+ * So each workload is prepared here, and returned as a Supplier that the benchmark gets (once, during setup) with reflection.
+ * Calling the Supplier is an ordinary interface call, so it does not add measurable overhead.
+ * 
+ * The samples are stored in the DatasetsController, which is static, so every benchmark must run in its own JVM. (JMH forks one JVM per benchmark by default.)
+ */
+public class Workloads {
+	
+	private static final Path cacheDir = Paths.get("cache");
+	
+	/**
+	 * Creates the cache directory and defines a data structure with some float datasets, like the GUI does before receiving telemetry.
+	 * 
+	 * @param datasetCount    Number of datasets.
+	 */
+	private static void defineDatasets(int datasetCount) {
+		
+		try { Files.createDirectory(cacheDir); } catch(FileAlreadyExistsException e) {} catch(IOException e) { throw new UncheckedIOException(e); }
+		
+		DatasetsController.removeAllDatasets();
+		for(int i = 0; i < datasetCount; i++)
+			DatasetsController.insertDataset(i, getProcessor("float32 LSB First"), "Dataset " + i, Color.getHSBColor((float) i / datasetCount, 1, 1), "Volts", 1, 1);
+			
+	}
+	
+	/**
+	 * @param name    Name of a BinaryFieldProcessor, such as "float32 LSB First".
+	 * @return        The BinaryFieldProcessor.
+	 */
+	private static BinaryFieldProcessor getProcessor(String name) {
+		
+		for(BinaryFieldProcessor processor : PacketBinary.getBinaryFieldProcessors())
+			if(processor.toString().equals(name))
+				return processor;
+		
+		throw new IllegalArgumentException("Unknown processor: " + name);
+		
+	}
+	
+	/**
+	 * Appends random samples (a random walk, so the min/max pyramids are realistic) with a timestamp every millisecond.
+	 * 
+	 * @param sampleCount    Number of samples for each dataset.
+	 */
+	private static void appendRandomSamples(int sampleCount) {
+		
+		Random random = new Random(0);
+		int datasetCount = DatasetsController.getDatasetsCount();
+		float[][] values = new float[datasetCount][DatasetsController.BATCH_SIZE];
+		long[] timestamps = new long[DatasetsController.BATCH_SIZE];
+		float[] previous = new float[datasetCount];
+		long timestamp = 1600000000000L;
+		
+		for(int sampleN = 0; sampleN < sampleCount; sampleN += DatasetsController.BATCH_SIZE) {
+			int count = Integer.min(DatasetsController.BATCH_SIZE, sampleCount - sampleN);
+			for(int i = 0; i < count; i++) {
+				for(int datasetN = 0; datasetN < datasetCount; datasetN++) {
+					previous[datasetN] += (float) random.nextGaussian();
+					values[datasetN][i] = previous[datasetN];
+				}
+				timestamps[i] = timestamp++;
+			}
+			DatasetsController.appendSamples(values, timestamps, count);
+		}
+		
+	}
+	
+	/**
+	 * Removes the datasets, their cache files, and the cache directory if it is empty.
+	 */
+	public static void tearDown() {
+		
+		DatasetsController.removeAllDatasets();
+		try { Files.deleteIfExists(cacheDir); } catch(IOException e) { }
+		
+	}
+	
+	/**
+	 * Decodes binary packets, the way the Binary Packet Processor thread does: skip to the sync word, then extract each field into a batch.
+	 * 
+	 * @param processorName    Name of a BinaryFieldProcessor, such as "float32 LSB First".
+	 * @param fieldCount       Number of fields in each packet.
+	 * @param packetCount      Number of packets decoded by each call.
+	 * @return                 The workload. It returns the batch.
+	 */
+	public static Supplier<Object> binaryDecode(String processorName, int fieldCount, int packetCount) {
+		
+		BinaryFieldProcessor processor = getProcessor(processorName);
+		int packetSize = 1 + fieldCount * processor.getByteCount();
+		byte[] bytes = new byte[packetSize * packetCount];
+		Random random = new Random(0);
+		random.nextBytes(bytes);
+		for(int packetN = 0; packetN < packetCount; packetN++)
+			bytes[packetN * packetSize] = (byte) 0xAA;
+		
+		BinaryFieldProcessor fieldProcessor = processor;
+		float[][] batch = new float[fieldCount][packetCount];
+		return () -> {
+			int packetN = 0;
+			int start = 0;
+			while(true) {
+				while(start < bytes.length && bytes[start] != (byte) 0xAA)
+					start++;
+				if(bytes.length - start < packetSize)
+					break;
+				for(int fieldN = 0; fieldN < fieldCount; fieldN++)
+					batch[fieldN][packetN] = fieldProcessor.extractValue(bytes, start + 1 + fieldN * fieldProcessor.getByteCount());
+				packetN++;
+				start += packetSize;
+			}
+			return batch;
+		};
+		
+	}
+	
+	/**
+	 * Parses CSV lines with the CsvTokenizer, the way the CSV Packet Processor thread does.
+	 * 
+	 * @param columnCount    Number of columns in each line.
+	 * @param lineCount      Number of lines parsed by each call.
+	 * @return               The workload. It returns the batch.
+	 */
+	public static Supplier<Object> csvParse(int columnCount, int lineCount) {
+		
+		Random random = new Random(0);
+		CsvFormatter text = new CsvFormatter(lineCount * columnCount * 12);
+		for(int lineN = 0; lineN < lineCount; lineN++) {
+			for(int columnN = 0; columnN < columnCount; columnN++) {
+				if(columnN > 0)
+					text.appendCharacter(',');
+				text.appendFloat((float) random.nextGaussian() * 100);
+			}
+			text.appendCharacter('\n');
+		}
+		ByteBuffer bytes = text.getBytes();
+		
+		float[][] batch = new float[columnCount][lineCount];
+		return () -> {
+			CsvTokenizer tokenizer = new CsvTokenizer(bytes.duplicate());
+			int lineN = 0;
+			try {
+				while(tokenizer.readLine()) {
+					for(int columnN = 0; columnN < columnCount; columnN++)
+						batch[columnN][lineN] = tokenizer.getFloat(columnN);
+					lineN++;
+				}
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return batch;
+		};
+		
+	}
+	
+	/**
+	 * Appends batches of samples to the datasets. The samples are removed every few million samples, so the cache files do not fill the disk.
+	 * This is the storage path that every receiver and importer uses. (It replaced DatasetsController.flushIfNecessary().)
+	 * 
+	 * @param datasetCount    Number of datasets.
+	 * @param batchSize       Number of samples appended by each call.
+	 * @return                The workload. It returns the new sample count.
+	 */
+	public static Supplier<Object> appendSamples(int datasetCount, int batchSize) {
+		
+		defineDatasets(datasetCount);
+		
+		float[][] values = new float[datasetCount][batchSize];
+		Random random = new Random(0);
+		for(float[] dataset : values)
+			for(int i = 0; i < batchSize; i++)
+				dataset[i] = (float) random.nextGaussian();
+		int maxSampleCount = 8 * DatasetsController.SLOT_SIZE;
+		
+		return () -> {
+			if(DatasetsController.getSampleCount() > maxSampleCount)
+				DatasetsController.removeAllData();
+			DatasetsController.appendSamples(values, null, batchSize);
+			return DatasetsController.getSampleCount();
+		};
+		
+	}
+	
+	/**
+	 * Gets the min/max of a range of samples, which uses the min/max pyramid.
+	 * 
+	 * @param sampleCount    Number of samples in the dataset.
+	 * @param rangeLength    Number of samples in each range. The ranges are at random positions.
+	 * @return               The workload. It returns the MinMax.
+	 */
+	public static Supplier<Object> getRange(int sampleCount, int rangeLength) {
+		
+		defineDatasets(1);
+		appendRandomSamples(sampleCount);
+		
+		Dataset dataset = DatasetsController.getDatasetByIndex(0);
+		Random random = new Random(0);
+		return () -> {
+			int first = random.nextInt(sampleCount - rangeLength + 1);
+			return dataset.getRange(first, first + rangeLength - 1);
+		};
+		
+	}
+	
+	/**
+	 * Gets a buffer of samples, like the charts do before drawing them.
+	 * 
+	 * @param sampleCount     Number of samples in the dataset.
+	 * @param bufferLength    Number of samples in each buffer. The buffers are at random positions, so some of them span two Slots and must be copied.
+	 * @return                The workload. It returns the FloatBuffer.
+	 */
+	public static Supplier<Object> getBuffer(int sampleCount, int bufferLength) {
+		
+		defineDatasets(1);
+		appendRandomSamples(sampleCount);
+		
+		Dataset dataset = DatasetsController.getDatasetByIndex(0);
+		Random random = new Random(0);
+		return () -> {
+			int first = random.nextInt(sampleCount - bufferLength + 1);
+			return dataset.getBuffer(first, first + bufferLength - 1);
+		};
+		
+	}
+	
+	/**
+	 * Calculates the DFT of a window of samples, the way the frequency domain charts do.
+	 * 
+	 * @param windowLength    Number of samples in the window.
+	 * @return                The workload. It returns the power levels.
+	 */
+	public static Supplier<Object> calculateDft(int windowLength) {
+		
+		float[] samples = new float[windowLength];
+		Random random = new Random(0);
+		for(int i = 0; i < windowLength; i++)
+			samples[i] = (float) (Math.sin(i * 0.1) + random.nextGaussian() * 0.1);
+		
+		FFT fft = new FFT(windowLength);
+		int binCount = windowLength / 2 + 1;
+		return () -> OpenGLFrequencyDomainCache.calculateDFT(fft, binCount, samples);
+		
+	}
+	
+	/**
+	 * Finds the bitfield edges and levels in a range of samples, the way the time domain charts do for every frame.
+	 * 
+	 * @param sampleCount    Number of samples in the range.
+	 * @return               The workload. It returns the BitfieldEvents.
+	 */
+	public static Supplier<Object> bitfieldEvents(int sampleCount) {
+		
+		defineDatasets(0);
+		DatasetsController.insertDataset(0, getProcessor("Bitfield: 8 Bits"), "Status", Color.RED, "", 1, 1);
+		Dataset dataset = DatasetsController.getDatasetByIndex(0);
+		List<Dataset.Bitfield.State> states = new ArrayList<Dataset.Bitfield.State>();
+		for(int bit = 0; bit < 8; bit++)
+			for(Dataset.Bitfield.State state : dataset.addBitfield(bit, bit).states)
+				states.add(state);
+		
+		// each bit changes about once every 1000 samples
+		Random random = new Random(0);
+		float[][] values = new float[1][sampleCount];
+		int value = 0;
+		for(int i = 0; i < sampleCount; i++) {
+			if(random.nextInt(125) == 0)
+				value ^= 1 << random.nextInt(8);
+			values[0][i] = value;
+		}
+		DatasetsController.appendSamples(values, null, sampleCount);
+		
+		return () -> new BitfieldEvents(true, true, states, states, 0, sampleCount - 1);
+		
+	}
+	
+	/**
+	 * Exports all samples to a CSV file.
+	 * 
+	 * @param datasetCount    Number of datasets.
+	 * @param sampleCount     Number of samples for each dataset.
+	 * @return                The workload. It returns the file size.
+	 */
+	public static Supplier<Object> exportCsvFile(int datasetCount, int sampleCount) {
+		
+		defineDatasets(datasetCount);
+		appendRandomSamples(sampleCount);
+		
+		Path file = cacheDir.resolve("benchmark.csv");
+		return () -> {
+			try {
+				CommunicationController.exportCsvFile(file.toString(), progress -> {});
+				long size = Files.size(file);
+				Files.delete(file);
+				return size;
+			} catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+		
+	}
+	
+}
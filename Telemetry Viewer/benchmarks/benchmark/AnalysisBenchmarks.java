@@ -0,0 +1,75 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * The per-frame work of the frequency domain and time domain charts.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AnalysisBenchmarks {
+	
+	@State(Scope.Thread)
+	public static class Dft {
+		
+		@Param({"1000", "1024", "10000", "65536", "1000000"}) // powers of two and other lengths (mixed radix or Bluestein)
+		int windowLength;
+		
+		Supplier<Object> workload;
+		
+		@Setup public void setup() {
+			
+			workload = Workload.create("calculateDft", windowLength);
+			
+		}
+		
+	}
+	
+	@State(Scope.Thread)
+	public static class Bitfields {
+		
+		@Param({"10000", "1000000"})
+		int sampleCount;
+		
+		Supplier<Object> workload;
+		
+		@Setup public void setup() {
+			
+			workload = Workload.create("bitfieldEvents", sampleCount);
+			
+		}
+		
+		@TearDown(Level.Trial) public void tearDown() {
+			
+			Workload.tearDown();
+			
+		}
+		
+	}
+	
+	@Benchmark
+	public Object calculateDft(Dft state) {
+		
+		return state.workload.get();
+		
+	}
+	
+	@Benchmark
+	public Object bitfieldEvents(Bitfields state) {
+		
+		return state.workload.get();
+		
+	}
+	
+}
@@ -0,0 +1,59 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Exporting a CSV file. Scores are rows per second.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class ExportBenchmarks {
+	
+	private static final int SAMPLE_COUNT = 1000000;
+	
+	@State(Scope.Thread)
+	public static class Samples {
+		
+		@Param({"1", "8"})
+		int datasetCount;
+		
+		Supplier<Object> workload;
+		
+		@Setup public void setup() {
+			
+			workload = Workload.create("exportCsvFile", datasetCount, SAMPLE_COUNT);
+			
+		}
+		
+		@TearDown(Level.Trial) public void tearDown() {
+			
+			Workload.tearDown();
+			
+		}
+		
+	}
+	
+	@Benchmark @OperationsPerInvocation(SAMPLE_COUNT)
+	public Object exportCsvFile(Samples state) {
+		
+		return state.workload.get();
+		
+	}
+	
+}
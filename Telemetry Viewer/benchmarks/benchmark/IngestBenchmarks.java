@@ -0,0 +1,71 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Receiving telemetry: decoding binary packets and parsing CSV lines. Scores are per packet or line.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class IngestBenchmarks {
+	
+	private static final int PACKET_COUNT = 1024; // per invocation, like one batch
+	private static final int FIELD_COUNT = 8;
+	
+	@State(Scope.Thread)
+	public static class BinaryPackets {
+		
+		@Param({"uint8", "uint16 LSB First", "uint16 MSB First", "int16 LSB First", "int16 MSB First", "float32 LSB First", "float32 MSB First", "Bitfield: 8 Bits"})
+		String processor;
+		
+		Supplier<Object> workload;
+		
+		@Setup public void setup() {
+			
+			workload = Workload.create("binaryDecode", processor, FIELD_COUNT, PACKET_COUNT);
+			
+		}
+		
+	}
+	
+	@State(Scope.Thread)
+	public static class CsvLines {
+		
+		@Param({"1", "8", "32"})
+		int columnCount;
+		
+		Supplier<Object> workload;
+		
+		@Setup public void setup() {
+			
+			workload = Workload.create("csvParse", columnCount, PACKET_COUNT);
+			
+		}
+		
+	}
+	
+	@Benchmark @OperationsPerInvocation(PACKET_COUNT)
+	public Object binaryDecode(BinaryPackets state) {
+		
+		return state.workload.get();
+		
+	}
+	
+	@Benchmark @OperationsPerInvocation(PACKET_COUNT)
+	public Object csvParse(CsvLines state) {
+		
+		return state.workload.get();
+		
+	}
+	
+}
@@ -0,0 +1,95 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Storing samples, and reading them back the way the charts do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StorageBenchmarks {
+	
+	private static final int SAMPLE_COUNT = 4 * 1048576; // 4 Slots
+	
+	@State(Scope.Thread)
+	public static class Append {
+		
+		@Param({"1", "8", "32"})
+		int datasetCount;
+		
+		@Param({"1", "1024"})
+		int batchSize;
+		
+		Supplier<Object> workload;
+		
+		@Setup public void setup() {
+			
+			workload = Workload.create("appendSamples", datasetCount, batchSize);
+			
+		}
+		
+		@TearDown(Level.Trial) public void tearDown() {
+			
+			Workload.tearDown();
+			
+		}
+		
+	}
+	
+	@State(Scope.Thread)
+	public static class Range {
+		
+		@Param({"1000", "100000", "3000000"})
+		int length;
+		
+		Supplier<Object> getRange;
+		Supplier<Object> getBuffer;
+		
+		@Setup public void setup() {
+			
+			getRange = Workload.create("getRange", SAMPLE_COUNT, length);
+			getBuffer = Workload.create("getBuffer", SAMPLE_COUNT, length);
+			
+		}
+		
+		@TearDown(Level.Trial) public void tearDown() {
+			
+			Workload.tearDown();
+			
+		}
+		
+	}
+	
+	@Benchmark
+	public Object appendSamples(Append state) {
+		
+		return state.workload.get();
+		
+	}
+	
+	@Benchmark
+	public Object getRange(Range state) {
+		
+		return state.getRange.get();
+		
+	}
+	
+	@Benchmark
+	public Object getBuffer(Range state) {
+		
+		return state.getBuffer.get();
+		
+	}
+	
+}
@@ -0,0 +1,46 @@
+package benchmark;
+
+import java.lang.reflect.Method;
+import java.util.function.Supplier;
+
+/**
+ * Gets the workloads from the Workloads class, which is in the default package with the rest of Telemetry Viewer, so it can only be reached with reflection.
+ */
+final class Workload {
+	
+	/**
+	 * @param name         Name of a static method of Workloads that returns a workload.
+	 * @param arguments    Its arguments.
+	 * @return             The workload.
+	 */
+	@SuppressWarnings("unchecked")
+	static Supplier<Object> create(String name, Object... arguments) {
+		
+		return (Supplier<Object>) invoke(name, arguments);
+		
+	}
+	
+	/**
+	 * Removes the datasets and their cache files.
+	 */
+	static void tearDown() {
+		
+		invoke("tearDown");
+		
+	}
+	
+	private static Object invoke(String name, Object... arguments) {
+		
+		try {
+			for(Method method : Class.forName("Workloads").getMethods())
+				if(method.getName().equals(name))
+					return method.invoke(null, arguments);
+		} catch(Exception e) {
+			throw new IllegalStateException("Unable to call Workloads." + name + "().", e);
+		}
+		
+		throw new IllegalArgumentException("Unknown workload: " + name);
+		
+	}
+	
+}
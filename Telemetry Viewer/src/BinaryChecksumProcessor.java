@@ -14,9 +14,11 @@ public interface BinaryChecksumProcessor {
 	public int getByteCount();
 	
 	/**
-	 * @param bytes    All of the packet bytes *after* (not including!) the sync word.
-	 * @return         True if the checksum is valid, false otherwise.
+	 * @param bytes     Unprocessed bytes that were received from the serial port. This is usually a buffer containing many packets.
+	 * @param offset    Index of the first packet byte *after* (not including!) the sync word.
+	 * @param length    Number of packet bytes after the sync word, including the checksum.
+	 * @return          True if the checksum is valid, false otherwise.
 	 */
-	public boolean testChecksum(byte[] bytes, int length);
+	public boolean testChecksum(byte[] bytes, int offset, int length);
 
 }
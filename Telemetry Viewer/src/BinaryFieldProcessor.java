@@ -15,9 +15,10 @@ public interface BinaryFieldProcessor {
 	public int getByteCount();
 	
 	/**
-	 * @param bytes    Unprocessed bytes that were received from the serial port.
-	 * @return         The corresponding number, as a float. This number has *not* been scaled by the Dataset conversion factors.
+	 * @param bytes     Unprocessed bytes that were received from the serial port. This is usually a buffer containing many packets.
+	 * @param offset    Index of the first byte of this field.
+	 * @return          The corresponding number, as a float. This number has *not* been scaled by the Dataset conversion factors.
 	 */
-	public float extractValue(byte[] bytes);
+	public float extractValue(byte[] bytes, int offset);
 
 }
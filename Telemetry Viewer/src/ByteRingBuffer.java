@@ -0,0 +1,302 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free ring buffer of bytes, for moving received bytes from one producer thread (such as the TCP or UDP server) to one consumer thread (the Packet parser.)
+ * 
+ * The producer and consumer each own one index, so no locks are needed: the producer only advances the write index, and the consumer only advances the read index.
+ * When the buffer is empty the consumer is parked, and when the buffer is full the producer is parked. Each side unparks the other after advancing its index.
+ * 
+ * This must only be used by one producer thread and one consumer thread.
+ */
+public class ByteRingBuffer {
+	
+	private final byte[] buffer;
+	private final int capacity;
+	private final int mask;
+	
+	private final AtomicLong writeIndex = new AtomicLong(0); // total number of bytes written, only modified by the producer
+	private final AtomicLong readIndex = new AtomicLong(0);  // total number of bytes read, only modified by the consumer
+	
+	private volatile Thread parkedProducer = null;
+	private volatile Thread parkedConsumer = null;
+	private volatile boolean closed = false;
+	
+	private final InputStream inputStream = new RingInputStream();
+	
+	private static final MetricsController.Counter producerWaits = MetricsController.getCounter("Transport buffer full waits"); // the parser is not keeping up
+	
+	/**
+	 * Creates an empty ring buffer.
+	 * 
+	 * @param capacity    Number of bytes that can be buffered. This will be rounded up to a power of two.
+	 */
+	public ByteRingBuffer(int capacity) {
+		
+		this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = this.capacity - 1;
+		this.buffer = new byte[this.capacity];
+		
+	}
+	
+	/**
+	 * Called by the producer to append bytes. If the buffer is full, the producer is parked until the consumer makes space.
+	 * 
+	 * @param bytes     Bytes to append.
+	 * @param offset    Index of the first byte.
+	 * @param length    Number of bytes.
+	 * @throws IOException    If the ring buffer was closed, or if the producer was interrupted while waiting for space.
+	 */
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		
+		while(length > 0) {
+			
+			int free = awaitFreeSpace();
+			long write = writeIndex.get();
+			int start = (int) (write & mask);
+			int byteCount = Integer.min(length, Integer.min(free, capacity - start));
+			System.arraycopy(bytes, offset, buffer, start, byteCount);
+			publishWrite(write + byteCount);
+			
+			offset += byteCount;
+			length -= byteCount;
+			
+		}
+		
+	}
+	
+	/**
+	 * Called by the producer to append as many bytes as there is free space for, without parking.
+	 * 
+	 * @param bytes     Bytes to append.
+	 * @param offset    Index of the first byte.
+	 * @param length    Number of bytes.
+	 * @return          Number of bytes appended. This is less than length if the buffer became full.
+	 * @throws IOException    If the ring buffer was closed.
+	 */
+	public int tryWrite(byte[] bytes, int offset, int length) throws IOException {
+		
+		if(closed)
+			throw new IOException("The ring buffer is closed.");
+		
+		int written = 0;
+		while(written < length) {
+			
+			int free = capacity - (int) (writeIndex.get() - readIndex.get());
+			if(free == 0) {
+				producerWaits.increment();
+				break;
+			}
+			long write = writeIndex.get();
+			int start = (int) (write & mask);
+			int byteCount = Integer.min(length - written, Integer.min(free, capacity - start));
+			System.arraycopy(bytes, offset + written, buffer, start, byteCount);
+			publishWrite(write + byteCount);
+			written += byteCount;
+			
+		}
+		
+		return written;
+		
+	}
+	
+	/**
+	 * Called by the producer to receive bytes from a stream directly into the free space of this ring buffer, without an intermediate array.
+	 * If the buffer is full, the producer is parked until the consumer makes space. Otherwise this blocks if the stream blocks.
+	 * 
+	 * @param stream    The stream to read from.
+	 * @return          Number of bytes received, or -1 if the end of the stream was reached.
+	 * @throws IOException    If the stream can not be read, or if the ring buffer was closed, or if the producer was interrupted while waiting for space.
+	 */
+	public int writeFrom(InputStream stream) throws IOException {
+		
+		int free = awaitFreeSpace();
+		long write = writeIndex.get();
+		int start = (int) (write & mask);
+		int byteCount = stream.read(buffer, start, Integer.min(free, capacity - start));
+		if(byteCount > 0)
+			publishWrite(write + byteCount);
+		
+		return byteCount;
+		
+	}
+	
+	/**
+	 * Closes the ring buffer. The consumer will still receive any bytes that were already written, and will then reach the end of the stream.
+	 */
+	public void close() {
+		
+		closed = true;
+		unpark(parkedProducer);
+		unpark(parkedConsumer);
+		
+	}
+	
+	/**
+	 * @return    The consumer side of this ring buffer.
+	 */
+	public InputStream getInputStream() {
+		
+		return inputStream;
+		
+	}
+	
+	/**
+	 * Parks the producer until there is free space.
+	 * 
+	 * @return    Number of free bytes.
+	 * @throws IOException    If the ring buffer was closed, or if the producer was interrupted.
+	 */
+	private int awaitFreeSpace() throws IOException {
+		
+		while(true) {
+			
+			if(closed)
+				throw new IOException("The ring buffer is closed.");
+			
+			int free = capacity - (int) (writeIndex.get() - readIndex.get());
+			if(free > 0)
+				return free;
+			
+			// register before checking again, so a read between the check and the park() can not be missed
+			producerWaits.increment();
+			parkedProducer = Thread.currentThread();
+			if(capacity - (int) (writeIndex.get() - readIndex.get()) == 0 && !closed)
+				LockSupport.park(this);
+			parkedProducer = null;
+			
+			if(Thread.interrupted())
+				throw new InterruptedIOException();
+				
+		}
+		
+	}
+	
+	private void publishWrite(long newWriteIndex) {
+		
+		writeIndex.set(newWriteIndex);
+		unpark(parkedConsumer);
+		
+	}
+	
+	private static void unpark(Thread thread) {
+		
+		if(thread != null)
+			LockSupport.unpark(thread);
+			
+	}
+	
+	/**
+	 * The consumer side of the ring buffer.
+	 * Reads park the consumer until at least one byte is available, and throw an InterruptedIOException if the consumer is interrupted.
+	 */
+	private class RingInputStream extends InputStream {
+		
+		@Override public int available() {
+			
+			return (int) (writeIndex.get() - readIndex.get());
+			
+		}
+		
+		@Override public int read() throws IOException {
+			
+			byte[] b = new byte[1];
+			return (read(b, 0, 1) == -1) ? -1 : (0xFF & b[0]);
+			
+		}
+		
+		@Override public int read(byte[] bytes, int offset, int length) throws IOException {
+			
+			if(length == 0)
+				return 0;
+			
+			int available = awaitData();
+			if(available == 0)
+				return -1;
+			
+			long read = readIndex.get();
+			int start = (int) (read & mask);
+			int byteCount = Integer.min(length, Integer.min(available, capacity - start));
+			System.arraycopy(buffer, start, bytes, offset, byteCount);
+			
+			readIndex.set(read + byteCount);
+			unpark(parkedProducer);
+			
+			return byteCount;
+			
+		}
+		
+		@Override public void close() {
+			
+			ByteRingBuffer.this.close();
+			
+		}
+		
+		/**
+		 * Parks the consumer until data is available.
+		 * 
+		 * @return    Number of available bytes, or 0 if the ring buffer is closed and empty.
+		 * @throws InterruptedIOException    If the consumer was interrupted.
+		 */
+		private int awaitData() throws InterruptedIOException {
+			
+			while(true) {
+				
+				int available = available();
+				if(available > 0 || closed)
+					return available;
+				
+				// register before checking again, so a write between the check and the park() can not be missed
+				parkedConsumer = Thread.currentThread();
+				if(available() == 0 && !closed)
+					LockSupport.park(this);
+				parkedConsumer = null;
+				
+				if(Thread.interrupted())
+					throw new InterruptedIOException();
+					
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * Waits until bytes can be read from a stream without blocking.
+	 * 
+	 * A ByteRingBuffer stream parks the thread until bytes arrive.
+	 * Other streams (such as UART ports) are polled every millisecond, because a blocked read from them can not be interrupted.
+	 * 
+	 * @param stream    The stream.
+	 * @return          Number of bytes that can be read without blocking. This is always > 0.
+	 * @throws IOException             If the stream can not be read, or if a ByteRingBuffer stream was closed and is empty.
+	 * @throws InterruptedException    If the thread was interrupted while waiting.
+	 */
+	public static int awaitAvailable(InputStream stream) throws IOException, InterruptedException {
+		
+		if(stream instanceof RingInputStream) {
+			int available = 0;
+			try {
+				available = ((RingInputStream) stream).awaitData();
+			} catch(InterruptedIOException e) {
+				throw new InterruptedException();
+			}
+			if(available == 0)
+				throw new EOFException();
+			return available;
+		}
+		
+		int available = stream.available();
+		while(available == 0) {
+			Thread.sleep(1);
+			available = stream.available();
+		}
+		return available;
+		
+	}
+	
+}
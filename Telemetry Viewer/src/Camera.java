@@ -22,10 +22,21 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.List;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 
 import javax.imageio.ImageIO;
@@ -43,7 +54,36 @@ public class Camera {
 	// threading
 	private Thread thread;
 	private volatile boolean threadInterrupted; // can't use Thread.interrupt() because the webcam library catches it and deadlocks
-	private volatile int liveJpegThreads = 0; // number of currently live sub-threads encoding or decoding jpeg's
+	
+	// jpeg's are encoded and decoded by a pool of threads shared by all cameras
+	// each thread keeps its own libjpeg-turbo handles and buffers, so nothing needs to be created for each frame
+	private static final ExecutorService jpegThreads = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+		Thread thread = new Thread(runnable, "Camera JPEG Thread");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private static final ThreadLocal<TJDecompressor> decompressor = ThreadLocal.withInitial(() -> { try { return new TJDecompressor(); } catch(Error | Exception e) { return null; } }); // null if libjpeg-turbo is not available
+	private static final ThreadLocal<TJCompressor>   compressor   = ThreadLocal.withInitial(() -> { try { return new TJCompressor();   } catch(Error | Exception e) { return null; } }); // null if libjpeg-turbo is not available
+	private static final ThreadLocal<byte[]> decodedPixels = ThreadLocal.withInitial(() -> new byte[0]); // GLframe copies the pixels, so this can be reused for the next frame
+	private static final ThreadLocal<byte[]> encodedJpeg   = ThreadLocal.withInitial(() -> new byte[0]);
+	
+	// the direct buffers of GLframes are reused, because allocating them for every frame is slow and they are only freed by the garbage collector
+	// a live image may still be drawn after it has been replaced, so its buffer is only reused after LIVE_IMAGE_BUFFER_COUNT newer live images
+	// a frame evicted from the frame cache is the least recently drawn one, so its buffer can be reused immediately
+	private static final int LIVE_IMAGE_BUFFER_COUNT = 3;
+	private static final int MAX_UNUSED_PIXEL_BUFFERS = 16; // shared by all cameras
+	private static final ConcurrentLinkedQueue<ByteBuffer> unusedPixelBuffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final ArrayDeque<GLframe> previousLiveImages = new ArrayDeque<GLframe>(); // decoded live images that may still be drawn, oldest first
+	
+	// live images are decoded one at a time, and if more frames arrive while decoding, only the newest one gets decoded next
+	private final AtomicReference<LiveJpeg> pendingLiveJpeg = new AtomicReference<LiveJpeg>(); // null if no decode is scheduled or running
+	private Future<?> liveDecodeTask = null;
+	
+	// acquired images are encoded in parallel, but written to the archive in order
+	private static final int MAX_ENCODE_BACKLOG = 8; // per camera, the camera thread waits if more frames than this are still being encoded
+	private final Semaphore encodeBacklog = new Semaphore(MAX_ENCODE_BACKLOG);
+	private final ConcurrentLinkedQueue<byte[]> unusedRawImages = new ConcurrentLinkedQueue<byte[]>(); // raw image buffers that have already been encoded, for reuse
+	private CompletableFuture<Void> previousSave = CompletableFuture.completedFuture(null); // completes when the most recent frame has been written to the archive
 
 	// camera state
 	public String name;
@@ -53,16 +93,25 @@ public class Camera {
 	
 	// images in memory
 	private volatile GLframe liveImage = new GLframe(null, true, 1, 1, "[waiting]", 0);
-	private volatile GLframe oldImage  = new GLframe(null, true, 1, 1, "[waiting]", 0);
+	
+	// the largest size any chart recently showed this camera's images at, so JPEGs can be decoded at a lower resolution when that is enough
+	private static final long DISPLAY_SIZE_PERIOD_MILLISECONDS = 1000; // sizes requested during the previous and current periods are used
+	private volatile Dimension displaySize = new Dimension(0, 0);
+	private Dimension previousPeriodDisplaySize = new Dimension(0, 0);
+	private Dimension currentPeriodDisplaySize = new Dimension(0, 0);
+	private long currentPeriodStartTimestamp = 0;
+	
+	// decoded images from the archive, so scrubbing through the timeline does not have to decode the same images again
+	private static final long FRAME_CACHE_BYTE_COUNT = 128 * 1024 * 1024; // per camera
+	private static final int PREFETCH_FRAME_COUNT = 4; // frames decoded ahead, in the direction the user is scrubbing
+	private final Map<Integer, GLframe> frameCache = new LinkedHashMap<Integer, GLframe>(16, 0.75f, true); // key = frame number, in least-recently-used order
+	private long frameCacheByteCount = 0;
+	private final Set<Integer> framesBeingPrefetched = new HashSet<Integer>();
+	private volatile int frameCacheGeneration = 0; // incremented whenever the frames are replaced, so prefetches that were already running get discarded
+	private int previousFrameNumber = -1;
 	
 	// images archived to disk
-	private class FrameInfo {
-		long timestamp; // when this frame was captured, milliseconds since 1970-01-01
-		long offset;    // byte offset in the file where the jpeg starts
-		int  length;    // byte count of the jpeg
-		public FrameInfo(long timestamp, long offset, int length) { this.timestamp = timestamp; this.offset = offset; this.length = length; }
-	}
-	private volatile List<FrameInfo> frames = Collections.synchronizedList(new ArrayList<FrameInfo>()); // index = frame number
+	private final FrameIndex frames = new FrameIndex();
 	private volatile Path pathOnDisk = Paths.get("cache/" + this.toString() + ".mjpg");
 	private volatile FileChannel file;
 	private volatile boolean fileIsImported;
@@ -117,6 +166,7 @@ public class Camera {
 			try {
 				file.close();
 				frames.clear();
+				clearFrameCache();
 				file = FileChannel.open(pathOnDisk, StandardOpenOption.CREATE,
 				                                    StandardOpenOption.TRUNCATE_EXISTING,
 				                                    StandardOpenOption.READ,
@@ -199,7 +249,7 @@ public class Camera {
 					
 				} catch (Exception e) {
 					
-					while(liveJpegThreads > 0); // wait
+					awaitJpegThreads();
 					
 					     if(e instanceof ConnectException)       liveImage = new GLframe(null, true, 1, 1, "[invalid mjpeg stream]", 0);
 					else if(e instanceof SocketTimeoutException) liveImage = new GLframe(null, true, 1, 1, "[unable to connect]",    0);
@@ -245,12 +295,20 @@ public class Camera {
 					camera.setViewSize(requestedResolution);
 					camera.open();
 					Dimension resolution = camera.getViewSize();
+					
+					// the images are acquired into a few buffers in rotation, because each one becomes the live image (see showImage())
+					ByteBuffer[] buffers = new ByteBuffer[LIVE_IMAGE_BUFFER_COUNT];
+					for(int i = 0; i < LIVE_IMAGE_BUFFER_COUNT; i++)
+						buffers[i] = Buffers.newDirectByteBuffer(resolution.width * resolution.height * 3);
+					int bufferN = 0;
 		
 					// enter an infinite loop that acquires images
 					while(true) {
 						
 						// acquire a new image
-						ByteBuffer buffer = Buffers.newDirectByteBuffer(resolution.width * resolution.height * 3);
+						ByteBuffer buffer = buffers[bufferN];
+						bufferN = (bufferN + 1) % LIVE_IMAGE_BUFFER_COUNT;
+						buffer.clear();
 						camera.getImageBytes(buffer);
 						
 						// save and show the image
@@ -266,7 +324,7 @@ public class Camera {
 					
 				} catch(Exception e) {
 					
-					while(liveJpegThreads > 0); // wait
+					awaitJpegThreads();
 					camera.close();
 					
 					     if(e instanceof WebcamException)     liveImage = new GLframe(null, true, 1, 1, "[unable to connect]", 0);
@@ -294,7 +352,7 @@ public class Camera {
 		// stop the camera thread
 		if(thread != null && thread.isAlive()) {
 			threadInterrupted = true;
-			while(thread.isAlive()); // wait
+			try { thread.join(); } catch(InterruptedException e) { }
 		}
 		
 		liveImage = new GLframe(null, true, 1, 1, "[stopped]", 0);
@@ -342,6 +400,7 @@ public class Camera {
 			file.close();
 			Files.deleteIfExists(pathOnDisk);
 			frames.clear();
+			clearFrameCache();
 		} catch(Exception e) {
 			NotificationsController.showFailureForSeconds("Unable the delete the cache file for " + name + "\n" + e.getMessage(), 10, false);
 			e.printStackTrace();
@@ -349,6 +408,52 @@ public class Camera {
 		
 	}
 	
+	/**
+	 * Called by charts every time they draw this camera's images, so JPEGs can be decoded at a lower resolution if the charts are small.
+	 * TurboJPEG can decode at 1/2, 1/4 or 1/8 scale for much less than the cost of a full decode, and the smaller image is also faster to upload as a texture.
+	 * If several charts show this camera, the largest one determines the resolution.
+	 * 
+	 * @param width     Width of the region the image will be drawn in, in pixels.
+	 * @param height    Height of the region the image will be drawn in, in pixels.
+	 */
+	public void setDisplaySize(int width, int height) {
+		
+		// forget sizes requested before the previous period, so the resolution drops after a chart is shrunk or removed
+		long now = System.currentTimeMillis();
+		if(now - currentPeriodStartTimestamp > DISPLAY_SIZE_PERIOD_MILLISECONDS) {
+			previousPeriodDisplaySize = currentPeriodDisplaySize;
+			currentPeriodDisplaySize = new Dimension(0, 0);
+			currentPeriodStartTimestamp = now;
+		}
+		
+		if(width > currentPeriodDisplaySize.width || height > currentPeriodDisplaySize.height)
+			currentPeriodDisplaySize = new Dimension(Integer.max(width,  currentPeriodDisplaySize.width),
+			                                         Integer.max(height, currentPeriodDisplaySize.height));
+		
+		int largestWidth  = Integer.max(currentPeriodDisplaySize.width,  previousPeriodDisplaySize.width);
+		int largestHeight = Integer.max(currentPeriodDisplaySize.height, previousPeriodDisplaySize.height);
+		if(largestWidth != displaySize.width || largestHeight != displaySize.height)
+			displaySize = new Dimension(largestWidth, largestHeight);
+			
+	}
+	
+	/**
+	 * Checks if a decoded image has enough resolution for the current display size.
+	 * An image that fits inside the display region must be at least as wide or at least as tall as that region, otherwise it would be upscaled.
+	 * 
+	 * @param frame    The decoded image, or null.
+	 * @return         True if the image is not null and is a full resolution image or has enough resolution.
+	 */
+	private boolean isLargeEnough(GLframe frame) {
+		
+		if(frame == null)
+			return false;
+		
+		Dimension size = displaySize;
+		return !frame.isDownscaled || frame.width >= size.width || frame.height >= size.height;
+		
+	}
+	
 	/**
 	 * Gets the most recent image.
 	 * 
@@ -360,79 +465,199 @@ public class Camera {
 		
 	}
 	
-	private static final SimpleDateFormat timestampFormatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+	private static final ThreadLocal<SimpleDateFormat> timestampFormatter = ThreadLocal.withInitial(() -> new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS")); // SimpleDateFormat is not thread-safe, and frames are decoded on several threads
 	
 	/**
 	 * Gets the closest image from just before a certain moment in time.
+	 * Decoded images are cached, and the next few images in the direction the user is scrubbing are decoded in advance.
 	 * 
 	 * @param timestamp    The moment in time (milliseconds since 1970-01-01.)
 	 * @return             The image and related information, as a GLframe object.
 	 */
 	public GLframe getImageBeforeTimestamp(long timestamp) {
 		
-		// give up if there's no images
-		if(frames.isEmpty())
+		// give up if there's no frame before the specified timestamp
+		int frameNumber = frames.getLastFrameNumberAtOrBefore(timestamp);
+		if(frameNumber < 0)
 			return new GLframe(null, true, 1, 1, "[no image]", 0);
 		
-		// determine the frame index
-		int frameIndex = frames.size() - 1;
-		long frameTimestamp = frames.get(frameIndex).timestamp;
+		// decode the frame if it is not cached
+		int generation = frameCacheGeneration;
+		GLframe frame = getCachedFrame(frameNumber);
+		if(!isLargeEnough(frame)) {
+			frame = decodeFrame(frameNumber);
+			if(frame.timestamp != 0)
+				cacheFrame(frameNumber, frame, generation);
+		}
 		
-		for(int i = frameIndex - 1; i >= 0; i--) {
-			long timestamp2 = frames.get(i).timestamp;
-			if(timestamp2 <= timestamp) {
-				frameIndex = i;
-				frameTimestamp = timestamp2;
-				break;
-			}
+		// decode ahead in the direction the user is scrubbing
+		if(previousFrameNumber != -1 && frameNumber != previousFrameNumber) {
+			int direction = frameNumber > previousFrameNumber ? 1 : -1;
+			for(int i = 1; i <= PREFETCH_FRAME_COUNT; i++)
+				prefetchFrame(frameNumber + i * direction, generation);
 		}
+		previousFrameNumber = frameNumber;
 		
-		// give up if there's no frame before the specified timestamp
-		if(frameTimestamp > timestamp)
-			return new GLframe(null, true, 1, 1, "[no image]", 0);
+		return frame;
 		
-		// return cached image if appropriate
-		if(frameTimestamp == oldImage.timestamp)
-			return oldImage;
+	}
+	
+	/**
+	 * Reads and decodes one frame from the archive.
+	 * 
+	 * @param frameNumber    The frame to decode.
+	 * @return               The image and related information, as a GLframe object. If there was an error, the timestamp will be 0.
+	 */
+	private GLframe decodeFrame(int frameNumber) {
 		
-		// obtain and decompress the jpeg
-		FrameInfo info = frames.get(frameIndex);
-		byte[] jpegBytes = new byte[info.length];
+		// obtain the jpeg
+		long frameTimestamp = frames.getTimestamp(frameNumber);
+		int length = frames.getLength(frameNumber);
+		byte[] jpegBytes = new byte[length];
 		try {
-			file.read(ByteBuffer.wrap(jpegBytes), info.offset);
+			file.read(ByteBuffer.wrap(jpegBytes), frames.getOffset(frameNumber));
 		} catch(Exception e) {
 			e.printStackTrace();
 			return new GLframe(null, true, 1, 1, "[error reading image from disk]", 0);
 		}
 		
-		int width = 0;
-		int height = 0;
-		byte[] bgrBytes = null;
-		String label = String.format("%s (%s)", name, timestampFormatter.format(new Date(info.timestamp)));
-		
 		try {
-			// try to use the libjpeg-turbo library
-			TJDecompressor tjd = new TJDecompressor(jpegBytes);
-			width = tjd.getWidth();
-			height = tjd.getHeight();
-			bgrBytes = new byte[width * height * 3];
-			tjd.decompress(bgrBytes, 0, 0, width, 0, height, TJ.PF_BGR, 0);
-			tjd.close();
-			oldImage = new GLframe(bgrBytes, true, width, height, label, info.timestamp);
-			return oldImage;
-		} catch(Error | Exception e) {
-			// fallback to the JRE library
+			String label = String.format("%s (%s)", name, timestampFormatter.get().format(new Date(frameTimestamp)));
+			return decodeJpeg(jpegBytes, displaySize, label, frameTimestamp);
+		} catch(Exception e) {
+			e.printStackTrace();
+			return new GLframe(null, true, 1, 1, "[error decoding image]", 0);
+		}
+		
+	}
+	
+	/**
+	 * Decodes a JPEG on the current thread.
+	 * The libjpeg-turbo library is used if possible, with this thread's decompressor and pixel buffer. Otherwise the JRE library is used.
+	 * 
+	 * @param jpegBytes      The image, as a JPEG.
+	 * @param displaySize    Size of the region the image will be drawn in. The image is decoded at the smallest scale (1/8, 1/4, 1/2 or 1) that still fills this region.
+	 * @param label          Label for the GLframe.
+	 * @param timestamp      Timestamp for the GLframe.
+	 * @return               The decoded image.
+	 * @throws Exception     If the image could not be decoded.
+	 */
+	private static GLframe decodeJpeg(byte[] jpegBytes, Dimension displaySize, String label, long timestamp) throws Exception {
+		
+		TJDecompressor tjd = decompressor.get();
+		if(tjd != null) {
 			try {
-				BufferedImage bi = ImageIO.read(new ByteArrayInputStream(jpegBytes));
-				width = bi.getWidth();
-				height = bi.getHeight();
-				bgrBytes = ((DataBufferByte)bi.getRaster().getDataBuffer()).getData();
-				oldImage = new GLframe(bgrBytes, true, width, height, label, info.timestamp);
-				return oldImage;
-			} catch(Exception e2) {
-				e.printStackTrace();
-				return new GLframe(null, true, 1, 1, "[error decoding image]", 0);
+				tjd.setSourceImage(jpegBytes, jpegBytes.length);
+				int scale = 1;
+				for(int denominator = 8; denominator > 1; denominator /= 2)
+					if(tjd.getScaledWidth(1, denominator) >= displaySize.width || tjd.getScaledHeight(1, denominator) >= displaySize.height) {
+						scale = denominator;
+						break;
+					}
+				int width = tjd.getScaledWidth(1, scale);
+				int height = tjd.getScaledHeight(1, scale);
+				byte[] bgrBytes = decodedPixels.get();
+				if(bgrBytes.length < width * height * 3) {
+					bgrBytes = new byte[width * height * 3];
+					decodedPixels.set(bgrBytes);
+				}
+				tjd.decompress(bgrBytes, 0, 0, width, 0, height, TJ.PF_BGR, 0);
+				GLframe frame = new GLframe(bgrBytes, true, width, height, label, timestamp);
+				frame.isDownscaled = scale > 1;
+				return frame;
+			} catch(Error | Exception e) {
+				// fall back to the JRE library
+			}
+		}
+		
+		BufferedImage bi = ImageIO.read(new ByteArrayInputStream(jpegBytes));
+		byte[] bgrBytes = ((DataBufferByte)bi.getRaster().getDataBuffer()).getData();
+		return new GLframe(bgrBytes, true, bi.getWidth(), bi.getHeight(), label, timestamp);
+		
+	}
+	
+	/**
+	 * Decodes a frame on a prefetch thread, if it is not already cached or being decoded.
+	 * 
+	 * @param frameNumber    The frame to decode.
+	 * @param generation     The frame cache generation when the prefetch was requested.
+	 */
+	private void prefetchFrame(int frameNumber, int generation) {
+		
+		if(frameNumber < 0 || frameNumber >= frames.size())
+			return;
+		
+		synchronized(frameCache) {
+			if(isLargeEnough(frameCache.get(frameNumber)) || !framesBeingPrefetched.add(frameNumber))
+				return;
+		}
+		
+		jpegThreads.execute(() -> {
+			if(generation == frameCacheGeneration) {
+				GLframe frame = decodeFrame(frameNumber);
+				if(frame.timestamp != 0)
+					cacheFrame(frameNumber, frame, generation);
+			}
+			synchronized(frameCache) {
+				framesBeingPrefetched.remove(frameNumber);
 			}
+		});
+		
+	}
+	
+	/**
+	 * @param frameNumber    The frame to check for.
+	 * @return               The cached frame, or null if it is not cached.
+	 */
+	private GLframe getCachedFrame(int frameNumber) {
+		
+		synchronized(frameCache) {
+			return frameCache.get(frameNumber);
+		}
+		
+	}
+	
+	/**
+	 * Adds a decoded frame to the cache, then removes the least-recently-used frames if the cache is too big.
+	 * A cached frame that does not have enough resolution for the current display size is replaced.
+	 * 
+	 * @param frameNumber    The frame number.
+	 * @param frame          The decoded frame.
+	 * @param generation     The frame cache generation when the frame was requested. If the frames have been replaced since then, the frame is not cached.
+	 */
+	private void cacheFrame(int frameNumber, GLframe frame, int generation) {
+		
+		synchronized(frameCache) {
+			if(generation != frameCacheGeneration)
+				return;
+			GLframe cachedFrame = frameCache.get(frameNumber);
+			if(isLargeEnough(cachedFrame))
+				return;
+			if(cachedFrame != null)
+				frameCacheByteCount -= cachedFrame.buffer.capacity();
+			frameCache.put(frameNumber, frame);
+			frameCacheByteCount += frame.buffer.capacity();
+			Iterator<GLframe> iterator = frameCache.values().iterator();
+			while(frameCacheByteCount > FRAME_CACHE_BYTE_COUNT && frameCache.size() > 1) {
+				ByteBuffer buffer = iterator.next().buffer;
+				frameCacheByteCount -= buffer.capacity();
+				iterator.remove();
+				recyclePixelBuffer(buffer);
+			}
+		}
+		
+	}
+	
+	/**
+	 * Empties the cache of decoded frames. This must be called whenever the frames are replaced.
+	 */
+	private void clearFrameCache() {
+		
+		synchronized(frameCache) {
+			frameCacheGeneration++;
+			frameCache.clear();
+			frameCacheByteCount = 0;
+			previousFrameNumber = -1;
 		}
 		
 	}
@@ -455,10 +680,9 @@ public class Camera {
 		try {
 			ObjectOutputStream binFile = new ObjectOutputStream(new FileOutputStream(filepath + ".bin"));
 			for(int i = 0; i < frameCount; i++) {
-				FrameInfo info = frames.get(i);
-				binFile.writeLong(info.timestamp);
-				binFile.writeLong(info.offset);
-				binFile.writeInt(info.length);
+				binFile.writeLong(frames.getTimestamp(i));
+				binFile.writeLong(frames.getOffset(i));
+				binFile.writeInt(frames.getLength(i));
 			}
 			binFile.close();
 		} catch(Exception e) {
@@ -475,7 +699,7 @@ public class Camera {
 			// copy to the mjpg file with FileChannel.transferTo(), do not use FileChannel.map() because:
 			// https://bugs.openjdk.java.net/browse/JDK-4715154
 			long offset = 0;
-			long remainingBytes = frames.get(frameCount - 1).offset + frames.get(frameCount - 1).length;
+			long remainingBytes = frames.getOffset(frameCount - 1) + frames.getLength(frameCount - 1);
 			long fileSize = remainingBytes;
 			while(remainingBytes > 0) {
 				long amount = Long.min(remainingBytes, 16777216); // 16MB chunks
@@ -522,7 +746,7 @@ public class Camera {
 						long timestamp = binFile.readLong();
 						long offset = binFile.readLong();
 						int length = binFile.readInt();
-						frames.add(new FrameInfo(timestamp, offset, length));
+						frames.add(timestamp, offset, length);
 					}
 				} catch(Exception e) {
 					// reached the end of file
@@ -546,7 +770,7 @@ public class Camera {
 	private void saveJpeg(byte[] jpegBytes, long timestamp) {
 		
 		try {
-			frames.add(new FrameInfo(timestamp, file.size(), jpegBytes.length));
+			frames.add(timestamp, file.size(), jpegBytes.length);
 			file.write(ByteBuffer.wrap(jpegBytes));
 			file.force(true);
 		} catch(Exception e) {
@@ -558,65 +782,63 @@ public class Camera {
 	}
 	
 	/**
-	 * Spawns a new thread that will decode a JPEG image and update the liveImage object.
-	 * If there is a backlog of images to decode, this image may be skipped.
+	 * A received JPEG that has not been decoded yet.
+	 */
+	private static class LiveJpeg {
+		final byte[] jpegBytes;
+		final long timestamp;
+		LiveJpeg(byte[] jpegBytes, long timestamp) { this.jpegBytes = jpegBytes; this.timestamp = timestamp; }
+	}
+	
+	/**
+	 * Schedules a JPEG image to be decoded by the JPEG threads, and to then update the liveImage object.
+	 * If this image is still waiting when a newer image arrives, this image will be skipped.
 	 * 
 	 * @param jpegBytes    The image to decode.
 	 * @param timestamp    When the image was captured (milliseconds since 1970-01-01.)
 	 */
 	private void showJpeg(byte[] jpegBytes, long timestamp) {
 		
-		// skip this frame if backlogged
-		if(liveJpegThreads > 5)
+		// if a decode is already scheduled or running, it will pick up this image when it finishes
+		if(pendingLiveJpeg.getAndSet(new LiveJpeg(jpegBytes, timestamp)) != null)
 			return;
 		
-		new Thread(() -> {
-			try {
-				
-				liveJpegThreads++;
-				int width = 0;
-				int height = 0;
-				byte[] bgrBytes = null;
+		liveDecodeTask = jpegThreads.submit(() -> {
+			
+			LiveJpeg jpeg = pendingLiveJpeg.get();
+			while(true) {
 				
 				try {
-					// try to use the libjpeg-turbo library
-					TJDecompressor tjd = new TJDecompressor(jpegBytes);
-					width = tjd.getWidth();
-					height = tjd.getHeight();
-					bgrBytes = new byte[width * height * 3];
-					tjd.decompress(bgrBytes, 0, 0, width, 0, height, TJ.PF_BGR, 0);
-					tjd.close();
-				} catch(Error | Exception e) {
-					// fallback to the JRE library
-					BufferedImage bi = ImageIO.read(new ByteArrayInputStream(jpegBytes));
-					width = bi.getWidth();
-					height = bi.getHeight();
-					bgrBytes = ((DataBufferByte)bi.getRaster().getDataBuffer()).getData();
+					GLframe frame = decodeJpeg(jpeg.jpegBytes, displaySize, null, jpeg.timestamp);
+					int frameCount = frames.size();
+					double fps = 0;
+					if(frameCount > 30)
+						fps = 30000.0 / (double) (frames.getTimestamp(frameCount - 1) - frames.getTimestamp(frameCount - 30));
+					frame.label = String.format("%s (%d x %d, %01.1f FPS)", name, frame.width, frame.height, fps);
+					liveImage = frame;
+					previousLiveImages.add(frame);
+					if(previousLiveImages.size() > LIVE_IMAGE_BUFFER_COUNT)
+						recyclePixelBuffer(previousLiveImages.remove().buffer);
+				} catch(Exception e) {
+					NotificationsController.showFailureForSeconds("Unable to decode one of the frames from " + name + "\n" + e.getMessage(), 10, true);
+					e.printStackTrace();
 				}
 				
-				// update the liveImage object
-				int frameCount = frames.size();
-				double fps = 0;
-				if(frameCount > 30)
-					fps = 30000.0 / (double) (frames.get(frameCount - 1).timestamp - frames.get(frameCount - 30).timestamp);
-				String label = String.format("%s (%d x %d, %01.1f FPS)", name, width, height, fps);
-				liveImage = new GLframe(bgrBytes, true, width, height, label, timestamp);
-				
-				liveJpegThreads--;
-				
-			} catch(Exception e) {
-				
-				NotificationsController.showFailureForSeconds("Unable to decode one of the frames from " + name + "\n" + e.getMessage(), 10, true);
-				e.printStackTrace();
-				liveJpegThreads--;
+				// stop if no newer image arrived while decoding
+				if(pendingLiveJpeg.compareAndSet(jpeg, null))
+					return;
+				jpeg = pendingLiveJpeg.get();
 				
 			}
-		}).start();
+			
+		});
 		
 	}
 	
 	/**
-	 * Spawns a new thread that will encode a raw image into a JPEG and store that in the dataset.
+	 * Schedules a raw image to be encoded into a JPEG by the JPEG threads, and then stored in the dataset.
+	 * Images are encoded in parallel but stored in the order they were captured.
+	 * If too many images are still being encoded, this blocks until one of them has been stored.
 	 * 
 	 * @param image         The image.
 	 * @param resolution    Size of the image, in pixels.
@@ -624,68 +846,112 @@ public class Camera {
 	 */
 	private void saveImage(ByteBuffer image, Dimension resolution, long timestamp) {
 		
-		byte[] bytes = new byte[image.capacity()];
+		encodeBacklog.acquireUninterruptibly();
+		
+		byte[] bytes = unusedRawImages.poll();
+		if(bytes == null || bytes.length != image.capacity())
+			bytes = new byte[image.capacity()];
 		image.get(bytes);
-		liveJpegThreads++;
+		byte[] rawImage = bytes;
 		
-		int frameNumber = frames.size();
+		// if encoding fails, the frame is skipped but the permit must still be released, and later frames must still be stored
+		CompletableFuture<byte[]> encoded = CompletableFuture.supplyAsync(() -> {
+			try {
+				return encodeImage(rawImage, resolution);
+			} finally {
+				unusedRawImages.offer(rawImage);
+			}
+		}, jpegThreads).handle((jpegBytes, exception) -> {
+			if(exception != null) {
+				NotificationsController.showFailureForSeconds("Unable to encode one of the frames from " + name + "\n" + exception.getMessage(), 10, true);
+				exception.printStackTrace();
+			}
+			return jpegBytes;
+		});
 		
-		new Thread(() -> {
+		previousSave = previousSave.thenCombine(encoded, (previous, jpegBytes) -> {
 			
-			byte[] jpegBytes = null;
-			int jpegBytesLength = 0;
+			try {
+				if(jpegBytes != null) {
+					frames.add(timestamp, file.size(), jpegBytes.length);
+					file.write(ByteBuffer.wrap(jpegBytes));
+					file.force(true);
+				}
+			} catch(Exception e) {
+				NotificationsController.showFailureForSeconds("Unable to save one of the frames from " + name + "\n" + e.getMessage(), 10, false);
+				e.printStackTrace();
+			} finally {
+				encodeBacklog.release();
+			}
+			return null;
 			
+		});
+		
+	}
+	
+	/**
+	 * Encodes a raw image into a JPEG on the current thread.
+	 * The libjpeg-turbo library is used if possible, with this thread's compressor and output buffer. Otherwise the JRE library is used.
+	 * 
+	 * @param bytes         The image, in RGB format. This may be modified.
+	 * @param resolution    Size of the image, in pixels.
+	 * @return              The JPEG, or null if the image could not be encoded.
+	 */
+	private byte[] encodeImage(byte[] bytes, Dimension resolution) {
+		
+		TJCompressor tjc = compressor.get();
+		if(tjc != null) {
 			try {
-				// try to use the libjpeg-turbo library
-				TJCompressor tjc = new TJCompressor(bytes, 0, 0, resolution.width, 0, resolution.height, TJ.PF_RGB);
+				tjc.setSourceImage(bytes, 0, 0, resolution.width, 0, resolution.height, TJ.PF_RGB);
 				tjc.setJPEGQuality(80);
 				tjc.setSubsamp(TJ.SAMP_422);
-				jpegBytes = tjc.compress(0);
-				jpegBytesLength = tjc.getCompressedSize();
-				tjc.close();
-			} catch(Error | Exception e) {
-				// fallback to the JRE library
-				try {
-					// convert rgb to bgr
-					for(int i = 0; i < bytes.length; i +=3) {
-						byte red  = bytes[i];
-						byte blue = bytes[i+2];
-						bytes[i]   = blue;
-						bytes[i+2] = red;
-					}
-					BufferedImage bi = new BufferedImage(resolution.width, resolution.height, BufferedImage.TYPE_3BYTE_BGR);
-					bi.setData(Raster.createRaster(bi.getSampleModel(), new DataBufferByte(bytes, bytes.length), new Point()));
-					ByteArrayOutputStream baos = new ByteArrayOutputStream();
-					ImageIO.write(bi, "jpg", baos);
-					jpegBytes = baos.toByteArray();
-					jpegBytesLength = jpegBytes.length;
-					baos.close();
-				} catch(Exception e2) {
-					NotificationsController.showFailureForSeconds("Unable to encode one of the frames from " + name + "\n" + e.getMessage(), 10, true);
-					e.printStackTrace();
-					liveJpegThreads--;
-					return;
+				byte[] jpegBuffer = encodedJpeg.get();
+				int maxJpegSize = TJ.bufSize(resolution.width, resolution.height, TJ.SAMP_422);
+				if(jpegBuffer.length < maxJpegSize) {
+					jpegBuffer = new byte[maxJpegSize];
+					encodedJpeg.set(jpegBuffer);
 				}
+				tjc.compress(jpegBuffer, 0);
+				return Arrays.copyOf(jpegBuffer, tjc.getCompressedSize()); // the copy is much smaller than the buffer
+			} catch(Error | Exception e) {
+				// fall back to the JRE library
 			}
-			
-			// wait for previous encoding threads to finish before inserting this frame
-			while(frames.size() < frameNumber);
-			
-			// save to disk
-			try {
-				frames.add(new FrameInfo(timestamp, file.size(), jpegBytesLength));
-				file.write(ByteBuffer.wrap(jpegBytes, 0, jpegBytesLength));
-				file.force(true);
-			} catch (Exception e) {
-				NotificationsController.showFailureForSeconds("Unable to save one of the frames from " + name + "\n" + e.getMessage(), 10, false);
-				e.printStackTrace();
-				liveJpegThreads--;
-				return;
+		}
+		
+		try {
+			// convert rgb to bgr
+			for(int i = 0; i < bytes.length; i +=3) {
+				byte red  = bytes[i];
+				byte blue = bytes[i+2];
+				bytes[i]   = blue;
+				bytes[i+2] = red;
 			}
-			
-			liveJpegThreads--;
-			
-		}).start();
+			BufferedImage bi = new BufferedImage(resolution.width, resolution.height, BufferedImage.TYPE_3BYTE_BGR);
+			bi.setData(Raster.createRaster(bi.getSampleModel(), new DataBufferByte(bytes, bytes.length), new Point()));
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			ImageIO.write(bi, "jpg", baos);
+			baos.close();
+			return baos.toByteArray();
+		} catch(Exception e) {
+			NotificationsController.showFailureForSeconds("Unable to encode one of the frames from " + name + "\n" + e.getMessage(), 10, true);
+			e.printStackTrace();
+			return null;
+		}
+		
+	}
+	
+	/**
+	 * Waits for this camera's images to finish being decoded and stored. This must only be called by the camera thread, after it stops acquiring images.
+	 */
+	private void awaitJpegThreads() {
+		
+		try {
+			if(liveDecodeTask != null)
+				liveDecodeTask.get();
+			previousSave.join();
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
 		
 	}
 	
@@ -701,7 +967,7 @@ public class Camera {
 		int frameCount = frames.size();
 		double fps = 0;
 		if(frameCount > 30)
-			fps = 30000.0 / (double) (frames.get(frameCount - 1).timestamp - frames.get(frameCount - 30).timestamp);
+			fps = 30000.0 / (double) (frames.getTimestamp(frameCount - 1) - frames.getTimestamp(frameCount - 30));
 		String label = String.format("%s (%d x %d, %01.1f FPS)", name, resolution.width, resolution.height, fps);
 		
 		image.rewind();
@@ -709,26 +975,141 @@ public class Camera {
 		
 	}
 	
+	/**
+	 * The timestamp, file offset and length of each frame in the archive, stored in primitive arrays.
+	 * 
+	 * Frames are only added by one thread at a time, but can be read by any thread without locking:
+	 * a new frame is written into the columns (or a larger copy of them) before the frame count is incremented, so readers only see complete frames.
+	 */
+	private static class FrameIndex {
+		
+		private static class Columns {
+			final long[] timestamps; // when each frame was captured, milliseconds since 1970-01-01
+			final long[] offsets;    // byte offset in the file where each jpeg starts
+			final int[]  lengths;    // byte count of each jpeg
+			Columns(int capacity) { timestamps = new long[capacity]; offsets = new long[capacity]; lengths = new int[capacity]; }
+		}
+		private volatile Columns columns = new Columns(1024);
+		private volatile int count = 0;
+		
+		/**
+		 * Appends a frame. Frames must be added in chronological order, and only by one thread at a time.
+		 * 
+		 * @param timestamp    When the frame was captured, milliseconds since 1970-01-01.
+		 * @param offset       Byte offset in the file where the jpeg starts.
+		 * @param length       Byte count of the jpeg.
+		 */
+		public void add(long timestamp, long offset, int length) {
+			
+			Columns a = columns;
+			if(count == a.timestamps.length) {
+				Columns bigger = new Columns(a.timestamps.length * 2);
+				System.arraycopy(a.timestamps, 0, bigger.timestamps, 0, count);
+				System.arraycopy(a.offsets,    0, bigger.offsets,    0, count);
+				System.arraycopy(a.lengths,    0, bigger.lengths,    0, count);
+				a = bigger;
+			}
+			
+			a.timestamps[count] = timestamp;
+			a.offsets[count]    = offset;
+			a.lengths[count]    = length;
+			columns = a;
+			count++;
+			
+		}
+		
+		/**
+		 * Removes all frames. The columns are kept, so a reader that is still using the old frame count will not go out of bounds.
+		 */
+		public void clear() {
+			
+			count = 0;
+			
+		}
+		
+		public int size() {
+			
+			return count;
+			
+		}
+		
+		public long getTimestamp(int frameNumber) { return columns.timestamps[frameNumber]; }
+		public long getOffset(int frameNumber)    { return columns.offsets[frameNumber];    }
+		public int  getLength(int frameNumber)    { return columns.lengths[frameNumber];    }
+		
+		/**
+		 * Binary searches for the last frame captured at or before a specific time.
+		 * 
+		 * @param timestamp    The moment in time (milliseconds since 1970-01-01.)
+		 * @return             The frame number, or -1 if there is no frame at or before that time.
+		 */
+		public int getLastFrameNumberAtOrBefore(long timestamp) {
+			
+			// read the count before the columns, so the columns contain at least that many frames
+			int low = 0;
+			int high = count;
+			long[] timestamps = columns.timestamps;
+			while(low < high) {
+				int middle = (low + high) >>> 1;
+				if(timestamps[middle] <= timestamp)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			
+			return low - 1;
+			
+		}
+		
+	}
+	
+	/**
+	 * @param byteCount    Number of bytes needed.
+	 * @return             A direct buffer with that limit, reused if possible.
+	 */
+	private static ByteBuffer getPixelBuffer(int byteCount) {
+		
+		ByteBuffer buffer = unusedPixelBuffers.poll();
+		if(buffer == null || buffer.capacity() < byteCount || buffer.capacity() > 2 * byteCount)
+			return Buffers.newDirectByteBuffer(byteCount); // an unsuitable buffer is dropped, so the pool follows the sizes that are currently in use
+		
+		buffer.clear();
+		buffer.limit(byteCount);
+		return buffer;
+		
+	}
+	
+	/**
+	 * @param buffer    The direct buffer of a GLframe that will not be drawn again.
+	 */
+	private static void recyclePixelBuffer(ByteBuffer buffer) {
+		
+		if(unusedPixelBuffers.size() < MAX_UNUSED_PIXEL_BUFFERS)
+			unusedPixelBuffers.offer(buffer);
+			
+	}
+	
 	/**
 	 * Frames to be shown on screen are stored in GLframe objects.
 	 */
 	public static class GLframe {
 		ByteBuffer buffer;
 		boolean isBgr; // if buffer uses the BGR or RGB pixel format
+		boolean isDownscaled; // if the image was decoded at less than its full resolution
 		int width;
 		int height;
 		String label;
 		long timestamp;
 		
 		public GLframe(byte[] bytes, boolean isBgr, int width, int height, String label, long timestamp) {
-			this.buffer = Buffers.newDirectByteBuffer(width * height * 3);
+			this.buffer = (bytes != null) ? getPixelBuffer(width * height * 3) : Buffers.newDirectByteBuffer(width * height * 3);
 			this.isBgr = isBgr;
 			this.width = width;
 			this.height = height;
 			this.label = label;
 			this.timestamp = timestamp;
 			if(bytes != null) {
-				buffer.put(bytes);
+				buffer.put(bytes, 0, width*height*3); // bytes may be a reused buffer that is larger than the image
 				buffer.rewind();
 			} else {
 				byte black = 0;
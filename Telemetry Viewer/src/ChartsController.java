@@ -1,3 +1,4 @@
+import java.awt.GraphicsEnvironment;
 import java.awt.Toolkit;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -7,7 +8,7 @@ public class ChartsController {
 	
 	private static List<PositionedChart> charts = Collections.synchronizedList(new ArrayList<PositionedChart>());
 	
-	private static float dpiScalingFactorJava8 = (int) Math.round((double) Toolkit.getDefaultToolkit().getScreenResolution() / 100.0); // will be reset to 1.0 if using java 9+
+	private static float dpiScalingFactorJava8 = GraphicsEnvironment.isHeadless() ? 1 : (int) Math.round((double) Toolkit.getDefaultToolkit().getScreenResolution() / 100.0); // will be reset to 1.0 if using java 9+
 	private static float dpiScalingFactorJava9 = 1; // will be updated dynamically if using java 9+
 	private static float dpiScalingFactorUser = 1; // may be updated by the user
 	
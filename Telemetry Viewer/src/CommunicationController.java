@@ -1,26 +1,31 @@
 import java.awt.Color;
+import java.awt.GraphicsEnvironment;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.PipedInputStream;
-import java.io.PipedOutputStream;
+import java.io.InterruptedIOException;
 import java.io.PrintWriter;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
+import java.io.StringWriter;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Scanner;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.LockSupport;
 import java.util.function.Consumer;
 
 import javax.swing.JPanel;
@@ -45,8 +50,7 @@ public class CommunicationController {
 	private static int    sampleRate = 10000;
 	private static int    uartBaudRate = 9600;
 	private static int    tcpUdpPort = 8080;
-	private final static int MAX_TCP_IDLE_MILLISECONDS = 10000; // if connected but no new samples after than much time, disconnect and wait for a new connection
-	private final static int MAX_UDP_PACKET_SIZE = 65507; // 65535 - (8byte UDP header) - (20byte IP header)
+	private final static int TCP_UDP_RING_BUFFER_SIZE = 1048576; // bytes buffered between the TCP/UDP server thread and the packet parser thread
 	
 	private static String localIp = "[Local IP Address Unknown]";
 	static {
@@ -353,8 +357,8 @@ public class CommunicationController {
 		packet.dataStructureDefined = false;
 		
 		     if(port.startsWith(PORT_UART + ": ")) connectToUart(quiet);
-		else if(port.equals(PORT_TCP))             startTcpServer(quiet);
-		else if(port.equals(PORT_UDP))             startUdpServer(quiet);
+		else if(port.equals(PORT_TCP))             startNetworkServer(quiet, true);
+		else if(port.equals(PORT_UDP))             startNetworkServer(quiet, false);
 		else if(port.equals(PORT_TEST))            conntectToTester(quiet);
 		else if(port.equals(PORT_FILE))            connectToFile();
 		
@@ -382,8 +386,8 @@ public class CommunicationController {
 		
 		if(wasConnected) {
 			     if(port.startsWith(PORT_UART + ": ")) disconnectFromUart();
-			else if(port.equals(PORT_TCP))             stopTcpServer();
-			else if(port.equals(PORT_UDP))             stopUdpServer();
+			else if(port.equals(PORT_TCP))             stopNetworkServer();
+			else if(port.equals(PORT_UDP))             stopNetworkServer();
 			else if(port.equals(PORT_TEST))            disconnectFromTester();
 			else if(port.equals(PORT_FILE))            disconnectFromFile();
 
@@ -398,7 +402,7 @@ public class CommunicationController {
 	private static Thread fileImportThread = null;
 	
 	/**
-	 * Imports samples from a CSV file.
+	 * Imports samples from a CSV file or session file.
 	 */
 	private static void connectToFile() {
 		
@@ -409,32 +413,44 @@ public class CommunicationController {
 		
 		fileImportThread = new Thread(() -> {
 			
+			// session files are memory-mapped, so there is nothing to parse
+			if(importFilePath.endsWith(SessionFile.EXTENSION)) {
+				try {
+					CommunicationView.instance.setConnected(true);
+					connected = true;
+					SessionFile.open(importFilePath);
+					SwingUtilities.invokeLater(() -> disconnect(null));
+				} catch(IOException e) {
+					SwingUtilities.invokeLater(() -> disconnect("Unable to open the session file.\n" + e.getMessage()));
+				}
+				return;
+			}
+			
 			try {
 				
-				// track approximate progress (assuming each char is 1 byte, and EOL is 2 bytes)
+				// track progress
 				long totalByteCount = Files.size(Paths.get(importFilePath));
-				long readByteCount = 0;
 				
 				// open the file
-				Scanner file = new Scanner(new FileInputStream(importFilePath), "UTF-8");
+				InputStream stream = new FileInputStream(importFilePath);
+				CsvTokenizer file = new CsvTokenizer(stream);
 				
 				CommunicationView.instance.setConnected(true);
 				connected = true;
 				
 				// sanity checks
-				if(!file.hasNextLine()) {
+				if(!file.readLine()) {
 					SwingUtilities.invokeLater(() -> disconnect("The CSV file is empty."));
-					file.close();
+					stream.close();
 					return;
 				}
 				
-				String header = file.nextLine();
-				readByteCount += header.length() + 2;
+				String header = file.getLine();
 				String[] tokens = header.split(",");
 				int columnCount = tokens.length;
 				if(columnCount != DatasetsController.getDatasetsCount() + 2) {
 					SwingUtilities.invokeLater(() -> disconnect("The CSV file header does not match the current data structure."));
-					file.close();
+					stream.close();
 					return;
 				}
 				
@@ -449,55 +465,84 @@ public class CommunicationController {
 				}
 				if(!correctColumnLabels) {
 					SwingUtilities.invokeLater(() -> disconnect("The CSV file header does not match the current data structure."));
-					file.close();
+					stream.close();
 					return;
 				}
 
-				if(!file.hasNextLine()) {
+				if(!file.readLine()) {
 					SwingUtilities.invokeLater(() -> disconnect("The CSV file does not contain any samples."));
-					file.close();
+					stream.close();
 					return;
 				}
 				
 				NotificationsController.showProgressBar("Importing...");
 				NotificationsController.setProgress(0);
 				
-				// parse the lines of data
-				String line = file.nextLine();
-				readByteCount += line.length() + 2;
-				long startTimeThread = System.currentTimeMillis();
-				long startTimeFile = Long.parseLong(line.split(",")[1]);
-				boolean realtimeImporting = true;
-				while(true) {
-					tokens = line.split(",");
-					if(realtimeImporting) {
-						if(Thread.interrupted()) {
-							realtimeImporting = false;
-						} else {
-							long delay = (Long.parseLong(tokens[1]) - startTimeFile) - (System.currentTimeMillis() - startTimeThread);
-							if(delay > 0)
-								try { Thread.sleep(delay); } catch(Exception e) { realtimeImporting = false; }
+				// replay the samples at the selected speed, until the user finishes early
+				// all samples that are due are published as one batch per frame, then this thread waits for the next frame (or longer, if no samples are due yet)
+				float[][] batch = new float[columnCount - 2][DatasetsController.BATCH_SIZE];
+				long[] batchTimestamps = new long[DatasetsController.BATCH_SIZE];
+				int batchCount = 0;
+				ReplayClock clock = new ReplayClock(file.getLong(1), replaySpeed);
+				replayClock = clock;
+				boolean showingPast = false;
+				boolean endOfFile = false;
+				long nextFrameTime = System.nanoTime();
+				while(realtimeImporting) {
+					double position = clock.getTimestamp();
+					long timestamp = file.getLong(1);
+					while(timestamp <= position) {
+						for(int columnN = 2; columnN < columnCount; columnN++)
+							batch[columnN - 2][batchCount] = file.getFloat(columnN);
+						batchTimestamps[batchCount] = timestamp;
+						batchCount++;
+						if(batchCount == DatasetsController.BATCH_SIZE) {
+							DatasetsController.appendConvertedSamples(batch, batchTimestamps, batchCount);
+							batchCount = 0;
 						}
-					} else if(Thread.interrupted()) {
-						break; // not real-time, and interrupted again, so abort
+						if(!file.readLine()) {
+							endOfFile = true;
+							break;
+						}
+						timestamp = file.getLong(1);
 					}
-					for(int columnN = 2; columnN < columnCount; columnN++)
-						DatasetsController.getDatasetByIndex(columnN - 2).addConverted(Float.parseFloat(tokens[columnN]));
-					DatasetsController.incrementSampleCountWithTimestamp(Long.parseLong(tokens[1]));
-					
-					if(file.hasNextLine()) {
-						line = file.nextLine();
-						readByteCount += line.length() + 2;
-						NotificationsController.setProgress((double)readByteCount / (double) totalByteCount);
-					} else {
+					DatasetsController.appendConvertedSamples(batch, batchTimestamps, batchCount);
+					batchCount = 0;
+					NotificationsController.setProgress((double) file.getConsumedByteCount() / (double) totalByteCount);
+					if(endOfFile)
 						break;
+					
+					// after seeking backwards, show the already imported samples at the replay position until it catches up
+					int sampleCount = DatasetsController.getSampleCount();
+					if(sampleCount > 0 && position < DatasetsController.getTimestamp(sampleCount - 1)) {
+						OpenGLChartsView.instance.setNonLiveView(DatasetsController.getLastSampleNumberAtOrBefore((long) position, 0, sampleCount - 1));
+						showingPast = true;
+					} else if(showingPast) {
+						OpenGLChartsView.instance.setLiveView();
+						showingPast = false;
 					}
+					
+					// wait, without trying to catch up on missed frames if this thread fell behind
+					// while showing the past, the view must follow the replay position every frame, so only wait longer if the next sample is not due yet
+					long now = System.nanoTime();
+					nextFrameTime = Long.max(nextFrameTime + REPLAY_FRAME_NANOSECONDS, now);
+					long waitNanoseconds = showingPast ? nextFrameTime - now : Long.max(nextFrameTime - now, clock.getNanosecondsUntil(timestamp));
+					LockSupport.parkNanos(waitNanoseconds); // setReplaySpeed() and seekReplay() unpark this thread
+					if(Thread.interrupted())
+						break;
 				}
+				replayClock = null;
+				DatasetsController.appendConvertedSamples(batch, batchTimestamps, batchCount);
+				long remainingOffset = file.getLineOffset();
+				stream.close();
+				
+				// import the rest of the file as fast as possible
+				if(!endOfFile)
+					importCsvFileInParallel(importFilePath, remainingOffset, totalByteCount, columnCount);
 				
 				// done
 				NotificationsController.setProgress(-1);
 				SwingUtilities.invokeLater(() -> disconnect(null));
-				file.close();
 				
 			} catch (IOException e) {
 				NotificationsController.setProgress(-1);
@@ -515,6 +560,138 @@ public class CommunicationController {
 		
 	}
 	
+	private static final int CSV_IMPORT_CHUNK_BYTE_COUNT = 16 * 1024 * 1024;
+	
+	/**
+	 * Rows parsed from part of a CSV file.
+	 */
+	private static class CsvChunk {
+		float[][] values; // values[datasetN][rowN]
+		long[] timestamps;
+		int rowCount;
+	}
+	
+	/**
+	 * Imports the rest of a CSV file as fast as possible, instead of in real time.
+	 * 
+	 * The file is memory-mapped and split into chunks at line boundaries. The chunks are parsed in parallel by a pool of threads,
+	 * and this thread appends them to the datasets in order, while a limited number of later chunks are being parsed.
+	 * If this thread is interrupted, the import is aborted.
+	 * 
+	 * @param filepath          Full path with file name.
+	 * @param firstByte         Offset of the first line to import.
+	 * @param totalByteCount    Size of the file.
+	 * @param columnCount       Number of columns: sample number, timestamp, and one for each dataset.
+	 * @throws Exception        If the file can not be read or parsed.
+	 */
+	private static void importCsvFileInParallel(String filepath, long firstByte, long totalByteCount, int columnCount) throws Exception {
+		
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		int maxChunksInFlight = 2 * threadCount; // limits memory usage if appending is slower than parsing
+		
+		ExecutorService parserThreads = Executors.newFixedThreadPool(threadCount, runnable -> {
+			Thread thread = new Thread(runnable, "CSV Parser Thread");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ArrayDeque<Future<CsvChunk>> chunks = new ArrayDeque<Future<CsvChunk>>();
+		ArrayDeque<Long> chunkEnds = new ArrayDeque<Long>();
+		
+		try(FileChannel file = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ)) {
+			
+			long nextChunkStart = firstByte;
+			while(nextChunkStart < totalByteCount || !chunks.isEmpty()) {
+				
+				// keep the parser threads busy
+				while(nextChunkStart < totalByteCount && chunks.size() < maxChunksInFlight) {
+					long chunkStart = nextChunkStart;
+					long chunkEnd = findLineEnd(file, chunkStart + CSV_IMPORT_CHUNK_BYTE_COUNT, totalByteCount);
+					ByteBuffer bytes = file.map(FileChannel.MapMode.READ_ONLY, chunkStart, chunkEnd - chunkStart);
+					chunks.add(parserThreads.submit(() -> parseCsvChunk(bytes, columnCount)));
+					chunkEnds.add(chunkEnd);
+					nextChunkStart = chunkEnd;
+				}
+				
+				// append the chunks in order
+				CsvChunk chunk = chunks.remove().get();
+				if(Thread.interrupted())
+					return; // abort
+				DatasetsController.appendConvertedSamples(chunk.values, chunk.timestamps, chunk.rowCount);
+				NotificationsController.setProgress((double) chunkEnds.remove() / (double) totalByteCount);
+				
+			}
+			
+		} catch(InterruptedException e) {
+			
+			return; // abort
+			
+		} finally {
+			
+			parserThreads.shutdownNow();
+			
+		}
+		
+	}
+	
+	/**
+	 * Finds the end of the line that contains a byte, so a file can be split into chunks of complete lines.
+	 * 
+	 * @param file              The CSV file.
+	 * @param position          Offset of the byte.
+	 * @param totalByteCount    Size of the file.
+	 * @return                  Offset of the line ending (which is left for the next chunk, where it will be skipped), or totalByteCount if there is none.
+	 * @throws IOException      If the file can not be read.
+	 */
+	private static long findLineEnd(FileChannel file, long position, long totalByteCount) throws IOException {
+		
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		while(position < totalByteCount) {
+			buffer.clear();
+			int byteCount = file.read(buffer, position);
+			if(byteCount < 0)
+				break;
+			for(int i = 0; i < byteCount; i++)
+				if(buffer.get(i) == '\n' || buffer.get(i) == '\r')
+					return position + i;
+			position += byteCount;
+		}
+		return totalByteCount;
+		
+	}
+	
+	/**
+	 * Parses part of a CSV file.
+	 * 
+	 * @param bytes          Complete lines of CSV text.
+	 * @param columnCount    Number of columns: sample number, timestamp, and one for each dataset.
+	 * @return               The timestamps and values.
+	 * @throws IOException   Never, because the text is already in memory.
+	 */
+	private static CsvChunk parseCsvChunk(ByteBuffer bytes, int columnCount) throws IOException {
+		
+		CsvChunk chunk = new CsvChunk();
+		int capacity = 65536;
+		chunk.values = new float[columnCount - 2][capacity];
+		chunk.timestamps = new long[capacity];
+		
+		CsvTokenizer file = new CsvTokenizer(bytes);
+		while(file.readLine()) {
+			if(chunk.rowCount == capacity) {
+				capacity *= 2;
+				for(int i = 0; i < chunk.values.length; i++)
+					chunk.values[i] = Arrays.copyOf(chunk.values[i], capacity);
+				chunk.timestamps = Arrays.copyOf(chunk.timestamps, capacity);
+			}
+			chunk.timestamps[chunk.rowCount] = file.getLong(1);
+			for(int columnN = 2; columnN < columnCount; columnN++)
+				chunk.values[columnN - 2][chunk.rowCount] = file.getFloat(columnN);
+			chunk.rowCount++;
+		}
+		
+		return chunk;
+		
+	}
+	
 	/**
 	 * Stops the file import thread, and updates the GUI.
 	 */
@@ -533,6 +710,71 @@ public class CommunicationController {
 		
 	}
 	
+	private static volatile boolean realtimeImporting = true;
+	private static volatile double replaySpeed = 1.0;
+	private static volatile ReplayClock replayClock = null; // only exists while replaying a CSV file
+	private static final long REPLAY_FRAME_NANOSECONDS = 1000000000L / 60;
+	
+	/**
+	 * @param realtime    If true, CSV files will be replayed at their original speed until the user clicks "Finish."
+	 *                    If false, CSV files will be imported as fast as possible.
+	 */
+	public static void setRealtimeImporting(boolean realtime) {
+		
+		realtimeImporting = realtime;
+		
+	}
+	
+	/**
+	 * @return    True if CSV files will be replayed at their original speed.
+	 */
+	public static boolean getRealtimeImporting() {
+		
+		return realtimeImporting;
+		
+	}
+	
+	/**
+	 * Changes the replay speed. This takes effect immediately if a CSV file is being replayed.
+	 * 
+	 * @param speed    Speed multiplier. 1.0 = real time, 0 = paused.
+	 */
+	public static void setReplaySpeed(double speed) {
+		
+		replaySpeed = speed;
+		ReplayClock clock = replayClock;
+		if(clock != null) {
+			clock.setSpeed(speed);
+			LockSupport.unpark(fileImportThread);
+		}
+		
+	}
+	
+	/**
+	 * @return    The replay speed multiplier. 1.0 = real time, 0 = paused.
+	 */
+	public static double getReplaySpeed() {
+		
+		return replaySpeed;
+		
+	}
+	
+	/**
+	 * Moves the replay position to an already imported sample, if a CSV file is being replayed.
+	 * The charts will show the already imported samples until the replay position catches up with the end of them.
+	 * 
+	 * @param sampleNumber    The sample to replay from.
+	 */
+	public static void seekReplay(int sampleNumber) {
+		
+		ReplayClock clock = replayClock;
+		if(clock != null && sampleNumber >= 0 && sampleNumber < DatasetsController.getSampleCount()) {
+			clock.seek(DatasetsController.getTimestamp(sampleNumber));
+			LockSupport.unpark(fileImportThread);
+		}
+		
+	}
+	
 	/**
 	 * Causes the file import thread to finish importing the file as fast as possible (instead of using a real-time playback speed.)
 	 */
@@ -595,164 +837,28 @@ public class CommunicationController {
 		
 	}
 	
-	static Thread tcpServerThread;
+	static Thread networkServerThread;
 	
 	/**
-	 * Spawns a TCP server and shows the DataStructureGui if necessary.
+	 * Spawns a TCP or UDP server and shows the DataStructureGui if necessary.
+	 * One TCP client or UDP sender can send telemetry at a time. Others are rejected until it disconnects or goes idle.
 	 * 
 	 * @param quiet    If true, don't show the Data Structure GUI and don't show hint notifications.
+	 * @param tcp      True for a TCP server, false for a UDP server.
 	 */
-	private static void startTcpServer(boolean quiet) {
+	private static void startNetworkServer(boolean quiet, boolean tcp) {
 		
-		tcpServerThread = new Thread(() -> {
-			
-			ServerSocket tcpServer = null;
-			Socket tcpSocket = null;
-			PipedOutputStream stream = null;
-			PipedInputStream inputStream = null;
-			
-			// start the TCP server
-			try {
-				tcpServer = new ServerSocket(tcpUdpPort);
-				tcpServer.setSoTimeout(1000);
-				stream = new PipedOutputStream();
-				inputStream = new PipedInputStream(stream);
-			} catch (Exception e) {
-				try { tcpServer.close(); stream.close(); inputStream.close(); } catch(Exception e2) {}
-				SwingUtilities.invokeLater(() -> disconnect("Unable to start the TCP server. Make sure another program is not already using port " + tcpUdpPort + "."));
-				return;
-			}
-			
-			CommunicationView.instance.setConnected(true);
-			connected = true;
-			
-			if(!quiet)
-				Main.showDataStructureGui();
-			
-			// wait for the data structure to be defined
-			while(!packet.dataStructureDefined)
-				try {
-					Thread.sleep(1);
-				} catch(Exception e) {
-					// thread got interrupted, so exit.
-					NotificationsController.showVerboseForSeconds("The TCP Server thread is stopping.", 5, false);
-					try { tcpServer.close(); } catch(Exception e2) {}
-					try { stream.close(); } catch(Exception e2) {}
-					try { inputStream.close(); } catch(Exception e2) {}
-					return;
-				}
-			
-			packet.startReceivingData(inputStream);
-			
-			// listen for a connection
-			while(true) {
-
-				try {
-					
-					if(Thread.interrupted())
-						throw new InterruptedException();
-					
-					tcpSocket = tcpServer.accept();
-					tcpSocket.setSoTimeout(5000); // each valid packet of data must take <5 seconds to arrive
-					InputStream is = tcpSocket.getInputStream();
-
-					NotificationsController.showSuccessForSeconds("TCP connection established with a client at " + tcpSocket.getRemoteSocketAddress().toString().substring(1) + ".", 5, true); // trim leading "/" from the IP address
-					
-					// enter an infinite loop that checks for activity. if the TCP port is idle for >10 seconds, abandon it so another device can try to connect.
-					long previousTimestamp = System.currentTimeMillis();
-					int previousSampleNumber = DatasetsController.getSampleCount();
-					while(true) {
-						int byteCount = is.available();
-						if(byteCount > 0) {
-							byte[] buffer = new byte[byteCount];
-							is.read(buffer, 0, byteCount);
-							stream.write(buffer, 0, byteCount);
-							continue;
-						}
-						Thread.sleep(1);
-						int sampleNumber = DatasetsController.getSampleCount();
-						long timestamp = System.currentTimeMillis();
-						if(sampleNumber > previousSampleNumber) {
-							previousSampleNumber = sampleNumber;
-							previousTimestamp = timestamp;
-						} else if(previousTimestamp < timestamp - MAX_TCP_IDLE_MILLISECONDS) {
-							NotificationsController.showFailureForSeconds("The TCP connection was idle for too long. It has been closed so another device can connect.", 5, true);
-							tcpSocket.close();
-							break;
-						}
-					}
-					
-				} catch(SocketTimeoutException ste) {
-					
-					// a client never connected, so do nothing and let the loop try again.
-					NotificationsController.showVerboseForSeconds("TCP socket timed out while waiting for a connection.", 5, true);
-					
-				} catch(IOException ioe) {
-					
-					// problem while accepting the socket connection, or getting the input stream, or reading from the input stream
-					try { tcpSocket.close(); } catch(Exception e2) {}
-					try { tcpServer.close(); } catch(Exception e2) {}
-					SwingUtilities.invokeLater(() -> disconnect("TCP connection failed."));
-					return;
-					
-				}  catch(InterruptedException ie) {
-					
-					// thread got interrupted, so exit.
-					NotificationsController.showVerboseForSeconds("The TCP Server thread is stopping.", 5, false);
-					try { tcpSocket.close(); } catch(Exception e2) {}
-					try { tcpServer.close(); } catch(Exception e2) {}
-					return;
-					
-				}
-			
-			}
-			
-		});
-		
-		tcpServerThread.setPriority(Thread.MAX_PRIORITY);
-		tcpServerThread.setName("TCP Server");
-		tcpServerThread.start();
-		
-	}
-	
-	/**
-	 * Stops the TCP server thread, frees its resources, and notifies any listeners that the connection has been closed.
-	 */
-	private static void stopTcpServer() {
-			
-		if(tcpServerThread != null && tcpServerThread.isAlive()) {
-			tcpServerThread.interrupt();
-			while(tcpServerThread.isAlive()); // wait
-		}
-		
-		packet.stopReceivingData();
-		
-	}
-	
-	static Thread udpServerThread;
-	
-	/**
-	 * Spawns a UDP server and shows the DataStructureGUI if necessary.
-	 * 
-	 * @param quiet    If true, don't show the Data Structure GUI and don't show hint notifications.
-	 */
-	private static void startUdpServer(boolean quiet) {
+		String serverName = tcp ? "TCP Server" : "UDP Server";
 		
-		udpServerThread = new Thread(() -> {
+		networkServerThread = new Thread(() -> {
 			
-			DatagramSocket udpServer = null;
-			PipedOutputStream stream = null;
-			PipedInputStream inputStream = null;
-			
-			// start the UDP server
+			// start the server
+			ByteRingBuffer ringBuffer = new ByteRingBuffer(TCP_UDP_RING_BUFFER_SIZE);
+			NetworkIngest server = null;
 			try {
-				udpServer = new DatagramSocket(tcpUdpPort);
-				udpServer.setSoTimeout(1000);
-				stream = new PipedOutputStream();
-				inputStream = new PipedInputStream(stream);
+				server = new NetworkIngest(tcp, tcpUdpPort, ringBuffer);
 			} catch (Exception e) {
-				try { udpServer.close(); stream.close(); inputStream.close(); } catch(Exception e2) {}
-				SwingUtilities.invokeLater(() -> disconnect("Unable to start the UDP server. Make sure another program is not already using port " + tcpUdpPort + "."));
+				SwingUtilities.invokeLater(() -> disconnect("Unable to start the " + (tcp ? "TCP" : "UDP") + " server. Make sure another program is not already using port " + tcpUdpPort + "."));
 				return;
 			}
 			
@@ -768,80 +874,47 @@ public class CommunicationController {
 					Thread.sleep(1);
 				} catch(Exception e) {
 					// thread got interrupted, so exit.
-					NotificationsController.showVerboseForSeconds("The TCP Server thread is stopping.", 5, false);
-					try { udpServer.close(); } catch(Exception e2) {}
-					try { stream.close(); } catch(Exception e2) {}
-					try { inputStream.close(); } catch(Exception e2) {}
+					NotificationsController.showVerboseForSeconds("The " + serverName + " thread is stopping.", 5, false);
+					server.close();
 					return;
 				}
 			
-			packet.startReceivingData(inputStream);
-			
-			// listen for packets
-			byte[] rx_buffer = new byte[MAX_UDP_PACKET_SIZE];
-			DatagramPacket udpPacket = new DatagramPacket(rx_buffer, rx_buffer.length);
-			while(true) {
-
-				try {
-					
-					if(Thread.interrupted())
-						throw new InterruptedException();
-					
-					udpServer.receive(udpPacket);
-					stream.write(rx_buffer, 0, udpPacket.getLength());
-					
-//					NotificationsController.showVerbose("UDP packet received from a client at " + udpPacket.getAddress().getHostAddress() + ":" + udpPacket.getPort() + ".");
-					
-				} catch(SocketTimeoutException ste) {
-					
-					// a client never sent a packet, so do nothing and let the loop try again.
-					NotificationsController.showVerboseForSeconds("UDP socket timed out while waiting for a packet.", 5, true);
-					
-				} catch(IOException ioe) {
-					
-					// problem while reading from the socket, or while putting data into the stream
-					try { inputStream.close(); } catch(Exception e) {}
-					try { stream.close(); }      catch(Exception e) {}
-					try { udpServer.close(); }   catch(Exception e) {}
-					SwingUtilities.invokeLater(() -> disconnect("UDP packet error."));
-					return;
-					
-				}  catch(InterruptedException ie) {
-					
-					// thread got interrupted while waiting for a connection, so exit.
-					NotificationsController.showVerboseForSeconds("The UDP Server thread is stopping.", 5, false);
-					try { inputStream.close(); } catch(Exception e) {}
-					try { stream.close(); }      catch(Exception e) {}
-					try { udpServer.close(); }   catch(Exception e) {}
-					return;
-					
-				}
+			packet.startReceivingData(ringBuffer.getInputStream());
 			
+			// receive until interrupted
+			try {
+				server.run(packet);
+			} catch(InterruptedException | InterruptedIOException e) {
+				// thread got interrupted, so exit.
+				NotificationsController.showVerboseForSeconds("The " + serverName + " thread is stopping.", 5, false);
+			} catch(IOException e) {
+				// problem with the server itself
+				SwingUtilities.invokeLater(() -> disconnect((tcp ? "TCP" : "UDP") + " server failed."));
 			}
 			
 		});
 		
-		udpServerThread.setPriority(Thread.MAX_PRIORITY);
-		udpServerThread.setName("UDP Server");
-		udpServerThread.start();
+		networkServerThread.setPriority(Thread.MAX_PRIORITY);
+		networkServerThread.setName(serverName);
+		networkServerThread.start();
 		
 	}
 	
 	/**
-	 * Stops the UDP server thread.
+	 * Stops the TCP or UDP server thread, frees its resources, and notifies any listeners that the connection has been closed.
 	 */
-	private static void stopUdpServer() {
+	private static void stopNetworkServer() {
 		
-		if(udpServerThread != null && udpServerThread.isAlive()) {
-			udpServerThread.interrupt();
-			while(udpServerThread.isAlive()); // wait
+		if(networkServerThread != null && networkServerThread.isAlive()) {
+			networkServerThread.interrupt();
+			try { networkServerThread.join(); } catch(InterruptedException e) { }
 		}
 		
 		packet.stopReceivingData();
 		
 	}
 	
-	static Thread testerThread;
+	static LoadGenerator tester;
 	
 	/**
 	 * Starts transmission of the test data stream, and shows the DataStructureGUI if necessary.
@@ -853,7 +926,6 @@ public class CommunicationController {
 		// force specific settings
 		if(!getPacketType().equals("CSV"))
 			setPacketType("CSV");
-		setSampleRate(10000);
 		setBaudRate(9600);
 		
 		// define the data structure if it is not already defined
@@ -872,41 +944,16 @@ public class CommunicationController {
 		}
 
 		// "connect" the tester
-		// this simulates the transmission of 4 numbers every 100us.
-		// the first three numbers are pseudo random, and scaled to form a sort of sawtooth waveform.
-		// the fourth number is a 1kHz sine wave.
-		// this is used to check for proper autoscaling of charts, etc.
-		testerThread = new Thread(() -> {
-			
-			double counter = 0;
-			
-			while(true) {
-				float scalar = ((System.currentTimeMillis() % 30000) - 15000) / 100.0f;
-				float[] newSamples = new float[] {
-					(System.nanoTime() / 100 % 100) * scalar * 1.0f / 14000f,
-					(System.nanoTime() / 100 % 100) * scalar * 0.8f / 14000f,
-					(System.nanoTime() / 100 % 100) * scalar * 0.6f / 14000f
-				};
-				for(int i = 0; i < 10; i++) {
-					DatasetsController.getDatasetByIndex(0).add(newSamples[0]);
-					DatasetsController.getDatasetByIndex(1).add(newSamples[1]);
-					DatasetsController.getDatasetByIndex(2).add(newSamples[2]);
-					DatasetsController.getDatasetByIndex(3).add((float) Math.sin(2 * Math.PI * 1000 * counter));
-					counter += 0.0001;
-					DatasetsController.incrementSampleCount();
-				}
-				
-				try {
-					Thread.sleep(1);
-				} catch(InterruptedException e) {
-					return; // stop and end this thread if we get interrupted
-				}
-			}
-			
-		});
-		testerThread.setPriority(Thread.MAX_PRIORITY);
-		testerThread.setName("Test Transmitter");
-		testerThread.start();
+		// this simulates the transmission of 4 numbers per sample, at the sample rate, without any packets being parsed.
+		// the 1kHz waveforms are used to check for proper autoscaling of charts, etc.
+		// LoadGenerator can also send any number of channels as CSV or binary packets to the TCP/UDP servers, to stress-test the whole ingest path.
+		tester = new LoadGenerator(getSampleRate(),
+		                           new LoadGenerator.Waveform[] {LoadGenerator.Waveform.SAWTOOTH, LoadGenerator.Waveform.SQUARE, LoadGenerator.Waveform.NOISE, LoadGenerator.Waveform.SINE},
+		                           LoadGenerator.Format.CSV,
+		                           LoadGenerator.Transport.IN_PROCESS,
+		                           null,
+		                           0);
+		tester.start();
 		
 		CommunicationView.instance.setConnected(true);
 		connected = true;
@@ -922,10 +969,8 @@ public class CommunicationController {
 	 */
 	private static void disconnectFromTester() {
 		
-		if(testerThread != null && testerThread.isAlive()) {
-			testerThread.interrupt();
-			while(testerThread.isAlive()); // wait
-		}
+		if(tester != null)
+			tester.stop();
 		
 	}
 	
@@ -944,6 +989,7 @@ public class CommunicationController {
 		
 		int settingsFileCount = 0;
 		int csvFileCount = 0;
+		int sessionFileCount = 0;
 		int cameraMjpgFileCount = 0;
 		int cameraBinFileCount = 0;
 		int invalidFileCount = 0;
@@ -954,6 +1000,8 @@ public class CommunicationController {
 				settingsFileCount++;
 			else if(filepath.endsWith(".csv"))
 				csvFileCount++;
+			else if(filepath.endsWith(SessionFile.EXTENSION))
+				sessionFileCount++;
 			else if(filepath.endsWith(".mjpg"))
 				cameraMjpgFileCount++;
 			else if(filepath.endsWith(".bin"))
@@ -962,7 +1010,7 @@ public class CommunicationController {
 				invalidFileCount++;
 		
 		if(invalidFileCount > 0) {
-			NotificationsController.showFailureForSeconds("Unsupported file type. Only files exported from TelemetryViewer can be imported:\nSettings files (.txt)\nCSV files (.csv)\nCamera image files (.mjpg)\nCamera image index files (.bin)", 20, true);
+			NotificationsController.showFailureForSeconds("Unsupported file type. Only files exported from TelemetryViewer can be imported:\nSettings files (.txt)\nCSV files (.csv)\nSession files (" + SessionFile.EXTENSION + ")\nCamera image files (.mjpg)\nCamera image index files (.bin)", 20, true);
 			return;
 		}
 		if(cameraMjpgFileCount != cameraBinFileCount) {
@@ -977,14 +1025,22 @@ public class CommunicationController {
 			NotificationsController.showFailureForSeconds("Only one settings file can be opened at a time.", 10, true);
 			return;
 		}
+		if(sessionFileCount > 1) {
+			NotificationsController.showFailureForSeconds("Only one session file can be opened at a time.", 10, true);
+			return;
+		}
+		if(sessionFileCount > 0 && settingsFileCount + csvFileCount > 0) {
+			NotificationsController.showFailureForSeconds("A session file already contains the settings and samples, so it can not be opened with a settings file or CSV file.", 10, true);
+			return;
+		}
 		if(cameraMjpgFileCount > 0)
 			for(String filepath : filepaths)
 				if(filepath.endsWith(".mjpg") && !Arrays.asList(filepaths).contains(filepath.substring(0, filepath.length() - 4) + "bin")) {
 					NotificationsController.showFailureForSeconds("Each MJPG file must have a corresponding BIN file.", 10, true);
 					return;
 				}
-		if(cameraMjpgFileCount > 0 && csvFileCount == 0) {
-			NotificationsController.showFailureForSeconds("Camera images can only be imported along with their corresponding CSV file.", 10, true);
+		if(cameraMjpgFileCount > 0 && csvFileCount == 0 && sessionFileCount == 0) {
+			NotificationsController.showFailureForSeconds("Camera images can only be imported along with their corresponding CSV file or session file.", 10, true);
 			return;
 		}
 		
@@ -1003,6 +1059,13 @@ public class CommunicationController {
 				if(filepath.endsWith(".csv"))
 					importCsvFile(filepath);
 		
+		// import the session file if requested
+		if(sessionFileCount == 1)
+			for(String filepath : filepaths)
+				if(filepath.endsWith(SessionFile.EXTENSION))
+					if(!importSessionFile(filepath))
+						return;
+		
 		// import the camera images if requested
 		if(cameraMjpgFileCount > 0)
 			for(String filepath : filepaths)
@@ -1019,13 +1082,15 @@ public class CommunicationController {
 	 * @param filepath              The absolute path, including the part of the filename that will be common to all exported files.
 	 * @param exportSettingsFile    If true, export the settings to filepath + ".txt"
 	 * @param exportCsvFile         If true, export the samples to filepath + ".csv"
+	 * @param exportSessionFile     If true, export the settings and samples to filepath + SessionFile.EXTENSION
 	 * @param exportCameraNames     For each camera name in this List, export images to filepath + camera name + ".mjpg" and corresponding index data to filepath + camera name + ".bin"
 	 */
-	public static void exportFiles(String filepath, boolean exportSettingsFile, boolean exportCsvFile, List<String> exportCameraNames) {
+	public static void exportFiles(String filepath, boolean exportSettingsFile, boolean exportCsvFile, boolean exportSessionFile, List<String> exportCameraNames) {
 		
 		Thread exportThread = new Thread(() -> {
 			
-			double fileCount = exportCameraNames.size() + (exportCsvFile ? 1 : 0);
+			double fileCount = exportCameraNames.size() + (exportCsvFile ? 1 : 0) + (exportSessionFile ? 1 : 0);
+			int samplesFileCount = (exportCsvFile ? 1 : 0) + (exportSessionFile ? 1 : 0); // exported before the camera files
 		
 			CommunicationView.instance.allowConnecting(false);
 			CommunicationView.instance.allowImporting(false);
@@ -1040,13 +1105,15 @@ public class CommunicationController {
 	
 			if(exportCsvFile)
 				exportCsvFile(filepath + ".csv", (progressAmount) -> NotificationsController.setProgress(progressAmount / fileCount));
+			
+			if(exportSessionFile)
+				exportSessionFile(filepath + SessionFile.EXTENSION, (progressAmount) -> NotificationsController.setProgress(((exportCsvFile ? 1 : 0) / fileCount) + (progressAmount / fileCount)));
 	
 			for(int i = 0; i < exportCameraNames.size(); i++)
 				for(Camera camera : DatasetsController.getExistingCameras())
 					if(exportCameraNames.get(i).equals(camera.name)) {
 						int cameraN = i;
-						camera.exportFiles(filepath, (progressAmount) -> NotificationsController.setProgress(exportCsvFile ? (((1 + cameraN) / fileCount) + (progressAmount / fileCount)) :
-							                                                                                                     (((cameraN) / fileCount) + (progressAmount / fileCount))));
+						camera.exportFiles(filepath, (progressAmount) -> NotificationsController.setProgress(((samplesFileCount + cameraN) / fileCount) + (progressAmount / fileCount)));
 					}
 			
 			NotificationsController.setProgress(-1);
@@ -1064,46 +1131,121 @@ public class CommunicationController {
 		
 	}
 	
+	private static final int CSV_CHUNK_SIZE = 16384; // rows per chunk, divides SLOT_SIZE so each chunk is in one slot
+	
 	/**
 	 * Exports all samples to a CSV file.
 	 * 
+	 * The rows are split into chunks, which are formatted in parallel by a pool of threads.
+	 * This thread writes the chunks to the file in order, while a limited number of later chunks are being formatted.
+	 * 
 	 * @param filepath           Full path with file name.
 	 * @param progressTracker    Consumer<Double> that will be notified as progress is made.
 	 */
 	static void exportCsvFile(String filepath, Consumer<Double> progressTracker) {
 		
-		int datasetsCount = DatasetsController.getDatasetsCount();
+		Dataset[] datasets = DatasetsController.getAllDatasets();
 		int sampleCount = DatasetsController.getSampleCount();
+		int chunkCount = (sampleCount + CSV_CHUNK_SIZE - 1) / CSV_CHUNK_SIZE;
+		int threadCount = Runtime.getRuntime().availableProcessors();
+		int maxChunksInFlight = 2 * threadCount; // limits memory usage if the disk is slower than the formatting
+		
+		ExecutorService formatterThreads = Executors.newFixedThreadPool(threadCount, runnable -> {
+			Thread thread = new Thread(runnable, "CSV Formatter Thread");
+			thread.setDaemon(true);
+			return thread;
+		});
+		ConcurrentLinkedQueue<CsvFormatter> unusedFormatters = new ConcurrentLinkedQueue<CsvFormatter>();
+		ArrayDeque<Future<CsvFormatter>> chunks = new ArrayDeque<Future<CsvFormatter>>();
 		
-		try {
+		try(FileChannel file = FileChannel.open(Paths.get(filepath), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
 			
-			PrintWriter logFile = new PrintWriter(filepath, "UTF-8");
-			logFile.print("Sample Number (" + CommunicationController.getSampleRate() + " samples per second),UNIX Timestamp (Milliseconds since 1970-01-01)");
-			for(int i = 0; i < datasetsCount; i++) {
-				Dataset d = DatasetsController.getDatasetByIndex(i);
-				logFile.print("," + d.name + " (" + d.unit + ")");
-			}
-			logFile.println();
+			CsvFormatter header = new CsvFormatter(1024);
+			formatCsvHeader(header, datasets);
+			long position = 0;
+			ByteBuffer bytes = header.getBytes();
+			DatasetsController.writeFully(file, bytes, position);
+			position += bytes.limit();
 			
-			for(int i = 0; i < sampleCount; i++) {
-				// ensure active slots don't get flushed to disk, and periodically update the progress tracker
-				if(i % 1024 == 0) {
-					DatasetsController.dontFlushRangeBeingExported(i, i + DatasetsController.SLOT_SIZE);
-					progressTracker.accept((double) i / (double) sampleCount);
+			int nextChunk = 0;
+			for(int chunk = 0; chunk < chunkCount; chunk++) {
+				
+				// keep the formatter threads busy
+				for(; nextChunk < chunkCount && nextChunk < chunk + maxChunksInFlight; nextChunk++) {
+					int firstSampleNumber = nextChunk * CSV_CHUNK_SIZE;
+					int lastSampleNumber = Integer.min(firstSampleNumber + CSV_CHUNK_SIZE, sampleCount) - 1;
+					chunks.add(formatterThreads.submit(() -> {
+						CsvFormatter formatter = unusedFormatters.poll();
+						if(formatter == null)
+							formatter = new CsvFormatter(CSV_CHUNK_SIZE * (datasets.length + 2) * 12);
+						formatCsvRows(formatter, datasets, firstSampleNumber, lastSampleNumber);
+						return formatter;
+					}));
 				}
 				
-				logFile.print(i + "," + DatasetsController.getTimestamp(i));
-				for(int n = 0; n < datasetsCount; n++)
-					logFile.print("," + Float.toString(DatasetsController.getDatasetByIndex(n).getSample(i)));
-				logFile.println();
+				// write the chunks in order
+				CsvFormatter formatter = chunks.remove().get();
+				bytes = formatter.getBytes();
+				DatasetsController.writeFully(file, bytes, position);
+				position += bytes.limit();
+				formatter.clear();
+				unusedFormatters.add(formatter);
+				
+				progressTracker.accept((double) (chunk + 1) / (double) chunkCount);
 				
 			}
 			
-			DatasetsController.dontFlushRangeBeingExported(-1, -1);
+		} catch(Exception e) {
+			
+			NotificationsController.showFailureForSeconds("Unable to export the CSV file.\n" + e.getMessage(), 10, false);
 			
-			logFile.close();
+		} finally {
 			
-		} catch(Exception e) { }
+			formatterThreads.shutdownNow();
+			
+		}
+		
+	}
+	
+	/**
+	 * Formats the header line of a CSV file.
+	 * 
+	 * @param formatter    Where the text will be appended.
+	 * @param datasets     All datasets, in the order of the columns.
+	 */
+	static void formatCsvHeader(CsvFormatter formatter, Dataset[] datasets) {
+		
+		formatter.appendString("Sample Number (" + CommunicationController.getSampleRate() + " samples per second),UNIX Timestamp (Milliseconds since 1970-01-01)");
+		for(Dataset d : datasets)
+			formatter.appendString("," + d.name + " (" + d.unit + ")");
+		formatter.appendCharacter('\n');
+		
+	}
+	
+	/**
+	 * Formats a range of rows for a CSV file.
+	 * 
+	 * @param formatter            Where the text will be appended.
+	 * @param datasets             All datasets, in the order of the columns.
+	 * @param firstSampleNumber    First row (inclusive.)
+	 * @param lastSampleNumber     Last row (inclusive.) Must be in the same slot as firstSampleNumber.
+	 */
+	static void formatCsvRows(CsvFormatter formatter, Dataset[] datasets, int firstSampleNumber, int lastSampleNumber) {
+		
+		FloatBuffer[] samples = new FloatBuffer[datasets.length];
+		for(int n = 0; n < datasets.length; n++)
+			samples[n] = datasets[n].getBuffer(firstSampleNumber, lastSampleNumber);
+		
+		for(int i = firstSampleNumber; i <= lastSampleNumber; i++) {
+			formatter.appendLong(i);
+			formatter.appendCharacter(',');
+			formatter.appendLong(DatasetsController.getTimestamp(i));
+			for(int n = 0; n < datasets.length; n++) {
+				formatter.appendCharacter(',');
+				formatter.appendFloat(samples[n].get(i - firstSampleNumber));
+			}
+			formatter.appendCharacter('\n');
+		}
 		
 	}
 	
@@ -1117,81 +1259,118 @@ public class CommunicationController {
 		try {
 			
 			PrintWriter file = new PrintWriter(new File(outputFilePath), "UTF-8");
-			file.println("Telemetry Viewer v0.7 Settings");
-			file.println("");
+			writeSettings(file);
+			file.close();
 			
-			file.println("GUI Settings:");
-			file.println("");
-			file.println("\ttile column count = "          + SettingsController.getTileColumns());
-			file.println("\ttile row count = "             + SettingsController.getTileRows());
-			file.println("\ttime format = "                + SettingsController.getTimeFormat());
-			file.println("\tshow 24-hour time = "          + SettingsController.getTimeFormat24hours());
-			file.println("\tshow plot tooltips = "         + SettingsController.getTooltipVisibility());
-			file.println("\tsmooth scrolling = "           + SettingsController.getSmoothScrolling());
-			file.println("\tshow fps and period = "        + SettingsController.getFpsVisibility());
-			file.println("\tchart index for benchmarks = " + SettingsController.getBenchmarkedChartIndex());
-			file.println("\tantialiasing level = "         + SettingsController.getAntialiasingLevel());
-			file.println("");
+		} catch (IOException e) {
 			
-			file.println("Communication Settings:");
-			file.println("");
-			file.println("\tport = "                + CommunicationController.getPort());
-			file.println("\tuart baud rate = "      + CommunicationController.getBaudRate());
-			file.println("\ttcp/udp port number = " + CommunicationController.getPortNumber());
-			file.println("\tpacket type = "         + CommunicationController.getPacketType());
-			file.println("\tsample rate = "         + CommunicationController.getSampleRate());
-			file.println("");
+			NotificationsController.showFailureForSeconds("Unable to save the settings file.", 5, false);
 			
-			file.println(DatasetsController.getDatasetsCount() + " Data Structure Locations:");
+		}
+		
+	}
+	
+	/**
+	 * Saves the settings and all samples to a session file, which can be reopened much faster than a CSV file.
+	 * 
+	 * @param filepath           Full path with file name.
+	 * @param progressTracker    Consumer<Double> that will be notified as progress is made.
+	 * @return                   True if the session file was saved, false if it could not be saved (a failure notification will have been shown.)
+	 */
+	static boolean exportSessionFile(String filepath, Consumer<Double> progressTracker) {
+		
+		try {
 			
-			for(Dataset dataset : DatasetsController.getAllDatasets()) {
-				
-				file.println("");
-				file.println("\tlocation = " + dataset.location);
-				file.println("\tbinary processor = " + (dataset.processor == null ? "null" : dataset.processor.toString()));
-				file.println("\tname = " + dataset.name);
-				file.println("\tcolor = " + String.format("0x%02X%02X%02X", dataset.color.getRed(), dataset.color.getGreen(), dataset.color.getBlue()));
-				file.println("\tunit = " + dataset.unit);
-				file.println("\tconversion factor a = " + dataset.conversionFactorA);
-				file.println("\tconversion factor b = " + dataset.conversionFactorB);
-				if(dataset.processor != null && dataset.processor.toString().startsWith("Bitfield"))
-					for(Dataset.Bitfield bitfield : dataset.bitfields) {
-						file.print("\t[" + bitfield.MSBit + ":" + bitfield.LSBit + "] = " + String.format("0x%02X%02X%02X ", bitfield.states[0].color.getRed(), bitfield.states[0].color.getGreen(), bitfield.states[0].color.getBlue()) + bitfield.states[0].name);
-						for(int i = 1; i < bitfield.states.length; i++)
-							file.print("," + String.format("0x%02X%02X%02X ", bitfield.states[i].color.getRed(), bitfield.states[i].color.getGreen(), bitfield.states[i].color.getBlue()) + bitfield.states[i].name);
-						file.println();
-					}
-				
-			}
+			StringWriter settings = new StringWriter();
+			PrintWriter writer = new PrintWriter(settings);
+			writeSettings(writer);
+			writer.close();
+			SessionFile.export(filepath, settings.toString(), progressTracker);
+			return true;
 			
-			file.println("");
-			file.println("Checksum:");
-			file.println("");
-			file.println("\tlocation = " + packet.getChecksumProcessorLocation());
-			file.println("\tchecksum processor = " + (packet.checksumProcessor == null ? "null" : packet.checksumProcessor.toString()));
+		} catch(IOException e) {
 			
-			file.println("");
-			file.println(ChartsController.getCharts().size() + " Charts:");
+			NotificationsController.showFailureForSeconds("Unable to save the session file.\n" + e.getMessage(), 10, false);
+			return false;
 			
-			for(PositionedChart chart : ChartsController.getCharts()) {
-				
-				file.println("");
-				file.println("\tchart type = " + chart.toString());
-				file.println("\ttop left x = " + chart.topLeftX);
-				file.println("\ttop left y = " + chart.topLeftY);
-				file.println("\tbottom right x = " + chart.bottomRightX);
-				file.println("\tbottom right y = " + chart.bottomRightY);
-				
-				for(String line : chart.exportChart())
-					file.println("\t" + line);
-				
-			}
+		}
+		
+	}
+	
+	/**
+	 * Writes the GUI settings, communication settings, data structure definition, and chart settings.
+	 * 
+	 * @param file    Where to write the settings text.
+	 */
+	static void writeSettings(PrintWriter file) {
+		
+		file.println("Telemetry Viewer v0.7 Settings");
+		file.println("");
+		
+		file.println("GUI Settings:");
+		file.println("");
+		file.println("\ttile column count = "          + SettingsController.getTileColumns());
+		file.println("\ttile row count = "             + SettingsController.getTileRows());
+		file.println("\ttime format = "                + SettingsController.getTimeFormat());
+		file.println("\tshow 24-hour time = "          + SettingsController.getTimeFormat24hours());
+		file.println("\tshow plot tooltips = "         + SettingsController.getTooltipVisibility());
+		file.println("\tsmooth scrolling = "           + SettingsController.getSmoothScrolling());
+		file.println("\tshow fps and period = "        + SettingsController.getFpsVisibility());
+		file.println("\tchart index for benchmarks = " + SettingsController.getBenchmarkedChartIndex());
+		file.println("\tantialiasing level = "         + SettingsController.getAntialiasingLevel());
+		file.println("");
+		
+		file.println("Communication Settings:");
+		file.println("");
+		file.println("\tport = "                + CommunicationController.getPort());
+		file.println("\tuart baud rate = "      + CommunicationController.getBaudRate());
+		file.println("\ttcp/udp port number = " + CommunicationController.getPortNumber());
+		file.println("\tpacket type = "         + CommunicationController.getPacketType());
+		file.println("\tsample rate = "         + CommunicationController.getSampleRate());
+		file.println("");
+		
+		file.println(DatasetsController.getDatasetsCount() + " Data Structure Locations:");
+		
+		for(Dataset dataset : DatasetsController.getAllDatasets()) {
 			
-			file.close();
+			file.println("");
+			file.println("\tlocation = " + dataset.location);
+			file.println("\tbinary processor = " + (dataset.processor == null ? "null" : dataset.processor.toString()));
+			file.println("\tname = " + dataset.name);
+			file.println("\tcolor = " + String.format("0x%02X%02X%02X", dataset.color.getRed(), dataset.color.getGreen(), dataset.color.getBlue()));
+			file.println("\tunit = " + dataset.unit);
+			file.println("\tconversion factor a = " + dataset.conversionFactorA);
+			file.println("\tconversion factor b = " + dataset.conversionFactorB);
+			if(dataset.processor != null && dataset.processor.toString().startsWith("Bitfield"))
+				for(Dataset.Bitfield bitfield : dataset.bitfields) {
+					file.print("\t[" + bitfield.MSBit + ":" + bitfield.LSBit + "] = " + String.format("0x%02X%02X%02X ", bitfield.states[0].color.getRed(), bitfield.states[0].color.getGreen(), bitfield.states[0].color.getBlue()) + bitfield.states[0].name);
+					for(int i = 1; i < bitfield.states.length; i++)
+						file.print("," + String.format("0x%02X%02X%02X ", bitfield.states[i].color.getRed(), bitfield.states[i].color.getGreen(), bitfield.states[i].color.getBlue()) + bitfield.states[i].name);
+					file.println();
+				}
+				
+		}
+		
+		file.println("");
+		file.println("Checksum:");
+		file.println("");
+		file.println("\tlocation = " + packet.getChecksumProcessorLocation());
+		file.println("\tchecksum processor = " + (packet.checksumProcessor == null ? "null" : packet.checksumProcessor.toString()));
+		
+		file.println("");
+		file.println(ChartsController.getCharts().size() + " Charts:");
+		
+		for(PositionedChart chart : ChartsController.getCharts()) {
 			
-		} catch (IOException e) {
+			file.println("");
+			file.println("\tchart type = " + chart.toString());
+			file.println("\ttop left x = " + chart.topLeftX);
+			file.println("\ttop left y = " + chart.topLeftY);
+			file.println("\tbottom right x = " + chart.bottomRightX);
+			file.println("\tbottom right y = " + chart.bottomRightY);
 			
-			NotificationsController.showFailureForSeconds("Unable to save the settings file.", 5, false);
+			for(String line : chart.exportChart())
+				file.println("\t" + line);
 			
 		}
 		
@@ -1205,7 +1384,30 @@ public class CommunicationController {
 	 * @param connect          True to connect, or false to just configure things without connecting to the device.
 	 * @return                 True on success, or false on error.
 	 */
-	private static boolean importSettingsFile(String inputFilePath, boolean connect) {
+	static boolean importSettingsFile(String inputFilePath, boolean connect) {
+		
+		try {
+			
+			return importSettings(Files.readAllLines(new File(inputFilePath).toPath(), StandardCharsets.UTF_8), connect);
+			
+		} catch (IOException ioe) {
+			
+			NotificationsController.showFailureUntil("Unable to open the settings file.", () -> false, true);
+			return false;
+			
+		}
+		
+	}
+	
+	/**
+	 * Resets the current state to the state defined by the text of a settings file.
+	 * When running headless, the GUI settings and charts are ignored.
+	 * 
+	 * @param settingsLines    The lines of the settings file.
+	 * @param connect          True to connect, or false to just configure things without connecting to the device.
+	 * @return                 True on success, or false on error.
+	 */
+	private static boolean importSettings(List<String> settingsLines, boolean connect) {
 		
 		CommunicationController.disconnect(null);
 		ChartsController.removeAllCharts();
@@ -1215,7 +1417,7 @@ public class CommunicationController {
 		
 		try {
 			
-			lines = new QueueOfLines(Files.readAllLines(new File(inputFilePath).toPath(), StandardCharsets.UTF_8));
+			lines = new QueueOfLines(settingsLines);
 			
 			ChartUtils.parseExact(lines.remove(), "Telemetry Viewer v0.7 Settings");
 			ChartUtils.parseExact(lines.remove(), "");
@@ -1236,14 +1438,16 @@ public class CommunicationController {
 			int antialiasingLevel     = ChartUtils.parseInteger(lines.remove(), "antialiasing level = %d");
 			ChartUtils.parseExact(lines.remove(), "");
 			
-			SettingsController.setTileColumns(tileColumns);
-			SettingsController.setTileRows(tileRows);
-			SettingsController.setTimeFormat(timeFormat);
-			SettingsController.setTimeFormat24hours(timeFormat24hours);
-			SettingsController.setTooltipVisibility(tooltipVisibility);
-			SettingsController.setSmoothScrolling(smoothScrolling);
-			SettingsController.setFpsVisibility(fpsVisibility);
-			SettingsController.setAntialiasingLevel(antialiasingLevel);
+			if(!GraphicsEnvironment.isHeadless()) {
+				SettingsController.setTileColumns(tileColumns);
+				SettingsController.setTileRows(tileRows);
+				SettingsController.setTimeFormat(timeFormat);
+				SettingsController.setTimeFormat24hours(timeFormat24hours);
+				SettingsController.setTooltipVisibility(tooltipVisibility);
+				SettingsController.setSmoothScrolling(smoothScrolling);
+				SettingsController.setFpsVisibility(fpsVisibility);
+				SettingsController.setAntialiasingLevel(antialiasingLevel);
+			}
 
 			ChartUtils.parseExact(lines.remove(), "Communication Settings:");
 			ChartUtils.parseExact(lines.remove(), "");
@@ -1334,6 +1538,10 @@ public class CommunicationController {
 			}
 			
 			packet.dataStructureDefined = true;
+			
+			// there are no charts when running headless
+			if(GraphicsEnvironment.isHeadless())
+				return true;
 
 			ChartUtils.parseExact(lines.remove(), "");
 			int chartsCount = ChartUtils.parseInteger(lines.remove(), "%d Charts:");
@@ -1385,11 +1593,6 @@ public class CommunicationController {
 			SettingsController.setBenchmarkedChartByIndex(chartIndex);
 			return true;
 			
-		} catch (IOException ioe) {
-			
-			NotificationsController.showFailureUntil("Unable to open the settings file.", () -> false, true);
-			return false;
-			
 		} catch(AssertionError ae) {
 		
 			CommunicationController.disconnect(null);
@@ -1417,6 +1620,31 @@ public class CommunicationController {
 		
 	}
 	
+	/**
+	 * Imports the settings and all samples from a session file.
+	 * The samples are memory-mapped instead of parsed, so this is much faster than importing a CSV file.
+	 * 
+	 * @param filepath    Full path with file name.
+	 * @return            True on success, or false on error.
+	 */
+	private static boolean importSessionFile(String filepath) {
+		
+		try {
+			if(!importSettings(SessionFile.readSettings(filepath), false))
+				return false;
+		} catch(IOException e) {
+			NotificationsController.showFailureUntil("Unable to open the session file.\n" + e.getMessage(), () -> false, true);
+			return false;
+		}
+		
+		disconnect(null);
+		setPort(PORT_FILE);
+		importFilePath = filepath;
+		connect(true);
+		return true;
+		
+	}
+	
 	/**
 	 * Imports all images from a MJPG and corresponding BIN file.
 	 * 
@@ -42,6 +42,7 @@ public class CommunicationView extends JPanel {
 	private Component baudRatePadding;
 	private JComboBox<String> baudRateCombobox;
 	private JComboBox<String> portNumberCombobox;
+	private JComboBox<String> replaySpeedCombobox;
 	private JButton connectButton;
 
 	/**
@@ -64,9 +65,12 @@ public class CommunicationView extends JPanel {
 			
 			JFileChooser inputFiles = new JFileChooser(System.getProperty("user.home") + "/Desktop/");
 			inputFiles.setMultiSelectionEnabled(true);
-			inputFiles.setFileFilter(new FileNameExtensionFilter("Files Exported from Telemetry Viewer", "txt", "csv", "mjpg", "bin"));
+			inputFiles.setFileFilter(new FileNameExtensionFilter("Files Exported from Telemetry Viewer", "txt", "csv", SessionFile.EXTENSION.substring(1), "mjpg", "bin"));
+			JCheckBox realtimeCheckbox = new JCheckBox("Replay CSV files in real time", CommunicationController.getRealtimeImporting());
+			inputFiles.setAccessory(realtimeCheckbox);
 			JFrame parentWindow = (JFrame) SwingUtilities.windowForComponent(CommunicationView.instance);
 			if(inputFiles.showOpenDialog(parentWindow) == JFileChooser.APPROVE_OPTION) {
+				CommunicationController.setRealtimeImporting(realtimeCheckbox.isSelected());
 				File[] files = inputFiles.getSelectedFiles();
 				String[] filepaths = new String[files.length];
 				for(int i = 0; i < files.length; i++)
@@ -88,6 +92,7 @@ public class CommunicationView extends JPanel {
 			checkboxes.add(new JCheckBox("Settings file (the data structure, chart settings, and GUI settings)", true));
 			if(DatasetsController.getSampleCount() > 0) {
 				checkboxes.add(new JCheckBox("CSV file (the acquired samples and corresponding timestamps)", true));
+				checkboxes.add(new JCheckBox("Session file (the settings and acquired samples, in a binary format that can be reopened instantly)", false));
 				for(Camera camera : DatasetsController.getExistingCameras())
 					checkboxes.add(new JCheckBox("Camera files for \"" + camera.name + "\"", true));
 			}
@@ -118,18 +123,21 @@ public class CommunicationView extends JPanel {
 						absolutePath = absolutePath.substring(0, absolutePath.lastIndexOf("."));
 					boolean exportSettingsFile = false;
 					boolean exportCsvFile = false;
+					boolean exportSessionFile = false;
 					List<String> exportCameraNames = new ArrayList<String>();
 					for(JCheckBox checkbox : checkboxes) {
 						if(checkbox.isSelected() && checkbox.getText().startsWith("Settings file"))
 							exportSettingsFile = true;
 						else if(checkbox.isSelected() && checkbox.getText().startsWith("CSV file"))
 							exportCsvFile = true;
+						else if(checkbox.isSelected() && checkbox.getText().startsWith("Session file"))
+							exportSessionFile = true;
 						else if(checkbox.isSelected()) {
 							String cameraName = checkbox.getText().substring(18, checkbox.getText().length() - 1);
 							exportCameraNames.add(cameraName);
 						}
 					}
-					CommunicationController.exportFiles(absolutePath, exportSettingsFile, exportCsvFile, exportCameraNames);
+					CommunicationController.exportFiles(absolutePath, exportSettingsFile, exportCsvFile, exportSessionFile, exportCameraNames);
 					exportWindow.dispose();
 				}
 				
@@ -254,6 +262,16 @@ public class CommunicationView extends JPanel {
 		});
 		CommunicationController.setPortNumber(Integer.parseInt(portNumberCombobox.getSelectedItem().toString().substring(1)));
 		
+		// CSV file replay speed
+		replaySpeedCombobox = new JComboBox<String>(new String[] {"Paused", "1x", "2x", "5x", "10x", "20x", "50x", "100x"});
+		replaySpeedCombobox.setMaximumRowCount(replaySpeedCombobox.getItemCount());
+		replaySpeedCombobox.setSelectedItem("1x");
+		replaySpeedCombobox.addActionListener(event -> {
+			String speed = replaySpeedCombobox.getSelectedItem().toString();
+			CommunicationController.setReplaySpeed(speed.equals("Paused") ? 0 : Double.parseDouble(speed.substring(0, speed.length() - 1)));
+		});
+		CommunicationController.setReplaySpeed(1);
+		
 		// connect/disconnect
 		connectButton = new JButton("Connect");
 		connectButton.addActionListener(event -> {
@@ -293,6 +311,7 @@ public class CommunicationView extends JPanel {
 		add(baudRatePadding);
 		add(baudRateCombobox);
 		add(portNumberCombobox);
+		add(replaySpeedCombobox);
 		add(Box.createHorizontalStrut(Theme.padding));
 		add(connectButton);
 		
@@ -408,25 +427,28 @@ public class CommunicationView extends JPanel {
 				baudRatePadding.setVisible(true);
 				baudRateCombobox.setVisible(true);
 				portNumberCombobox.setVisible(false);
+				replaySpeedCombobox.setVisible(false);
 				sampleRateTextfield.setEditable(true);
 				packetTypeCombobox.setVisible(true);
 			} else if(newPort.equals(CommunicationController.PORT_TEST)) {
 				baudRatePadding.setVisible(false);
 				baudRateCombobox.setVisible(false);
 				portNumberCombobox.setVisible(false);
-				sampleRateTextfield.setText("10000");
-				sampleRateTextfield.setEditable(false);
+				replaySpeedCombobox.setVisible(false);
+				sampleRateTextfield.setEditable(true);
 				packetTypeCombobox.setVisible(true);
 			} else if(newPort.equals(CommunicationController.PORT_FILE)) {
-				baudRatePadding.setVisible(false);
+				baudRatePadding.setVisible(true);
 				baudRateCombobox.setVisible(false);
 				portNumberCombobox.setVisible(false);
+				replaySpeedCombobox.setVisible(true);
 				sampleRateTextfield.setEditable(false);
 				packetTypeCombobox.setVisible(false);
 			} else {
 				baudRatePadding.setVisible(true);
 				baudRateCombobox.setVisible(false);
 				portNumberCombobox.setVisible(true);
+				replaySpeedCombobox.setVisible(false);
 				sampleRateTextfield.setEditable(true);
 				packetTypeCombobox.setVisible(true);
 			}
@@ -0,0 +1,208 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Formats CSV text directly into a byte array, without creating Strings.
+ * 
+ * Floats are written with the fewest significant digits that CsvTokenizer will parse back into exactly the same float.
+ * The digits are found with integer and double arithmetic, using the same exactly representable powers of ten that CsvTokenizer uses,
+ * so the round trip is checked with the same arithmetic that will be used when importing.
+ * Very large or very small numbers, NaN and Infinity fall back to Float.toString().
+ * 
+ * A CsvFormatter is not thread-safe, but it can be reused after calling clear().
+ */
+public class CsvFormatter {
+	
+	private static final double[] POWERS_OF_TEN = {1e0,  1e1,  1e2,  1e3,  1e4,  1e5,  1e6,  1e7,  1e8,  1e9,  1e10, 1e11,
+	                                                1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22}; // exactly representable as doubles
+	private static final long[] LONG_POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L};
+	private static final float MIN_FAST_MAGNITUDE = 1e-10f; // smaller non-zero numbers fall back to Float.toString()
+	private static final float MAX_FAST_MAGNITUDE = 1e10f;  // larger numbers fall back to Float.toString()
+	private static final int MAX_SIGNIFICANT_DIGITS = 9;    // always enough to identify a float
+	
+	private byte[] buffer;
+	private int length = 0;
+	
+	/**
+	 * @param capacity    Initial size of the buffer, in bytes. The buffer will grow if needed.
+	 */
+	public CsvFormatter(int capacity) {
+		
+		buffer = new byte[capacity];
+		
+	}
+	
+	/**
+	 * Empties the buffer so it can be reused.
+	 */
+	public void clear() {
+		
+		length = 0;
+		
+	}
+	
+	/**
+	 * @return    Number of bytes of formatted text.
+	 */
+	public int getLength() {
+		
+		return length;
+		
+	}
+	
+	/**
+	 * @return    The formatted text, as a ByteBuffer that shares its content with this formatter.
+	 */
+	public ByteBuffer getBytes() {
+		
+		return ByteBuffer.wrap(buffer, 0, length);
+		
+	}
+	
+	/**
+	 * @param c    An ASCII character, such as ',' or '\n'.
+	 */
+	public void appendCharacter(char c) {
+		
+		ensureCapacity(1);
+		buffer[length++] = (byte) c;
+		
+	}
+	
+	/**
+	 * @param text    Text to append. This creates a byte[], so it should only be used for things like header lines.
+	 */
+	public void appendString(String text) {
+		
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buffer, length, bytes.length);
+		length += bytes.length;
+		
+	}
+	
+	/**
+	 * @param value    Number to append, in decimal.
+	 */
+	public void appendLong(long value) {
+		
+		if(value == Long.MIN_VALUE) {
+			appendString(Long.toString(value));
+			return;
+		}
+		
+		ensureCapacity(20);
+		if(value < 0) {
+			buffer[length++] = '-';
+			value = -value;
+		}
+		
+		// write the digits backwards, then reverse them
+		int start = length;
+		do {
+			buffer[length++] = (byte) ('0' + (value % 10));
+			value /= 10;
+		} while(value != 0);
+		for(int i = start, j = length - 1; i < j; i++, j--) {
+			byte b = buffer[i];
+			buffer[i] = buffer[j];
+			buffer[j] = b;
+		}
+		
+	}
+	
+	/**
+	 * Appends a float with the fewest significant digits that will be parsed back into the same float, without an exponent.
+	 * 
+	 * @param value    Number to append.
+	 */
+	public void appendFloat(float value) {
+		
+		if(value == 0) {
+			appendString((Float.floatToRawIntBits(value) < 0) ? "-0.0" : "0.0");
+			return;
+		}
+		
+		float magnitude = Math.abs(value);
+		if(!(magnitude >= MIN_FAST_MAGNITUDE && magnitude < MAX_FAST_MAGNITUDE)) { // also true for NaN
+			appendString(Float.toString(value));
+			return;
+		}
+		
+		// find the decimal exponent, so the first significant digit is at 10^exponent
+		int exponent = (int) Math.floor(Math.log10(magnitude));
+		if(magnitude >= powerOfTen(exponent + 1))
+			exponent++;
+		else if(magnitude < powerOfTen(exponent))
+			exponent--;
+		
+		// try more and more significant digits until the number survives a round trip
+		for(int digits = 1; digits <= MAX_SIGNIFICANT_DIGITS; digits++) {
+			int scale = digits - 1 - exponent; // mantissa = magnitude * 10^scale
+			double scaled = (scale >= 0) ? magnitude * POWERS_OF_TEN[scale] : magnitude / POWERS_OF_TEN[-scale];
+			long mantissa = Math.round(scaled);
+			double parsed = (scale >= 0) ? mantissa / POWERS_OF_TEN[scale] : mantissa * POWERS_OF_TEN[-scale];
+			if((float) parsed == magnitude) {
+				appendDecimal(value < 0, mantissa, scale);
+				return;
+			}
+		}
+		
+		appendString(Float.toString(value));
+		
+	}
+	
+	/**
+	 * Appends mantissa * 10^(-scale) without an exponent, and without trailing zeros after the decimal point.
+	 */
+	private void appendDecimal(boolean negative, long mantissa, int scale) {
+		
+		// remove trailing zeros
+		while(scale > 0 && mantissa % 10 == 0) {
+			mantissa /= 10;
+			scale--;
+		}
+		
+		ensureCapacity(40);
+		if(negative)
+			buffer[length++] = '-';
+		
+		if(scale <= 0) {
+			appendLong(mantissa);
+			for(int i = 0; i < -scale; i++)
+				buffer[length++] = '0';
+			return;
+		}
+		
+		long integerPart = (scale < LONG_POWERS_OF_TEN.length) ? mantissa / LONG_POWERS_OF_TEN[scale] : 0;
+		long fractionPart = mantissa - integerPart * ((scale < LONG_POWERS_OF_TEN.length) ? LONG_POWERS_OF_TEN[scale] : 0);
+		appendLong(integerPart);
+		buffer[length++] = '.';
+		
+		// leading zeros of the fraction
+		int fractionDigits = 1;
+		for(long f = fractionPart; f >= 10; f /= 10)
+			fractionDigits++;
+		for(int i = fractionDigits; i < scale; i++)
+			buffer[length++] = '0';
+		appendLong(fractionPart);
+		
+	}
+	
+	private static double powerOfTen(int exponent) {
+		
+		return (exponent >= 0) ? POWERS_OF_TEN[exponent] : 1.0 / POWERS_OF_TEN[-exponent];
+		
+	}
+	
+	private void ensureCapacity(int byteCount) {
+		
+		if(length + byteCount > buffer.length) {
+			byte[] newBuffer = new byte[Integer.max(buffer.length * 2, length + byteCount)];
+			System.arraycopy(buffer, 0, newBuffer, 0, length);
+			buffer = newBuffer;
+		}
+		
+	}
+	
+}
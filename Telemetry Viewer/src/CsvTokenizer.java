@@ -0,0 +1,323 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits a stream (or buffer) of CSV text into lines and columns, working directly on the received bytes.
+ * 
+ * Bytes are received into one buffer, and each line is split into columns by recording the index of each comma.
+ * Numbers are parsed directly from the bytes, so no Strings are created, and columns that are never requested are never parsed.
+ * Lines end with "\n", "\r\n" or "\r". Empty lines are skipped.
+ * 
+ * A CsvTokenizer is not thread-safe. It should only be used by the thread that reads the stream.
+ * Several threads can parse different parts of a file by giving each thread its own CsvTokenizer and ByteBuffer.
+ */
+public class CsvTokenizer {
+	
+	private static final float[] POWERS_OF_TEN = {1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f}; // exactly representable as floats
+	private static final long MAX_EXACT_MANTISSA = 1L << 24;
+	
+	private final InputStream stream;
+	private final ByteBuffer bytes;
+	private boolean endOfStream = false;
+	private long consumedByteCount = 0;
+	
+	private byte[] buffer = new byte[65536];
+	private int bufferStart = 0; // first unprocessed byte
+	private int bufferEnd = 0;   // one past the last received byte
+	
+	// the current line
+	private int lineStart = 0;
+	private int lineEnd = 0;
+	private int columnCount = 0;
+	private int[] columnStart = new int[64]; // index of the first byte of each column, and one past the last comma
+	
+	/**
+	 * Creates a tokenizer for a stream of CSV text. Nothing is read from the stream until receive() or readLine() is called.
+	 * 
+	 * @param stream    The CSV text.
+	 */
+	public CsvTokenizer(InputStream stream) {
+		
+		this.stream = stream;
+		this.bytes = null;
+		
+	}
+	
+	/**
+	 * Creates a tokenizer for a buffer of CSV text, such as part of a memory-mapped file.
+	 * The end of the buffer is treated as the end of the stream, so the last line does not need a line ending.
+	 * 
+	 * @param bytes    The CSV text, from its position to its limit. The position will be advanced as bytes are received.
+	 */
+	public CsvTokenizer(ByteBuffer bytes) {
+		
+		this.stream = null;
+		this.bytes = bytes;
+		
+	}
+	
+	/**
+	 * Receives more bytes from the stream. This blocks if the stream blocks and nothing is available.
+	 * 
+	 * @param maxByteCount    Maximum number of bytes to receive. Use stream.available() to avoid blocking.
+	 * @return                Number of bytes received, or -1 if the end of the stream has been reached.
+	 * @throws IOException    If the stream can not be read.
+	 */
+	public int receive(int maxByteCount) throws IOException {
+		
+		// move any partial line to the front of the buffer, and grow the buffer if the partial line fills it
+		if(bufferStart > 0) {
+			System.arraycopy(buffer, bufferStart, buffer, 0, bufferEnd - bufferStart);
+			bufferEnd -= bufferStart;
+			bufferStart = 0;
+		}
+		if(bufferEnd == buffer.length) {
+			byte[] newBuffer = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, newBuffer, 0, bufferEnd);
+			buffer = newBuffer;
+		}
+		
+		int byteCount;
+		if(stream != null) {
+			byteCount = stream.read(buffer, bufferEnd, Integer.min(maxByteCount, buffer.length - bufferEnd));
+		} else if(bytes.hasRemaining()) {
+			byteCount = Integer.min(Integer.min(maxByteCount, buffer.length - bufferEnd), bytes.remaining());
+			bytes.get(buffer, bufferEnd, byteCount);
+		} else {
+			byteCount = -1;
+		}
+		if(byteCount < 0) {
+			endOfStream = true;
+			return -1;
+		}
+		
+		bufferEnd += byteCount;
+		return byteCount;
+		
+	}
+	
+	/**
+	 * Advances to the next complete line that has already been received.
+	 * If the end of the stream has been reached, any remaining text is treated as the last line.
+	 * 
+	 * @return    True if there is a new current line, false if a complete line has not been received yet.
+	 */
+	public boolean nextLine() {
+		
+		// skip line endings, so "\r\n" and empty lines are ignored
+		while(bufferStart < bufferEnd && (buffer[bufferStart] == '\n' || buffer[bufferStart] == '\r')) {
+			bufferStart++;
+			consumedByteCount++;
+		}
+		
+		// find the end of the line, and the start of each column
+		int i = bufferStart;
+		columnCount = 1;
+		columnStart[0] = i;
+		while(i < bufferEnd) {
+			byte b = buffer[i];
+			if(b == '\n' || b == '\r')
+				break;
+			if(b == ',') {
+				if(columnCount == columnStart.length - 1) {
+					int[] newColumnStart = new int[columnStart.length * 2];
+					System.arraycopy(columnStart, 0, newColumnStart, 0, columnCount);
+					columnStart = newColumnStart;
+				}
+				columnStart[columnCount++] = i + 1;
+			}
+			i++;
+		}
+		
+		if(i == bufferEnd && !(endOfStream && i > bufferStart)) {
+			columnCount = 0;
+			return false; // incomplete line
+		}
+		
+		lineStart = bufferStart;
+		lineEnd = i;
+		columnStart[columnCount] = lineEnd + 1;
+		consumedByteCount += lineEnd - lineStart;
+		bufferStart = lineEnd;
+		return true;
+		
+	}
+	
+	/**
+	 * Advances to the next line, receiving from the stream as needed. This blocks if the stream blocks.
+	 * 
+	 * @return                False if the end of the stream has been reached, otherwise true.
+	 * @throws IOException    If the stream can not be read.
+	 */
+	public boolean readLine() throws IOException {
+		
+		while(!nextLine()) {
+			if(endOfStream)
+				return false;
+			receive(Integer.MAX_VALUE);
+		}
+		
+		return true;
+		
+	}
+	
+	/**
+	 * @return    Number of columns in the current line.
+	 */
+	public int getColumnCount() {
+		
+		return columnCount;
+		
+	}
+	
+	/**
+	 * @return    Number of bytes that have been consumed so far, including line endings. This is useful for tracking progress.
+	 */
+	public long getConsumedByteCount() {
+		
+		return consumedByteCount;
+		
+	}
+	
+	/**
+	 * @return    Number of bytes before the current line, including the line endings of previous lines.
+	 */
+	public long getLineOffset() {
+		
+		return consumedByteCount - (lineEnd - lineStart);
+		
+	}
+	
+	/**
+	 * @return    The current line as a String. This creates a String, so it should only be used for things like header lines.
+	 */
+	public String getLine() {
+		
+		return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+		
+	}
+	
+	/**
+	 * Parses one column of the current line as a float, without creating a String.
+	 * The result is always identical to Float.parseFloat(). Numbers are only converted here when that takes one correctly rounded float operation:
+	 * the digits must fit in a float exactly (at most 2^24) and be multiplied or divided by at most 10^10. Anything else falls back to Float.parseFloat().
+	 * 
+	 * @param column                    Column number, starting at 0.
+	 * @return                          The number.
+	 * @throws NumberFormatException    If the column does not exist or does not contain a number.
+	 */
+	public float getFloat(int column) {
+		
+		if(column >= columnCount)
+			throw new NumberFormatException("Column " + column + " does not exist.");
+		
+		int start = columnStart[column];
+		int end = columnStart[column + 1] - 1; // -1 for the comma or line ending
+		
+		// trim spaces
+		while(start < end && buffer[start] == ' ')
+			start++;
+		while(end > start && buffer[end - 1] == ' ')
+			end--;
+		
+		int i = start;
+		boolean negative = false;
+		if(i < end && (buffer[i] == '-' || buffer[i] == '+'))
+			negative = buffer[i++] == '-';
+		
+		// accumulate up to 18 significant digits, and track where the decimal point is
+		long mantissa = 0;
+		int significantDigits = 0;
+		int exponent = 0;
+		boolean hasDigits = false;
+		while(i < end && buffer[i] >= '0' && buffer[i] <= '9') {
+			if(significantDigits < 18) {
+				mantissa = mantissa * 10 + (buffer[i] - '0');
+				if(mantissa != 0)
+					significantDigits++;
+			} else {
+				exponent++;
+			}
+			hasDigits = true;
+			i++;
+		}
+		if(i < end && buffer[i] == '.') {
+			i++;
+			while(i < end && buffer[i] >= '0' && buffer[i] <= '9') {
+				if(significantDigits < 18) {
+					mantissa = mantissa * 10 + (buffer[i] - '0');
+					exponent--;
+					if(mantissa != 0)
+						significantDigits++;
+				}
+				hasDigits = true;
+				i++;
+			}
+		}
+		if(hasDigits && i < end && (buffer[i] == 'e' || buffer[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if(i < end && (buffer[i] == '-' || buffer[i] == '+'))
+				negativeExponent = buffer[i++] == '-';
+			int exponentDigits = 0;
+			int explicitExponent = 0;
+			while(i < end && buffer[i] >= '0' && buffer[i] <= '9') {
+				if(explicitExponent < 10000)
+					explicitExponent = explicitExponent * 10 + (buffer[i] - '0');
+				exponentDigits++;
+				i++;
+			}
+			if(exponentDigits == 0)
+				hasDigits = false;
+			exponent += negativeExponent ? -explicitExponent : explicitExponent;
+		}
+		
+		// fall back to Float.parseFloat() for anything unusual (NaN, Infinity, hex, garbage) or anything that can't be converted with one float operation
+		// (converting to a double first, then to a float, would round twice and can be 1 ulp away from Float.parseFloat())
+		if(!hasDigits || i != end || mantissa > MAX_EXACT_MANTISSA || exponent < -10 || exponent > 10)
+			return Float.parseFloat(new String(buffer, start, end - start, StandardCharsets.US_ASCII));
+		
+		float value = (exponent < 0) ? (float) mantissa / POWERS_OF_TEN[-exponent] : (float) mantissa * POWERS_OF_TEN[exponent];
+		return negative ? -value : value;
+		
+	}
+	
+	/**
+	 * Parses one column of the current line as a long, without creating a String.
+	 * 
+	 * @param column                    Column number, starting at 0.
+	 * @return                          The number.
+	 * @throws NumberFormatException    If the column does not exist or does not contain an integer.
+	 */
+	public long getLong(int column) {
+		
+		if(column >= columnCount)
+			throw new NumberFormatException("Column " + column + " does not exist.");
+		
+		int start = columnStart[column];
+		int end = columnStart[column + 1] - 1; // -1 for the comma or line ending
+		
+		int i = start;
+		boolean negative = false;
+		if(i < end && (buffer[i] == '-' || buffer[i] == '+'))
+			negative = buffer[i++] == '-';
+		
+		long value = 0;
+		int digits = 0;
+		while(i < end && buffer[i] >= '0' && buffer[i] <= '9') {
+			value = value * 10 + (buffer[i] - '0');
+			digits++;
+			i++;
+		}
+		
+		// fall back to Long.parseLong() for anything unusual, so the usual exceptions are thrown
+		if(digits == 0 || digits > 18 || i != end)
+			return Long.parseLong(new String(buffer, start, end - start, StandardCharsets.US_ASCII).trim());
+		
+		return negative ? -value : value;
+		
+	}
+	
+}
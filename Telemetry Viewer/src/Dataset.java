@@ -1,12 +1,8 @@
 import java.awt.Color;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
-import java.nio.file.Files;
-import java.nio.file.Paths;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -31,110 +27,271 @@ public class Dataset {
 	List<Bitfield> bitfields;
 
 	/**
-	 * Samples are stored in an array of Slots. Each Slot contains 1M values, and may be flushed to disk if RAM runs low.
-	 * Slots are further divided into "blocks" that cache min/max values.
+	 * Samples are stored in an array of Slots. Each Slot contains 1M values, in a memory-mapped file, so the OS can page them in and out of RAM as needed.
+	 * 
+	 * Each Slot also contains a min/max pyramid: the samples are divided into blocks of 64, and the min/max of each block is cached.
+	 * Each higher level of the pyramid caches the min/max of blocks that are twice as large, up to one block for the entire Slot.
+	 * This allows the min/max of any range of samples to be found by checking O(log(n)) blocks, plus at most 2*63 samples at the edges.
 	 */
-	private final int BLOCK_SIZE = 1024;
+	private static final int MIN_BLOCK_SIZE_SHIFT = 6; // 64 samples
+	private static final int MIN_BLOCK_SIZE = 1 << MIN_BLOCK_SIZE_SHIFT;
+	private static final int PYRAMID_LEVELS = Integer.numberOfTrailingZeros(DatasetsController.SLOT_SIZE) - MIN_BLOCK_SIZE_SHIFT + 1;
+	private static final int[] PYRAMID_LEVEL_OFFSET = new int[PYRAMID_LEVELS]; // index of the first min/max pair for each level
+	private static final int PYRAMID_SIZE;
+	static {
+		int offset = 0;
+		for(int level = 0; level < PYRAMID_LEVELS; level++) {
+			PYRAMID_LEVEL_OFFSET[level] = offset;
+			offset += 2 * (DatasetsController.SLOT_SIZE >> (MIN_BLOCK_SIZE_SHIFT + level));
+		}
+		PYRAMID_SIZE = offset;
+	}
+	static final int SLOT_BYTE_COUNT = (DatasetsController.SLOT_SIZE + PYRAMID_SIZE) * 4; // the values, then the pyramid
 	class Slot {
 		
-		private String pathOnDisk = "cache/" + this.toString();
-		private volatile boolean inRam = true;
-		private volatile boolean flushing = false;
+		private final FileChannel file;
+		private final ByteBuffer bytes;
+		private final FloatBuffer values;
+		private final FloatBuffer pyramid; // {min, max} pairs for each block, for each level of the pyramid
 		
-		private volatile float[] values = new float[DatasetsController.SLOT_SIZE];
-		private volatile float[] minimumValueInBlock = new float[DatasetsController.SLOT_SIZE / BLOCK_SIZE];
-		private volatile float[] maximumValueInBlock = new float[DatasetsController.SLOT_SIZE / BLOCK_SIZE];
+		public Slot() {
+			
+			this.file = DatasetsController.createCacheFile();
+			this.bytes = DatasetsController.mapCacheFile(file, SLOT_BYTE_COUNT);
+			this.values = getFloats(bytes, 0, DatasetsController.SLOT_SIZE);
+			this.pyramid = getFloats(bytes, DatasetsController.SLOT_SIZE, PYRAMID_SIZE);
+			
+		}
 		
-		public void moveToDisk() {
+		/**
+		 * Reopens a full Slot that was saved with writeTo(). Values can not be added to it.
+		 * 
+		 * @param bytes    SLOT_BYTE_COUNT bytes, memory-mapped read-only from a session file.
+		 */
+		public Slot(ByteBuffer bytes) {
 			
-			if(!inRam || flushing)
-				return;
+			this.file = null;
+			this.bytes = bytes;
+			this.values = getFloats(bytes, 0, DatasetsController.SLOT_SIZE);
+			this.pyramid = getFloats(bytes, DatasetsController.SLOT_SIZE, PYRAMID_SIZE);
 			
-			flushing = true;
-			
-			new Thread(() -> {
-				try {
-					ObjectOutputStream stream = new ObjectOutputStream(new FileOutputStream(pathOnDisk));
-					stream.writeObject(values);
-					stream.writeObject(minimumValueInBlock);
-					stream.writeObject(maximumValueInBlock);
-					stream.close();
-					inRam = false;
-					values = null;
-					flushing = false;
-				} catch(Exception e) {
-					e.printStackTrace();
-				}
-			}).start();
+		}
+		
+		public void removeFromDisk() {
+			
+			try { if(file != null) file.close(); } catch(IOException e) {}
 			
 		}
 		
-		private void copyToRam() {
-			
-			try {
-				ObjectInputStream stream = new ObjectInputStream(new FileInputStream(pathOnDisk));
-				values = (float[]) stream.readObject();
-				minimumValueInBlock = (float[]) stream.readObject();
-				maximumValueInBlock = (float[]) stream.readObject();
-				stream.close();
-				inRam = true;
-			} catch(Exception e) {
-				e.printStackTrace();
-			}
+		/**
+		 * Replaces the contents of this Slot.
+		 * 
+		 * @param savedBytes    SLOT_BYTE_COUNT bytes that were saved with writeTo().
+		 */
+		public void copyFrom(ByteBuffer savedBytes) {
+			
+			bytes.duplicate().put(savedBytes.duplicate());
 			
 		}
 		
-		public void removeFromDisk() {
+		/**
+		 * Writes this Slot to a file, with the same layout it has in memory, so it can be memory-mapped when reopened.
+		 * Only the values that are in use are written, so the rest of the values will be a hole in the file.
+		 * 
+		 * @param file        The file.
+		 * @param position    Where to write this Slot. SLOT_BYTE_COUNT bytes are reserved starting here.
+		 * @param count       Number of values in use.
+		 * @throws IOException    If the file can not be written.
+		 */
+		public void writeTo(FileChannel file, long position, int count) throws IOException {
 			
-			try { Files.deleteIfExists(Paths.get(pathOnDisk)); } catch (IOException e) {}
+			ByteBuffer buffer = bytes.duplicate();
+			buffer.limit(count * 4);
+			DatasetsController.writeFully(file, buffer, position);
+			buffer.limit(SLOT_BYTE_COUNT);
+			buffer.position(DatasetsController.SLOT_SIZE * 4);
+			DatasetsController.writeFully(file, buffer, position + DatasetsController.SLOT_SIZE * 4);
 			
 		}
 		
 		public void setValue(int index, float value) {
 			
-			if(!inRam)
-				copyToRam();
-			values[index] = value;
+			values.put(index, value);
+			
+			// update the pyramid, stopping at the first level that is not affected, because the higher levels will not be affected either
+			for(int level = 0; level < PYRAMID_LEVELS; level++) {
+				int shift = MIN_BLOCK_SIZE_SHIFT + level;
+				int i = PYRAMID_LEVEL_OFFSET[level] + 2 * (index >> shift);
+				if((index & ((1 << shift) - 1)) == 0) {
+					pyramid.put(i,     value);
+					pyramid.put(i + 1, value);
+				} else {
+					boolean changed = false;
+					if(value < pyramid.get(i)) {
+						pyramid.put(i, value);
+						changed = true;
+					}
+					if(value > pyramid.get(i + 1)) {
+						pyramid.put(i + 1, value);
+						changed = true;
+					}
+					if(!changed)
+						break;
+				}
+			}
+			
+		}
+		
+		/**
+		 * Stores a series of values, then updates the min/max pyramid once for the whole series.
+		 * 
+		 * @param index               Index of the first value.
+		 * @param newValues           Array containing the values.
+		 * @param offset              Index of the first value in the array.
+		 * @param count               Number of values. They must all fit in this Slot.
+		 * @param conversionFactor    Each value will be multiplied by this.
+		 */
+		public void setValues(int index, float[] newValues, int offset, int count, float conversionFactor) {
 			
-			int blockN = index / BLOCK_SIZE;
-			if(index % BLOCK_SIZE == 0) {
-				minimumValueInBlock[blockN] = value;
-				maximumValueInBlock[blockN] = value;
+			if(conversionFactor == 1f) {
+				FloatBuffer buffer = values.duplicate();
+				buffer.position(index);
+				buffer.put(newValues, offset, count);
 			} else {
-				if(value < minimumValueInBlock[blockN])
-					minimumValueInBlock[blockN] = value;
-				if(value > maximumValueInBlock[blockN])
-					maximumValueInBlock[blockN] = value;
+				for(int i = 0; i < count; i++)
+					values.put(index + i, newValues[offset + i] * conversionFactor);
+			}
+			
+			int lastIndex = index + count - 1;
+			
+			// the lowest level is calculated from the values, including any values that were already in the first block
+			int firstBlock = index >> MIN_BLOCK_SIZE_SHIFT;
+			int lastBlock = lastIndex >> MIN_BLOCK_SIZE_SHIFT;
+			for(int block = firstBlock; block <= lastBlock; block++) {
+				int first = block << MIN_BLOCK_SIZE_SHIFT;
+				int last = Integer.min(first + MIN_BLOCK_SIZE - 1, lastIndex);
+				float min = values.get(first);
+				float max = min;
+				for(int i = first + 1; i <= last; i++) {
+					float value = values.get(i);
+					if(value < min)
+						min = value;
+					if(value > max)
+						max = value;
+				}
+				pyramid.put(2 * block,     min);
+				pyramid.put(2 * block + 1, max);
+			}
+			
+			// each higher level is calculated from the level below it, ignoring blocks that do not contain any values yet
+			for(int level = 1; level < PYRAMID_LEVELS; level++) {
+				firstBlock >>= 1;
+				lastBlock >>= 1;
+				int lowerLevel = PYRAMID_LEVEL_OFFSET[level - 1];
+				int lastLowerBlock = lastIndex >> (MIN_BLOCK_SIZE_SHIFT + level - 1);
+				for(int block = firstBlock; block <= lastBlock; block++) {
+					int lowerBlock = 2 * block;
+					float min = pyramid.get(lowerLevel + 2 * lowerBlock);
+					float max = pyramid.get(lowerLevel + 2 * lowerBlock + 1);
+					if(lowerBlock + 1 <= lastLowerBlock) {
+						min = Math.min(min, pyramid.get(lowerLevel + 2 * lowerBlock + 2));
+						max = Math.max(max, pyramid.get(lowerLevel + 2 * lowerBlock + 3));
+					}
+					int i = PYRAMID_LEVEL_OFFSET[level] + 2 * block;
+					pyramid.put(i,     min);
+					pyramid.put(i + 1, max);
+				}
 			}
 			
 		}
 		
 		public float getValue(int index) {
 			
-			if(!inRam)
-				copyToRam();
-			return values[index];
+			return values.get(index);
 			
 		}
 		
-		public float getMinimumInBlock(int blockIndex) {
+		/**
+		 * Expands a MinMax to include a range of samples in this Slot.
+		 * The largest aligned blocks of the pyramid that fit in the range are used, so only the edges need to be checked sample-by-sample.
+		 * 
+		 * @param firstIndex    Index of the first sample (inclusive.)
+		 * @param lastIndex     Index of the last sample (inclusive.)
+		 * @param range         MinMax to expand.
+		 */
+		public void updateRange(int firstIndex, int lastIndex, MinMax range) {
 			
-			if(!inRam)
-				copyToRam();
-			return minimumValueInBlock[blockIndex];
+			float min = range.min;
+			float max = range.max;
+			
+			int index = firstIndex;
+			while(index <= lastIndex) {
+				
+				if((index & (MIN_BLOCK_SIZE - 1)) != 0 || index + MIN_BLOCK_SIZE - 1 > lastIndex) {
+					// not at the start of a block, or the block does not fit, so check one sample
+					float value = values.get(index);
+					if(value < min)
+						min = value;
+					if(value > max)
+						max = value;
+					index++;
+				} else {
+					// find the largest aligned block that fits
+					int level = 0;
+					while(level + 1 < PYRAMID_LEVELS) {
+						int blockSize = MIN_BLOCK_SIZE << (level + 1);
+						if((index & (blockSize - 1)) != 0 || index + blockSize - 1 > lastIndex)
+							break;
+						level++;
+					}
+					int i = PYRAMID_LEVEL_OFFSET[level] + 2 * (index >> (MIN_BLOCK_SIZE_SHIFT + level));
+					float blockMin = pyramid.get(i);
+					float blockMax = pyramid.get(i + 1);
+					if(blockMin < min)
+						min = blockMin;
+					if(blockMax > max)
+						max = blockMax;
+					index += MIN_BLOCK_SIZE << level;
+				}
+				
+			}
+			
+			range.min = min;
+			range.max = max;
 			
 		}
 		
-		public float getMaximumInBlock(int blockIndex) {
+		/**
+		 * @param offset    Index of the first value.
+		 * @param length    Number of values.
+		 * @return          A FloatBuffer that shares its content with this Slot (no copying.)
+		 */
+		public FloatBuffer getValues(int offset, int length) {
 			
-			if(!inRam)
-				copyToRam();
-			return maximumValueInBlock[blockIndex];
+			FloatBuffer buffer = values.duplicate();
+			buffer.position(offset);
+			buffer.limit(offset + length);
+			return buffer.slice();
 			
 		}
 		
 	}
-	Slot[] slots;
+	final Slot[] slots;
+	
+	/**
+	 * @param bytes         The buffer.
+	 * @param firstFloat    Index of the first float in the buffer.
+	 * @param floatCount    Number of floats.
+	 * @return              A FloatBuffer that shares its content with part of the buffer, in the buffer's byte order.
+	 */
+	private static FloatBuffer getFloats(ByteBuffer bytes, int firstFloat, int floatCount) {
+		
+		ByteBuffer buffer = bytes.duplicate();
+		buffer.limit((firstFloat + floatCount) * 4);
+		buffer.position(firstFloat * 4);
+		return buffer.slice().order(bytes.order()).asFloatBuffer();
+		
+	}
 	
 	/**
 	 * Creates a new object that describes one dataset and stores all of its samples.
@@ -320,6 +477,38 @@ public class Dataset {
 		if(isBitfield)
 			for(Bitfield bitfield : bitfields)
 				bitfield.processValue((int) value, currentSize);
+				
+	}
+	
+	/**
+	 * Appends a series of samples. Call DatasetsController.appendSamples() instead of calling this directly.
+	 * 
+	 * @param firstSampleNumber    Sample number of the first new sample. This must be the current sample count.
+	 * @param newValues            The new samples.
+	 * @param count                Number of new samples.
+	 * @param convert              True if the samples are raw and need to be converted, false if they should be added as-is.
+	 */
+	void add(int firstSampleNumber, float[] newValues, int count, boolean convert) {
+		
+		float factor = convert ? conversionFactor : 1f;
+		
+		// the samples may span more than one Slot
+		int offset = 0;
+		while(offset < count) {
+			int sampleNumber = firstSampleNumber + offset;
+			int slotNumber = sampleNumber / DatasetsController.SLOT_SIZE;
+			int slotIndex  = sampleNumber % DatasetsController.SLOT_SIZE;
+			if(slotIndex == 0)
+				slots[slotNumber] = new Slot();
+			int slotCount = Integer.min(count - offset, DatasetsController.SLOT_SIZE - slotIndex);
+			slots[slotNumber].setValues(slotIndex, newValues, offset, slotCount, factor);
+			offset += slotCount;
+		}
+		
+		if(isBitfield)
+			for(int i = 0; i < count; i++)
+				for(Bitfield bitfield : bitfields)
+					bitfield.processValue((int) (newValues[i] * factor), firstSampleNumber + i);
 		
 	}
 	
@@ -341,48 +530,115 @@ public class Dataset {
 		
 	}
 	
+	/**
+	 * Gets the min/max of a series of samples. This uses the min/max pyramid, so the cost is O(log(n)) instead of O(n).
+	 * 
+	 * @param firstSampleNumber    Index of the first sample (inclusive.)
+	 * @param lastSampleNumber     Index of the last sample (inclusive.)
+	 * @return                     The min/max.
+	 */
 	public MinMax getRange(int firstSampleNumber, int lastSampleNumber) {
 		
 		MinMax range = new MinMax();
+		updateRange(firstSampleNumber, lastSampleNumber, range);
+		return range;
 		
-		int firstBlock = firstSampleNumber / BLOCK_SIZE;
-		int lastBlock = lastSampleNumber / BLOCK_SIZE;
-		for(int block = firstBlock; block <= lastBlock; block++) {
-			boolean entireBlockInRange = (firstSampleNumber <= block * BLOCK_SIZE) &&
-			                             (lastSampleNumber >= (block + 1) * BLOCK_SIZE - 1);
-			if(entireBlockInRange) {
-				int slotN  = block / (DatasetsController.SLOT_SIZE / BLOCK_SIZE);
-				int blockN = block % (DatasetsController.SLOT_SIZE / BLOCK_SIZE);
-				float min = slots[slotN].getMinimumInBlock(blockN);
-				float max = slots[slotN].getMaximumInBlock(blockN);
-				if(min < range.min)
-					range.min = min;
-				if(max > range.max)
-					range.max = max;
-			} else {
-				int firstSampleInBlock = Integer.max(firstSampleNumber, block * BLOCK_SIZE);
-				int lastSampleInBlock = Integer.min(lastSampleNumber, (block + 1) * BLOCK_SIZE - 1);
-				for(int sampleN = firstSampleInBlock; sampleN <= lastSampleInBlock; sampleN++) {
-					float value = getSample(sampleN);
-					if(value < range.min)
-						range.min = value;
-					if(value > range.max)
-						range.max = value;
-				}
+	}
+	
+	/**
+	 * Gets the min/max envelope of a series of samples, divided into columns (usually one column per pixel.)
+	 * This uses the min/max pyramid, so the cost depends on the number of columns, not the number of samples.
+	 * 
+	 * Column n covers samples firstSampleNumber + (n * sampleCount / columnCount) to firstSampleNumber + ((n + 1) * sampleCount / columnCount) - 1.
+	 * If there are fewer samples than columns, some columns will contain no samples, and their min/max will be NaN.
+	 * 
+	 * @param firstSampleNumber    Index of the first sample (inclusive.)
+	 * @param lastSampleNumber     Index of the last sample (inclusive.)
+	 * @param columnCount          Number of columns.
+	 * @return                     The envelope, as {min0, max0, min1, max1, ...}
+	 */
+	public float[] getEnvelope(int firstSampleNumber, int lastSampleNumber, int columnCount) {
+		
+		long sampleCount = lastSampleNumber - firstSampleNumber + 1;
+		int[] columnFirstSampleNumbers = new int[columnCount];
+		for(int column = 0; column < columnCount; column++)
+			columnFirstSampleNumbers[column] = firstSampleNumber + (int) (column * sampleCount / columnCount);
+		
+		return getEnvelope(columnFirstSampleNumbers, lastSampleNumber);
+		
+	}
+	
+	/**
+	 * Gets the min/max envelope of a series of samples, divided into columns with arbitrary boundaries (for example, one column per pixel of time.)
+	 * This uses the min/max pyramid, so the cost depends on the number of columns, not the number of samples.
+	 * 
+	 * @param columnFirstSampleNumbers    Index of the first sample in each column, in ascending order. Each column ends just before the next column starts.
+	 * @param lastSampleNumber            Index of the last sample in the last column (inclusive.)
+	 * @return                            The envelope, as {min0, max0, min1, max1, ...} Columns that contain no samples will be NaN.
+	 */
+	public float[] getEnvelope(int[] columnFirstSampleNumbers, int lastSampleNumber) {
+		
+		int columnCount = columnFirstSampleNumbers.length;
+		float[] envelope = new float[2 * columnCount];
+		MinMax range = new MinMax();
+		
+		for(int column = 0; column < columnCount; column++) {
+			int first = columnFirstSampleNumbers[column];
+			int last  = (column == columnCount - 1) ? lastSampleNumber : columnFirstSampleNumbers[column + 1] - 1;
+			if(last < first) {
+				envelope[2 * column]     = Float.NaN;
+				envelope[2 * column + 1] = Float.NaN;
+				continue;
 			}
+			range.min = Float.MAX_VALUE;
+			range.max = -Float.MAX_VALUE;
+			updateRange(first, last, range);
+			envelope[2 * column]     = range.min;
+			envelope[2 * column + 1] = range.max;
 		}
 		
-		return range;
+		return envelope;
 		
 	}
 	
-	public FloatBuffer getBuffer(int firstSampleNumber, int lastSampleNumber) {
+	/**
+	 * Expands a MinMax to include a series of samples, which may span several Slots.
+	 * 
+	 * @param firstSampleNumber    Index of the first sample (inclusive.)
+	 * @param lastSampleNumber     Index of the last sample (inclusive.)
+	 * @param range                MinMax to expand.
+	 */
+	private void updateRange(int firstSampleNumber, int lastSampleNumber, MinMax range) {
 		
-		FloatBuffer buffer = Buffers.newDirectFloatBuffer(lastSampleNumber - firstSampleNumber + 1);
+		int firstSlot = firstSampleNumber / DatasetsController.SLOT_SIZE;
+		int lastSlot = lastSampleNumber / DatasetsController.SLOT_SIZE;
+		
+		for(int slot = firstSlot; slot <= lastSlot; slot++) {
+			int firstIndex = (slot == firstSlot) ? firstSampleNumber % DatasetsController.SLOT_SIZE : 0;
+			int lastIndex  = (slot == lastSlot)  ? lastSampleNumber  % DatasetsController.SLOT_SIZE : DatasetsController.SLOT_SIZE - 1;
+			slots[slot].updateRange(firstIndex, lastIndex, range);
+		}
+		
+	}
+	
+	/**
+	 * Gets a series of samples as a FloatBuffer.
+	 * If the samples are all in one Slot, the buffer shares its content with the memory-mapped Slot, so nothing needs to be copied.
+	 * 
+	 * @param firstSampleNumber    Index of the first sample (inclusive.)
+	 * @param lastSampleNumber     Index of the last sample (inclusive.)
+	 * @return                     The samples. This buffer must not be modified.
+	 */
+	public FloatBuffer getBuffer(int firstSampleNumber, int lastSampleNumber) {
 		
 		int firstSlot = firstSampleNumber / DatasetsController.SLOT_SIZE;
 		int lastSlot = lastSampleNumber / DatasetsController.SLOT_SIZE;
 		
+		if(firstSlot == lastSlot)
+			return slots[firstSlot].getValues(firstSampleNumber % DatasetsController.SLOT_SIZE, lastSampleNumber - firstSampleNumber + 1);
+		
+		FloatBuffer buffer = Buffers.newDirectFloatBuffer(lastSampleNumber - firstSampleNumber + 1);
+		
 		for(int slot = firstSlot; slot <= lastSlot; slot++) {
 			
 			int slotFirstSampleNumber = slot * DatasetsController.SLOT_SIZE;
@@ -398,8 +654,7 @@ public class Dataset {
 			if(lastSampleNumber < slotLastSampleNumber)
 				length -= slotLastSampleNumber - lastSampleNumber;
 			
-			slots[slot].getValue(0); // just to ensure it's in RAM
-			buffer.put(slots[slot].values, offset, length);
+			buffer.put(slots[slot].getValues(offset, length));
 			
 		}
 		
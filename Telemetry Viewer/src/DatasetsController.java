@@ -1,103 +1,246 @@
 import java.awt.Color;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.awt.GraphicsEnvironment;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
 import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
 import com.jogamp.common.nio.Buffers;
 
+/**
+ * Manages the Datasets, their samples, and the timestamps.
+ * 
+ * Samples are written by one thread (the packet processor, the tester, or the file importer) and read by any number of threads (the charts, exporting, etc.)
+ * No locks are used. Instead, the sample count is the publication point:
+ * 
+ * 1. The writer stores a sample in every Dataset, and its timestamp, including any min/max pyramid updates.
+ * 2. Then the writer increments the sample count. (A batch of samples is published with one increment.)
+ * 3. A reader gets the sample count, then only reads samples below it. Because the sample count is atomic, everything written before it was incremented is visible.
+ * 
+ * So a reader always sees complete rows, never a sample that is only partially written.
+ * 
+ * Timestamps never decrease, so the timestamp searches can be binary searches. A timestamp that is earlier than the previous sample's
+ * (such as when the system clock is set back, or a CSV file has an out-of-order row) is stored as the previous sample's timestamp instead.
+ * 
+ * When all samples are removed, the sample count is set to 0 and the epoch is incremented.
+ * The Slots are closed, but left in place until the writer replaces them, so a reader that is still using an old sample count never finds a missing Slot.
+ * (A closed Slot stays readable until it is garbage collected, because closing the file does not unmap it.)
+ * A reader that caches anything derived from the samples should compare the epoch to detect when the samples have been replaced.
+ */
 public class DatasetsController {
 
 	private static Map<Integer, Dataset> datasets = new TreeMap<Integer, Dataset>();
 	private static AtomicInteger sampleCount = new AtomicInteger(0);
+	private static AtomicInteger epoch = new AtomicInteger(0); // incremented whenever all samples are removed
 	
 	public static final int SLOT_SIZE = 1048576; // 1M values
 	public static final int SLOT_COUNT = Integer.MAX_VALUE / SLOT_SIZE + 1; // +1 to round up
+	public static final int BATCH_SIZE = 1024; // suggested maximum number of samples for appendSamples(), so the charts are not starved while a parser fills a batch
 	/**
-	 * Timestamps are stored in an array of Slots. Each Slot contains 1M values, and may be flushed to disk if RAM runs low.
+	 * Timestamps are stored in an array of Slots. Each Slot contains 1M values, in a memory-mapped file, so the OS can page them in and out of RAM as needed.
+	 * 
+	 * Timestamps are compressed: they are divided into blocks of 64, and each block stores its first timestamp as a long,
+	 * then stores each timestamp as an unsigned 16-bit offset from the first timestamp. That is about 2 bytes per timestamp instead of 8.
+	 * If a timestamp does not fit (the block spans more than 65 seconds, or time goes backwards) that block is stored uncompressed instead.
+	 * Every timestamp can still be found in O(1) time.
 	 */
+	private static final int TIMESTAMP_BLOCK_SIZE_SHIFT = 6; // 64 timestamps
+	private static final int TIMESTAMP_BLOCK_SIZE = 1 << TIMESTAMP_BLOCK_SIZE_SHIFT;
+	private static final int TIMESTAMP_BLOCK_COUNT = SLOT_SIZE / TIMESTAMP_BLOCK_SIZE;
+	private static final int MAX_TIMESTAMP_OFFSET = 0xFFFF;
+	private static final int TIMESTAMP_SLOT_BYTE_COUNT = TIMESTAMP_BLOCK_COUNT * 8 + SLOT_SIZE * 2; // the bases, then the offsets
 	private static class Slot {
 		
-		public volatile boolean inRam = true;
-		public volatile boolean flushing = false;
-		private volatile long[] values = new long[SLOT_SIZE];
-		private String pathOnDisk = "cache/" + this.toString();
+		private final FileChannel file;
+		private final ByteBuffer bytes;
+		private final LongBuffer bases;   // the first timestamp of each block
+		private final CharBuffer offsets; // each timestamp minus the first timestamp of its block
+		private final AtomicReferenceArray<long[]> uncompressedBlocks = new AtomicReferenceArray<long[]>(TIMESTAMP_BLOCK_COUNT);
 		
-		public void moveToDisk() {
+		public Slot() {
 			
-			if(!inRam || flushing)
-				return;
+			this(createCacheFile());
 			
-			flushing = true;
+		}
+		
+		private Slot(FileChannel file) {
 			
-			new Thread(() -> {
-				try {
-					ObjectOutputStream stream = new ObjectOutputStream(new FileOutputStream(pathOnDisk));
-					stream.writeObject(values);
-					stream.close();
-					inRam = false;
-					values = null;
-					flushing = false;
-				} catch(Exception e) {
-					e.printStackTrace();
-				}
-			}).start();
+			this(file, mapCacheFile(file, TIMESTAMP_SLOT_BYTE_COUNT));
 			
 		}
 		
-		private void copyToRam() {
+		/**
+		 * @param file     The cache file, or null if reopening a Slot from a session file.
+		 * @param bytes    TIMESTAMP_SLOT_BYTE_COUNT bytes, memory-mapped from the cache file or the session file.
+		 */
+		private Slot(FileChannel file, ByteBuffer bytes) {
 			
-			try {
-				ObjectInputStream stream = new ObjectInputStream(new FileInputStream(pathOnDisk));
-				values = (long[]) stream.readObject();
-				stream.close();
-				inRam = true;
-				flushIfNecessary();
-			} catch(Exception e) {
-				e.printStackTrace();
-			}
+			this.file = file;
+			this.bytes = bytes;
+			ByteBuffer buffer = bytes.duplicate();
+			buffer.limit(TIMESTAMP_BLOCK_COUNT * 8);
+			this.bases = buffer.slice().order(ByteOrder.nativeOrder()).asLongBuffer();
+			buffer.limit(buffer.capacity());
+			buffer.position(TIMESTAMP_BLOCK_COUNT * 8);
+			this.offsets = buffer.slice().order(ByteOrder.nativeOrder()).asCharBuffer();
 			
 		}
 		
 		public void removeFromDisk() {
 			
-			try { Files.deleteIfExists(Paths.get(pathOnDisk)); } catch (IOException e) {}
+			try { if(file != null) file.close(); } catch(IOException e) {}
+			
+		}
+		
+		/**
+		 * Writes the compressed timestamps to a file, with the same layout they have in memory, so they can be memory-mapped when reopened.
+		 * Uncompressed blocks are not written, see writeSamples().
+		 * 
+		 * @param file        The file.
+		 * @param position    Where to write this Slot. TIMESTAMP_SLOT_BYTE_COUNT bytes are reserved starting here.
+		 * @param count       Number of timestamps in use.
+		 * @throws IOException    If the file can not be written.
+		 */
+		public void writeTo(FileChannel file, long position, int count) throws IOException {
+			
+			int blockCount = (count + TIMESTAMP_BLOCK_SIZE - 1) >> TIMESTAMP_BLOCK_SIZE_SHIFT;
+			ByteBuffer buffer = bytes.duplicate();
+			buffer.limit(blockCount * 8);
+			writeFully(file, buffer, position);
+			buffer.limit(TIMESTAMP_BLOCK_COUNT * 8 + count * 2);
+			buffer.position(TIMESTAMP_BLOCK_COUNT * 8);
+			writeFully(file, buffer, position + TIMESTAMP_BLOCK_COUNT * 8);
 			
 		}
 		
 		public void setValue(int index, long value) {
 			
-			if(!inRam)
-				copyToRam();
-			values[index] = value;
+			int block = index >> TIMESTAMP_BLOCK_SIZE_SHIFT;
+			int blockIndex = index & (TIMESTAMP_BLOCK_SIZE - 1);
+			
+			if(blockIndex == 0) {
+				bases.put(block, value);
+				offsets.put(index, (char) 0);
+				return;
+			}
+			
+			long[] uncompressedBlock = uncompressedBlocks.get(block);
+			if(uncompressedBlock != null) {
+				uncompressedBlock[blockIndex] = value;
+				return;
+			}
+			
+			long base = bases.get(block);
+			long offset = value - base;
+			if(offset >= 0 && offset <= MAX_TIMESTAMP_OFFSET) {
+				offsets.put(index, (char) offset);
+				return;
+			}
+			
+			// the timestamp does not fit, so switch this block to uncompressed storage
+			// the compressed timestamps are left in place, so a reader that is using them will still get correct values
+			uncompressedBlock = new long[TIMESTAMP_BLOCK_SIZE];
+			int firstIndex = block << TIMESTAMP_BLOCK_SIZE_SHIFT;
+			for(int i = 0; i < blockIndex; i++)
+				uncompressedBlock[i] = base + offsets.get(firstIndex + i);
+			uncompressedBlock[blockIndex] = value;
+			uncompressedBlocks.set(block, uncompressedBlock);
+			uncompressedBlockCount.incrementAndGet();
+			
+		}
+		
+		public void setValues(int index, long[] newValues, int offset, int count) {
+			
+			for(int i = 0; i < count; i++)
+				setValue(index + i, newValues[offset + i]);
+				
+		}
+		
+		/**
+		 * The first timestamp of each block is a sparse directory of the timestamps, so a search can find the correct block without touching the other blocks.
+		 * 
+		 * @param block    Block number.
+		 * @return         The first timestamp in that block.
+		 */
+		public long getBlockFirstValue(int block) {
+			
+			return bases.get(block);
 			
 		}
 		
 		public long getValue(int index) {
 			
-			if(!inRam)
-				copyToRam();
-			return values[index];
+			int block = index >> TIMESTAMP_BLOCK_SIZE_SHIFT;
+			long[] uncompressedBlock = uncompressedBlocks.get(block);
+			if(uncompressedBlock != null)
+				return uncompressedBlock[index & (TIMESTAMP_BLOCK_SIZE - 1)];
+			else
+				return bases.get(block) + offsets.get(index);
+				
+		}
+		
+		/**
+		 * Decodes a series of timestamps into a FloatBuffer, one block at a time.
+		 * 
+		 * @param index           Index of the first timestamp.
+		 * @param count           Number of timestamps. They must all be in this Slot.
+		 * @param zeroTimestamp   This is subtracted from each timestamp before it is converted to a float.
+		 * @param buffer          The FloatBuffer to put the values into.
+		 */
+		public void getValues(int index, int count, long zeroTimestamp, FloatBuffer buffer) {
+			
+			int lastIndex = index + count - 1;
+			while(index <= lastIndex) {
+				int block = index >> TIMESTAMP_BLOCK_SIZE_SHIFT;
+				int blockLastIndex = Integer.min(lastIndex, ((block + 1) << TIMESTAMP_BLOCK_SIZE_SHIFT) - 1);
+				long[] uncompressedBlock = uncompressedBlocks.get(block);
+				if(uncompressedBlock != null) {
+					for(int i = index; i <= blockLastIndex; i++)
+						buffer.put((float) (uncompressedBlock[i & (TIMESTAMP_BLOCK_SIZE - 1)] - zeroTimestamp));
+				} else {
+					long base = bases.get(block) - zeroTimestamp;
+					for(int i = index; i <= blockLastIndex; i++)
+						buffer.put((float) (base + offsets.get(i)));
+				}
+				index = blockLastIndex + 1;
+			}
 			
 		}
 		
 	}
-	private static Slot[] timestamps = new Slot[SLOT_COUNT];
-	private static long firstTimestamp = 0;
+	private static final Slot[] timestamps = new Slot[SLOT_COUNT];
+	private static volatile long firstTimestamp = 0;
+	private static long lastTimestamp = 0; // only used by the writer, to keep the timestamps from decreasing
 	
-	// for keeping track of what slots not to flush to disk
-	private static int minimumSampleNumberOnScreen = -1;
-	private static int maximumSampleNumberOnScreen = -1;
-	private static int minimumSampleNumberExporting = -1;
-	private static int maximumSampleNumberExporting = -1;
+	// metrics for the storage stage of the pipeline
+	private static final AtomicInteger uncompressedBlockCount = new AtomicInteger(0); // uncompressed timestamp blocks are the only samples stored on the heap
+	private static final MetricsController.Counter storedSamples  = MetricsController.getCounter("Storage samples appended");
+	private static final MetricsController.Counter createdSlots   = MetricsController.getCounter("Storage slots created");
+	private static final MetricsController.Counter reopenedSlots  = MetricsController.getCounter("Storage slots reopened from session files");
+	private static final MetricsController.Counter ramSlots       = MetricsController.getCounter("Storage slots kept in RAM");
+	private static final MetricsController.Histogram appendTime   = MetricsController.getHistogram("Storage appendSamples() CPU time");
+	static {
+		MetricsController.setGauge("Storage mapped bytes", () -> {
+			long slotCount = (getSampleCount() + SLOT_SIZE - 1) / SLOT_SIZE;
+			return slotCount * ((long) datasets.size() * Dataset.SLOT_BYTE_COUNT + TIMESTAMP_SLOT_BYTE_COUNT);
+		});
+		MetricsController.setGauge("Storage heap bytes", () -> uncompressedBlockCount.get() * (long) (TIMESTAMP_BLOCK_SIZE * 8 + 16));
+	}
 	
 	/**
 	 * @return    The number of fields in the data structure.
@@ -166,16 +309,11 @@ public class DatasetsController {
 					slot.removeFromDisk();
 		
 		if(datasets.isEmpty()) {
-			for(Slot timestamp : timestamps)
-				if(timestamp != null)
-					timestamp.removeFromDisk();
-			timestamps = new Slot[SLOT_COUNT];
-			
-			sampleCount.set(0);
-			firstTimestamp = 0;
+			removeSamples();
 			
 			CommunicationView.instance.allowExporting(false);
-			OpenGLChartsView.instance.switchToLiveView();
+			if(!GraphicsEnvironment.isHeadless())
+				OpenGLChartsView.instance.switchToLiveView();
 		}
 		
 		if(removedDataset == null)
@@ -192,26 +330,16 @@ public class DatasetsController {
 		
 		ChartsController.removeAllCharts();
 		
-		for(Dataset dataset : getAllDatasets())
-			for(Dataset.Slot slot : dataset.slots)
-				if(slot != null)
-					slot.removeFromDisk();
+		removeSamples();
 		datasets.clear();
 		
-		for(Slot timestamp : timestamps)
-			if(timestamp != null)
-				timestamp.removeFromDisk();
-		timestamps = new Slot[SLOT_COUNT];
-		
-		sampleCount.set(0);
-		firstTimestamp = 0;
-		
 		for(Camera camera : cameras.keySet())
 			camera.dispose();
 		cameras.clear();
 		
 		CommunicationView.instance.allowExporting(false);
-		OpenGLChartsView.instance.switchToLiveView();
+		if(!GraphicsEnvironment.isHeadless())
+			OpenGLChartsView.instance.switchToLiveView();
 		
 	}
 	
@@ -220,6 +348,29 @@ public class DatasetsController {
 	 */
 	public static void removeAllData() {
 		
+		removeSamples();
+		
+		for(Camera camera : cameras.keySet())
+			camera.dispose();
+		
+		CommunicationView.instance.allowExporting(false);
+		if(!GraphicsEnvironment.isHeadless())
+			OpenGLChartsView.instance.switchToLiveView();
+		
+	}
+	
+	/**
+	 * Removes all samples and timestamps, and increments the epoch.
+	 * The sample count is set to 0 before the Slots are closed, so new readers will not try to use them.
+	 * The Slots are left in place until the writer replaces them, so existing readers can finish reading.
+	 */
+	private static void removeSamples() {
+		
+		sampleCount.set(0);
+		firstTimestamp = 0;
+		epoch.incrementAndGet();
+		uncompressedBlockCount.set(0);
+		
 		for(Dataset dataset : getAllDatasets())
 			for(Dataset.Slot slot : dataset.slots)
 				if(slot != null)
@@ -228,16 +379,6 @@ public class DatasetsController {
 		for(Slot timestamp : timestamps)
 			if(timestamp != null)
 				timestamp.removeFromDisk();
-		timestamps = new Slot[SLOT_COUNT];
-		
-		sampleCount.set(0);
-		firstTimestamp = 0;
-		
-		for(Camera camera : cameras.keySet())
-			camera.dispose();
-		
-		CommunicationView.instance.allowExporting(false);
-		OpenGLChartsView.instance.switchToLiveView();
 		
 	}
 	
@@ -258,15 +399,14 @@ public class DatasetsController {
 		int currentSize = getSampleCount();
 		int slotNumber = currentSize / SLOT_SIZE;
 		int slotIndex  = currentSize % SLOT_SIZE;
-		if(slotIndex == 0) {
+		if(slotIndex == 0)
 			timestamps[slotNumber] = new Slot();
-			flushIfNecessary();
-		}
-		timestamps[slotNumber].setValue(slotIndex, System.currentTimeMillis());
+		timestamps[slotNumber].setValue(slotIndex, clampTimestamp(currentSize, System.currentTimeMillis()));
+		if(currentSize == 0)
+			firstTimestamp = timestamps[0].getValue(0);
 		
 		int newSampleCount = sampleCount.incrementAndGet();
 		if(newSampleCount == 1) {
-			firstTimestamp = timestamps[0].getValue(0);
 			if(!CommunicationController.getPort().equals(CommunicationController.PORT_FILE))
 				CommunicationView.instance.allowExporting(true);
 		}
@@ -281,19 +421,95 @@ public class DatasetsController {
 		int currentSize = getSampleCount();
 		int slotNumber = currentSize / SLOT_SIZE;
 		int slotIndex  = currentSize % SLOT_SIZE;
-		if(slotIndex == 0) {
+		if(slotIndex == 0)
 			timestamps[slotNumber] = new Slot();
-			flushIfNecessary();
-		}
-		timestamps[slotNumber].setValue(slotIndex, timestamp);
+		timestamps[slotNumber].setValue(slotIndex, clampTimestamp(currentSize, timestamp));
+		if(currentSize == 0)
+			firstTimestamp = timestamps[0].getValue(0);
 		
 		int newSampleCount = sampleCount.incrementAndGet();
 		if(newSampleCount == 1) {
+			if(!CommunicationController.getPort().equals(CommunicationController.PORT_FILE))
+				CommunicationView.instance.allowExporting(true);
+		}
+		
+	}
+	
+	/**
+	 * Appends a batch of raw samples to every dataset, then increments the sample count once for the whole batch.
+	 * This is much faster than calling Dataset.add() and incrementSampleCount() for each sample.
+	 * 
+	 * @param values              values[datasetN][sampleN] is a raw sample. The datasets are in the same order as getAllDatasets().
+	 * @param sampleTimestamps    sampleTimestamps[sampleN] is the timestamp for a sample, or null to use the current time for every sample. Decreasing timestamps are clamped in place.
+	 * @param count               Number of samples for each dataset.
+	 */
+	public static void appendSamples(float[][] values, long[] sampleTimestamps, int count) {
+		
+		appendSamples(values, sampleTimestamps, count, true);
+		
+	}
+	
+	/**
+	 * Appends a batch of already-converted samples to every dataset, then increments the sample count once for the whole batch.
+	 * Use this when importing a file.
+	 * 
+	 * @param values              values[datasetN][sampleN] is a converted sample. The datasets are in the same order as getAllDatasets().
+	 * @param sampleTimestamps    sampleTimestamps[sampleN] is the timestamp for a sample, or null to use the current time for every sample. Decreasing timestamps are clamped in place.
+	 * @param count               Number of samples for each dataset.
+	 */
+	public static void appendConvertedSamples(float[][] values, long[] sampleTimestamps, int count) {
+		
+		appendSamples(values, sampleTimestamps, count, false);
+		
+	}
+	
+	private static void appendSamples(float[][] values, long[] sampleTimestamps, int count, boolean convert) {
+		
+		if(count == 0)
+			return;
+		
+		long startTime = System.nanoTime();
+		int currentSize = getSampleCount();
+		
+		Dataset[] datasets = getAllDatasets();
+		for(int i = 0; i < datasets.length; i++)
+			datasets[i].add(currentSize, values[i], count, convert);
+		
+		long now = 0;
+		if(sampleTimestamps == null)
+			now = clampTimestamp(currentSize, System.currentTimeMillis());
+		else
+			for(int i = 0; i < count; i++)
+				sampleTimestamps[i] = clampTimestamp(currentSize + i, sampleTimestamps[i]);
+		int offset = 0;
+		while(offset < count) {
+			int sampleNumber = currentSize + offset;
+			int slotNumber = sampleNumber / SLOT_SIZE;
+			int slotIndex  = sampleNumber % SLOT_SIZE;
+			if(slotIndex == 0)
+				timestamps[slotNumber] = new Slot();
+			int slotCount = Integer.min(count - offset, SLOT_SIZE - slotIndex);
+			if(sampleTimestamps != null)
+				timestamps[slotNumber].setValues(slotIndex, sampleTimestamps, offset, slotCount);
+			else
+				for(int i = 0; i < slotCount; i++)
+					timestamps[slotNumber].setValue(slotIndex + i, now);
+			offset += slotCount;
+		}
+		
+		if(currentSize == 0)
 			firstTimestamp = timestamps[0].getValue(0);
+		
+		// publish the whole batch at once
+		int newSampleCount = sampleCount.addAndGet(count);
+		if(newSampleCount == count) {
 			if(!CommunicationController.getPort().equals(CommunicationController.PORT_FILE))
 				CommunicationView.instance.allowExporting(true);
 		}
 		
+		storedSamples.add(count);
+		appendTime.record(System.nanoTime() - startTime);
+		
 	}
 	
 	private static Map<Camera, Boolean> cameras = new HashMap<Camera, Boolean>(); // the Boolean is true if the camera is currently owned by a chart
@@ -364,6 +580,15 @@ public class DatasetsController {
 		
 	}
 	
+	/**
+	 * @return    The epoch, which is incremented whenever all samples are removed. Compare this to detect when cached results are no longer valid.
+	 */
+	public static int getEpoch() {
+		
+		return epoch.get();
+		
+	}
+	
 	/**
 	 * @return    The timestamp for sample number 0, or 0 if there are no samples.
 	 */
@@ -373,6 +598,22 @@ public class DatasetsController {
 		
 	}
 	
+	/**
+	 * Called by the writer for each new timestamp, so the timestamps never decrease.
+	 * 
+	 * @param sampleNumber    The sample that will get the timestamp.
+	 * @param timestamp       The new timestamp.
+	 * @return                The timestamp, or the previous sample's timestamp if that is later.
+	 */
+	private static long clampTimestamp(int sampleNumber, long timestamp) {
+		
+		if(sampleNumber > 0 && timestamp < lastTimestamp)
+			timestamp = lastTimestamp;
+		lastTimestamp = timestamp;
+		return timestamp;
+		
+	}
+	
 	/**
 	 * Gets the timestamp for one specific sample.
 	 * 
@@ -390,6 +631,66 @@ public class DatasetsController {
 		
 	}
 	
+	/**
+	 * Finds the first sample at or after a specific time. This relies on the timestamps never decreasing, which clampTimestamp() ensures.
+	 * 
+	 * The first timestamp of each block is binary searched first, then the timestamps in the one remaining block are binary searched.
+	 * So the cost is O(log(n)), and only one block of timestamps is touched.
+	 * 
+	 * @param timestamp              UNIX timestamp.
+	 * @param minimumSampleNumber    First sample number to check.
+	 * @param maximumSampleNumber    Last sample number to check.
+	 * @return                       The first sample number with a timestamp >= the specified timestamp, or maximumSampleNumber + 1 if there is none.
+	 */
+	public static int getFirstSampleNumberAtOrAfter(long timestamp, int minimumSampleNumber, int maximumSampleNumber) {
+		
+		// samples before low are known to be earlier, samples at or after high are known to be at or after the timestamp
+		int low = minimumSampleNumber;
+		int high = maximumSampleNumber + 1;
+		
+		// search the directory of blocks
+		int lowBlock  = (low + TIMESTAMP_BLOCK_SIZE - 1) >> TIMESTAMP_BLOCK_SIZE_SHIFT; // first block that starts at or after low
+		int highBlock = maximumSampleNumber >> TIMESTAMP_BLOCK_SIZE_SHIFT;             // last block that starts at or before maximumSampleNumber
+		while(lowBlock <= highBlock) {
+			int middleBlock = (lowBlock + highBlock) >>> 1;
+			int sampleNumber = middleBlock << TIMESTAMP_BLOCK_SIZE_SHIFT;
+			long blockTimestamp = timestamps[sampleNumber / SLOT_SIZE].getBlockFirstValue((sampleNumber % SLOT_SIZE) >> TIMESTAMP_BLOCK_SIZE_SHIFT);
+			if(blockTimestamp < timestamp) {
+				low = sampleNumber + 1;
+				lowBlock = middleBlock + 1;
+			} else {
+				high = sampleNumber;
+				highBlock = middleBlock - 1;
+			}
+		}
+		
+		// search within the block
+		while(low < high) {
+			int middle = (low + high) >>> 1;
+			if(getTimestamp(middle) < timestamp)
+				low = middle + 1;
+			else
+				high = middle;
+		}
+		
+		return low;
+		
+	}
+	
+	/**
+	 * Finds the last sample at or before a specific time. This relies on the timestamps never decreasing, which clampTimestamp() ensures.
+	 * 
+	 * @param timestamp              UNIX timestamp.
+	 * @param minimumSampleNumber    First sample number to check.
+	 * @param maximumSampleNumber    Last sample number to check.
+	 * @return                       The last sample number with a timestamp <= the specified timestamp, or minimumSampleNumber - 1 if there is none.
+	 */
+	public static int getLastSampleNumberAtOrBefore(long timestamp, int minimumSampleNumber, int maximumSampleNumber) {
+		
+		return getFirstSampleNumberAtOrAfter(timestamp + 1, minimumSampleNumber, maximumSampleNumber) - 1;
+		
+	}
+	
 	public static FloatBuffer getTimestampsBuffer(int firstSampleNumber, int lastSampleNumber, long plotMinX) {
 		
 		FloatBuffer buffer = Buffers.newDirectFloatBuffer(lastSampleNumber - firstSampleNumber + 1);
@@ -397,8 +698,15 @@ public class DatasetsController {
 		if(firstSampleNumber < 0)
 			return buffer;
 		
-		for(int i = firstSampleNumber; i <= lastSampleNumber; i++)
-			buffer.put((float) (getTimestamp(i) - plotMinX));
+		// decode one Slot at a time
+		int sampleNumber = firstSampleNumber;
+		while(sampleNumber <= lastSampleNumber) {
+			int slotNumber = sampleNumber / SLOT_SIZE;
+			int slotIndex  = sampleNumber % SLOT_SIZE;
+			int count = Integer.min(lastSampleNumber - sampleNumber + 1, SLOT_SIZE - slotIndex);
+			timestamps[slotNumber].getValues(slotIndex, count, plotMinX, buffer);
+			sampleNumber += count;
+		}
 		
 		buffer.rewind();
 		return buffer;
@@ -415,82 +723,216 @@ public class DatasetsController {
 	}
 	
 	/**
-	 * Prevents slots from being flushed to disk because they are actively being used to draw charts on screen.
+	 * Creates a file in the cache directory. The file is deleted when the returned channel is closed.
 	 * 
-	 * @param minimumSampleNumber    Minimum sample number shown on screen.
-	 * @param maximumSampleNumber    Maximum sample number shown on screen.
+	 * @return    The file, or null if it could not be created.
 	 */
-	public static void dontFlushRangeOnScreen(int minimumSampleNumber, int maximumSampleNumber) {
+	static FileChannel createCacheFile() {
+		
+		try {
+			Path path = Files.createTempFile(Paths.get("cache"), "slot", ".bin");
+			return FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.DELETE_ON_CLOSE);
+		} catch(Exception e) {
+			NotificationsController.showFailureForSeconds("Unable to create a cache file. Samples will be kept in RAM instead.", 10, false);
+			return null;
+		}
 		
-		minimumSampleNumberOnScreen = minimumSampleNumber;
-		maximumSampleNumberOnScreen = maximumSampleNumber;
+	}
+	
+	/**
+	 * Writes all of a buffer to a file.
+	 * 
+	 * @param file        The file.
+	 * @param buffer      The bytes between the buffer's position and limit will be written.
+	 * @param position    Where to write them in the file.
+	 * @throws IOException    If the file can not be written.
+	 */
+	static void writeFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
 		
+		while(buffer.hasRemaining())
+			position += file.write(buffer, position);
+			
 	}
 	
 	/**
-	 * Prevents slots from being flushed to disk because they are actively being exported to a CSV file.
+	 * Writes the samples, min/max pyramids and timestamps to a session file, with large sequential writes.
 	 * 
-	 * @param minimumSampleNumber    Minimum sample number shown on screen.
-	 * @param maximumSampleNumber    Maximum sample number shown on screen.
+	 * Every Slot is written with the same layout it has in memory, and at a fixed position, so the file can be memory-mapped by mapSamples():
+	 *     For each Dataset (in the order of getAllDatasets()), each Slot of samples and its min/max pyramid.
+	 *     Then each Slot of compressed timestamps.
+	 *     Then any blocks of timestamps that could not be compressed: their count, then the first sample number and the timestamps of each block.
+	 *     Then the bitfield state transitions: for each State of each Bitfield of each bitfield Dataset, the number of transitions, then their sample numbers.
+	 * Only the part of the last Slot that is in use is written, so the rest of it will be a hole in the file.
+	 * 
+	 * @param file               The session file.
+	 * @param position           Where to start writing. This should be a multiple of the page size.
+	 * @param sampleCount        Number of samples to write. This must not be more than getSampleCount().
+	 * @param progressTracker    Consumer<Double> that will be notified as progress is made. (0.0 = 0%, 1.0 = 100%.)
+	 * @throws IOException       If the file can not be written.
 	 */
-	public static void dontFlushRangeBeingExported(int minimumSampleNumber, int maximumSampleNumber) {
+	static void writeSamples(FileChannel file, long position, int sampleCount, Consumer<Double> progressTracker) throws IOException {
+		
+		Dataset[] datasets = getAllDatasets();
+		int slotCount = (sampleCount + SLOT_SIZE - 1) / SLOT_SIZE;
+		double totalSlotCount = (datasets.length + 1) * slotCount;
+		
+		for(int datasetN = 0; datasetN < datasets.length; datasetN++)
+			for(int slotN = 0; slotN < slotCount; slotN++) {
+				int count = Integer.min(SLOT_SIZE, sampleCount - slotN * SLOT_SIZE);
+				datasets[datasetN].slots[slotN].writeTo(file, position, count);
+				position += Dataset.SLOT_BYTE_COUNT;
+				progressTracker.accept((datasetN * slotCount + slotN + 1) / totalSlotCount);
+			}
+		
+		List<Integer> uncompressedBlockSampleNumbers = new ArrayList<Integer>();
+		for(int slotN = 0; slotN < slotCount; slotN++) {
+			int count = Integer.min(SLOT_SIZE, sampleCount - slotN * SLOT_SIZE);
+			timestamps[slotN].writeTo(file, position, count);
+			position += TIMESTAMP_SLOT_BYTE_COUNT;
+			for(int block = 0; block < TIMESTAMP_BLOCK_COUNT; block++)
+				if(timestamps[slotN].uncompressedBlocks.get(block) != null)
+					uncompressedBlockSampleNumbers.add(slotN * SLOT_SIZE + (block << TIMESTAMP_BLOCK_SIZE_SHIFT));
+			progressTracker.accept((datasets.length * slotCount + slotN + 1) / totalSlotCount);
+		}
 		
-		minimumSampleNumberExporting = minimumSampleNumber;
-		maximumSampleNumberExporting = maximumSampleNumber;
+		// only the transitions before sampleCount are saved (the lists are in ascending order, and are read by index because the writer may still be appending)
+		List<Integer> transitionCounts = new ArrayList<Integer>();
+		int transitionsCount = 0;
+		for(Dataset dataset : datasets)
+			if(dataset.isBitfield)
+				for(Dataset.Bitfield bitfield : dataset.bitfields)
+					for(Dataset.Bitfield.State state : bitfield.states) {
+						int count = 0;
+						int size = state.sampleNumbers.size();
+						while(count < size && state.sampleNumbers.get(count) < sampleCount)
+							count++;
+						transitionCounts.add(count);
+						transitionsCount += count;
+					}
+		
+		ByteBuffer buffer = ByteBuffer.allocate(4 + uncompressedBlockSampleNumbers.size() * (4 + TIMESTAMP_BLOCK_SIZE * 8) + 4 * (transitionCounts.size() + transitionsCount)).order(ByteOrder.nativeOrder());
+		buffer.putInt(uncompressedBlockSampleNumbers.size());
+		for(int sampleNumber : uncompressedBlockSampleNumbers) {
+			buffer.putInt(sampleNumber);
+			for(long timestamp : timestamps[sampleNumber / SLOT_SIZE].uncompressedBlocks.get((sampleNumber % SLOT_SIZE) >> TIMESTAMP_BLOCK_SIZE_SHIFT))
+				buffer.putLong(timestamp);
+		}
+		int stateN = 0;
+		for(Dataset dataset : datasets)
+			if(dataset.isBitfield)
+				for(Dataset.Bitfield bitfield : dataset.bitfields)
+					for(Dataset.Bitfield.State state : bitfield.states) {
+						int count = transitionCounts.get(stateN++);
+						buffer.putInt(count);
+						for(int i = 0; i < count; i++)
+							buffer.putInt(state.sampleNumbers.get(i));
+					}
+		buffer.flip();
+		writeFully(file, buffer, position);
 		
 	}
 	
 	/**
-	 * If more than half of the max heap size is used, flush the oldest unneeded slot to disk.
+	 * Replaces all samples and timestamps with the contents of a session file that was written by writeSamples().
+	 * Full Slots are memory-mapped read-only, so nothing is parsed or copied, and the OS pages them in as the charts need them.
+	 * A partial last Slot may still be appended to, so it is copied into a new cache file instead.
+	 * The Datasets must already exist, and all samples must already have been removed.
+	 * 
+	 * @param file           The session file. It can be closed after this returns.
+	 * @param position       Where the samples start in the file.
+	 * @param sampleCount    Number of samples in the file.
+	 * @throws IOException   If the file can not be read or is incomplete.
 	 */
-	public static void flushIfNecessary() {
-		
-		// determine how much space is available, and how much is used by the timestamps and datasets
-		long maxHeapSize = Runtime.getRuntime().maxMemory();
-		long currentSize = 0;
-		for(int i = 0; i < timestamps.length; i++)
-			if(timestamps[i] == null)
-				break;
-			else if(timestamps[i].inRam)
-				currentSize += SLOT_SIZE * 8;
-		currentSize += (long) Math.ceil(getDatasetsCount() / 2.0) * currentSize;
-		
-		// if using more than half of the available space, flush one slot
-		if(currentSize > maxHeapSize / 2) {
-			
-			// figure out which slots to NOT flush
-			int firstProtectedSlotA = minimumSampleNumberOnScreen / SLOT_SIZE;
-			int lastProtectedSlotA = maximumSampleNumberOnScreen / SLOT_SIZE;
-			int firstProtectedSlotB = minimumSampleNumberExporting / SLOT_SIZE;
-			int lastProtectedSlotB = maximumSampleNumberExporting / SLOT_SIZE;
-			
-			for(int i = 0; i < timestamps.length; i++) {
-				
-				// don't flush protected slots
-				if(i >= firstProtectedSlotA && i <= lastProtectedSlotA)
-					continue;
-				if(i >= firstProtectedSlotB && i <= lastProtectedSlotB)
-					continue;
-				
-				// if connected, don't flush the last slot
-				if(CommunicationController.isConnected() && i == getSampleCount() / SLOT_SIZE)
-					return;
-				
-				// stop checking if we reached the end
-				if(timestamps[i] == null)
-					return;
-				
-				// move the timestamp array, and corresponding dataset arrays, to disk
-				if(timestamps[i].inRam) {
-					timestamps[i].moveToDisk();
-					for(int j = 0; j < getDatasetsCount(); j++)
-						getDatasetByIndex(j).slots[i].moveToDisk();
-					return;
+	static void mapSamples(FileChannel file, long position, int sampleCount) throws IOException {
+		
+		Dataset[] datasets = getAllDatasets();
+		int slotCount = (sampleCount + SLOT_SIZE - 1) / SLOT_SIZE;
+		
+		int partialSlotN = (sampleCount % SLOT_SIZE == 0) ? -1 : slotCount - 1;
+		
+		for(Dataset dataset : datasets)
+			for(int slotN = 0; slotN < slotCount; slotN++) {
+				ByteBuffer bytes = file.map(FileChannel.MapMode.READ_ONLY, position, Dataset.SLOT_BYTE_COUNT).order(ByteOrder.nativeOrder());
+				if(slotN == partialSlotN) {
+					dataset.slots[slotN] = dataset.new Slot();
+					dataset.slots[slotN].copyFrom(bytes);
+				} else {
+					dataset.slots[slotN] = dataset.new Slot(bytes);
+					reopenedSlots.increment();
 				}
-				
+				position += Dataset.SLOT_BYTE_COUNT;
 			}
-			
+		
+		for(int slotN = 0; slotN < slotCount; slotN++) {
+			ByteBuffer bytes = file.map(FileChannel.MapMode.READ_ONLY, position, TIMESTAMP_SLOT_BYTE_COUNT).order(ByteOrder.nativeOrder());
+			if(slotN == partialSlotN) {
+				timestamps[slotN] = new Slot();
+				timestamps[slotN].bytes.duplicate().put(bytes);
+			} else {
+				timestamps[slotN] = new Slot(null, bytes);
+				reopenedSlots.increment();
+			}
+			position += TIMESTAMP_SLOT_BYTE_COUNT;
+		}
+		
+		ByteBuffer buffer = file.map(FileChannel.MapMode.READ_ONLY, position, file.size() - position).order(ByteOrder.nativeOrder());
+		int uncompressedBlockCount = buffer.getInt();
+		for(int i = 0; i < uncompressedBlockCount; i++) {
+			int sampleNumber = buffer.getInt();
+			long[] block = new long[TIMESTAMP_BLOCK_SIZE];
+			for(int j = 0; j < TIMESTAMP_BLOCK_SIZE; j++)
+				block[j] = buffer.getLong();
+			timestamps[sampleNumber / SLOT_SIZE].uncompressedBlocks.set((sampleNumber % SLOT_SIZE) >> TIMESTAMP_BLOCK_SIZE_SHIFT, block);
+		}
+		DatasetsController.uncompressedBlockCount.set(uncompressedBlockCount);
+		
+		// the bitfield state transitions are read instead of found again, so the samples are not paged in
+		// the state of the last sample is restored, so samples that are appended later are compared against it
+		for(Dataset dataset : datasets)
+			if(dataset.isBitfield)
+				for(Dataset.Bitfield bitfield : dataset.bitfields) {
+					for(Dataset.Bitfield.State state : bitfield.states) {
+						int count = buffer.getInt();
+						for(int i = 0; i < count; i++)
+							state.sampleNumbers.add(buffer.getInt());
+					}
+					if(sampleCount > 0) {
+						bitfield.previousValue = (int) dataset.getSample(sampleCount - 1);
+						bitfield.previousState = (bitfield.previousValue >> bitfield.LSBit) & bitfield.bitmask;
+					}
+				}
+		
+		// publish
+		if(sampleCount > 0) {
+			firstTimestamp = timestamps[0].getValue(0);
+			lastTimestamp = getTimestamp(sampleCount - 1);
 		}
+		DatasetsController.sampleCount.set(sampleCount);
+		
+	}
+	
+	/**
+	 * Memory-maps a cache file, so the OS can page its contents in and out of RAM as needed.
+	 * Values are stored in the native byte order, so the mapped buffer can be given directly to OpenGL.
+	 * 
+	 * @param file         The cache file, from createCacheFile(). If null, a direct buffer in RAM will be used instead.
+	 * @param byteCount    Size of the mapping.
+	 * @return             The mapped buffer.
+	 */
+	static ByteBuffer mapCacheFile(FileChannel file, long byteCount) {
+		
+		if(file != null) {
+			try {
+				ByteBuffer buffer = file.map(FileChannel.MapMode.READ_WRITE, 0, byteCount).order(ByteOrder.nativeOrder());
+				createdSlots.increment();
+				return buffer;
+			} catch(Exception e) {
+				NotificationsController.showFailureForSeconds("Unable to memory-map a cache file. Samples will be kept in RAM instead.", 10, false);
+			}
+		}
+		
+		ramSlots.increment();
+		return Buffers.newDirectByteBuffer((int) byteCount);
 		
 	}
 	
@@ -0,0 +1,368 @@
+/**
+ * A forward FFT for one specific transform length.
+ * 
+ * Lengths that only contain the prime factors 2, 3, 5 and 7 are transformed with a mixed-radix Cooley-Tukey FFT.
+ * All other lengths (such as a window length that is a large prime number) are transformed with Bluestein's algorithm,
+ * which re-expresses the DFT as a convolution that is then calculated with a power-of-two FFT.
+ * 
+ * The factors and twiddle factors are calculated once in the constructor, so an FFT object should be reused for as long as the length does not change.
+ * An FFT object is never modified after it is constructed, so it can be used by multiple threads at the same time.
+ */
+public class FFT {
+	
+	private static final int MAX_RADIX = 7; // lengths with a larger prime factor will use Bluestein's algorithm
+	
+	final int length;
+	
+	// mixed-radix Cooley-Tukey
+	private final int[] factors;        // pairs of {radix, remaining length}, or null if using Bluestein's algorithm
+	private final double[] twiddleRe;   // twiddle[k] = e^(-2*pi*i*k/length)
+	private final double[] twiddleIm;
+	
+	// Bluestein
+	private final FFT convolutionFft;   // power-of-two FFT that is >= 2*length-1
+	private final double[] chirpRe;     // chirp[k] = e^(-pi*i*k^2/length)
+	private final double[] chirpIm;
+	private final double[] filterRe;    // FFT of the zero-padded conjugate chirp
+	private final double[] filterIm;
+	
+	/**
+	 * Prepares an FFT for a specific transform length.
+	 * 
+	 * @param length    Number of samples in each transform. Must be >= 1.
+	 */
+	public FFT(int length) {
+		
+		this.length = length;
+		
+		int[] f = factor(length);
+		boolean smooth = true;
+		for(int i = 0; i < f.length; i += 2)
+			if(f[i] > MAX_RADIX)
+				smooth = false;
+		
+		if(smooth) {
+			
+			factors = f;
+			twiddleRe = new double[length];
+			twiddleIm = new double[length];
+			for(int k = 0; k < length; k++) {
+				double angle = -2.0 * Math.PI * k / length;
+				twiddleRe[k] = Math.cos(angle);
+				twiddleIm[k] = Math.sin(angle);
+			}
+			
+			convolutionFft = null;
+			chirpRe = null;
+			chirpIm = null;
+			filterRe = null;
+			filterIm = null;
+			
+		} else {
+			
+			factors = null;
+			twiddleRe = null;
+			twiddleIm = null;
+			
+			int convolutionLength = Integer.highestOneBit(2 * length - 1);
+			if(convolutionLength < 2 * length - 1)
+				convolutionLength *= 2;
+			convolutionFft = new FFT(convolutionLength);
+			
+			// k^2 is reduced modulo 2*length before converting to an angle, so precision is not lost for large k
+			chirpRe = new double[length];
+			chirpIm = new double[length];
+			for(int k = 0; k < length; k++) {
+				long kSquared = ((long) k * (long) k) % (2L * length);
+				double angle = -Math.PI * kSquared / length;
+				chirpRe[k] = Math.cos(angle);
+				chirpIm[k] = Math.sin(angle);
+			}
+			
+			filterRe = new double[convolutionLength];
+			filterIm = new double[convolutionLength];
+			filterRe[0] =  chirpRe[0];
+			filterIm[0] = -chirpIm[0];
+			for(int k = 1; k < length; k++) {
+				filterRe[k] =  chirpRe[k];
+				filterIm[k] = -chirpIm[k];
+				filterRe[convolutionLength - k] =  chirpRe[k];
+				filterIm[convolutionLength - k] = -chirpIm[k];
+			}
+			convolutionFft.transform(filterRe, filterIm);
+			
+		}
+		
+	}
+	
+	/**
+	 * Calculates the forward FFT, in place.
+	 * 
+	 * @param re    Real parts. Must contain at least length values. Will be replaced with the real parts of the FFT.
+	 * @param im    Imaginary parts. Must contain at least length values. Will be replaced with the imaginary parts of the FFT.
+	 */
+	public void transform(double[] re, double[] im) {
+		
+		if(length == 1)
+			return;
+		
+		if(factors != null) {
+			
+			double[] inRe = new double[length];
+			double[] inIm = new double[length];
+			System.arraycopy(re, 0, inRe, 0, length);
+			System.arraycopy(im, 0, inIm, 0, length);
+			
+			double[] scratch = new double[2 * MAX_RADIX];
+			work(re, im, 0, inRe, inIm, 0, 1, 0, scratch);
+			
+		} else {
+			
+			int n = convolutionFft.length;
+			double[] aRe = new double[n];
+			double[] aIm = new double[n];
+			for(int k = 0; k < length; k++) {
+				aRe[k] = re[k] * chirpRe[k] - im[k] * chirpIm[k];
+				aIm[k] = re[k] * chirpIm[k] + im[k] * chirpRe[k];
+			}
+			
+			// convolve with the filter, using conj(FFT(conj(x))) / n as the inverse FFT
+			convolutionFft.transform(aRe, aIm);
+			for(int k = 0; k < n; k++) {
+				double r = aRe[k] * filterRe[k] - aIm[k] * filterIm[k];
+				double i = aRe[k] * filterIm[k] + aIm[k] * filterRe[k];
+				aRe[k] =  r;
+				aIm[k] = -i;
+			}
+			convolutionFft.transform(aRe, aIm);
+			
+			for(int k = 0; k < length; k++) {
+				double r =  aRe[k] / n;
+				double i = -aIm[k] / n;
+				re[k] = r * chirpRe[k] - i * chirpIm[k];
+				im[k] = r * chirpIm[k] + i * chirpRe[k];
+			}
+			
+		}
+		
+	}
+	
+	/**
+	 * @return    Approximate cost of one transform, as a number of butterflies, so callers can tell when something else (such as a sliding DFT) would be cheaper.
+	 */
+	public double getCost() {
+		
+		if(factors != null)
+			return length * Math.log(length) / Math.log(2);
+		else
+			return 2 * convolutionFft.getCost() + 3 * length + convolutionFft.length; // two convolutions, plus applying the chirps and the filter
+		
+	}
+	
+	/**
+	 * Calculates the FFT of a real-valued series of samples, and converts each bin into a power level.
+	 * The power levels assume the samples are in Volts, and assume a unit load (1 ohm.)
+	 * 
+	 * @param samples     The samples. samples.length must equal the length of this FFT.
+	 * @param binCount    Number of bins to calculate, starting with DC. Must be <= samples.length.
+	 * @return            The power level of each bin, in Watts.
+	 */
+	public double[] powerLevels(float[] samples, int binCount) {
+		
+		double[] re = new double[length];
+		double[] im = new double[length];
+		for(int i = 0; i < length; i++)
+			re[i] = samples[i];
+		
+		transform(re, im);
+		
+		double[] powerW = new double[binCount];
+		for(int bin = 0; bin < binCount; bin++) {
+			double realV      = re[bin] / length;
+			double imaginaryV = im[bin] / length;
+			powerW[bin] = 2 * ((realV * realV) + (imaginaryV * imaginaryV)); // *2 because DFT is from -Fs to +Fs
+		}
+		
+		return powerW;
+		
+	}
+	
+	/**
+	 * Splits a length into radices. The radix 4 is preferred, followed by 2, then increasing odd numbers.
+	 * 
+	 * @param n    The length.
+	 * @return     Pairs of {radix, remaining length after dividing by that radix}.
+	 */
+	private static int[] factor(int n) {
+		
+		int[] f = new int[64];
+		int count = 0;
+		int p = 4;
+		int floorSqrt = (int) Math.floor(Math.sqrt(n));
+		
+		do {
+			while(n % p != 0) {
+				p = (p == 4) ? 2 :
+				    (p == 2) ? 3 :
+				               p + 2;
+				if(p > floorSqrt)
+					p = n;
+			}
+			n /= p;
+			f[count++] = p;
+			f[count++] = n;
+		} while(n > 1);
+		
+		int[] factors = new int[count];
+		System.arraycopy(f, 0, factors, 0, count);
+		return factors;
+		
+	}
+	
+	/**
+	 * Recursive decimation-in-time step.
+	 * The input is read with a stride, sub-transforms are written contiguously into the output, then combined with a butterfly.
+	 */
+	private void work(double[] outRe, double[] outIm, int out, double[] inRe, double[] inIm, int in, int stride, int factorIndex, double[] scratch) {
+		
+		int p = factors[factorIndex];
+		int m = factors[factorIndex + 1];
+		int end = out + p * m;
+		
+		if(m == 1) {
+			for(int i = out; i < end; i++) {
+				outRe[i] = inRe[in];
+				outIm[i] = inIm[in];
+				in += stride;
+			}
+		} else {
+			for(int i = out; i < end; i += m) {
+				work(outRe, outIm, i, inRe, inIm, in, stride * p, factorIndex + 2, scratch);
+				in += stride;
+			}
+		}
+		
+		     if(p == 2) butterfly2(outRe, outIm, out, stride, m);
+		else if(p == 3) butterfly3(outRe, outIm, out, stride, m);
+		else if(p == 4) butterfly4(outRe, outIm, out, stride, m);
+		else            butterflyGeneric(outRe, outIm, out, stride, m, p, scratch);
+		
+	}
+	
+	private void butterfly2(double[] re, double[] im, int out, int stride, int m) {
+		
+		for(int k = 0; k < m; k++) {
+			int a = out + k;
+			int b = a + m;
+			int w = k * stride;
+			double tr = re[b] * twiddleRe[w] - im[b] * twiddleIm[w];
+			double ti = re[b] * twiddleIm[w] + im[b] * twiddleRe[w];
+			re[b] = re[a] - tr;
+			im[b] = im[a] - ti;
+			re[a] += tr;
+			im[a] += ti;
+		}
+		
+	}
+	
+	private void butterfly3(double[] re, double[] im, int out, int stride, int m) {
+		
+		double epi3 = twiddleIm[stride * m]; // -sin(2*pi/3)
+		
+		for(int k = 0; k < m; k++) {
+			int i0 = out + k;
+			int i1 = i0 + m;
+			int i2 = i1 + m;
+			int w1 = k * stride;
+			int w2 = 2 * w1;
+			
+			double s1r = re[i1] * twiddleRe[w1] - im[i1] * twiddleIm[w1];
+			double s1i = re[i1] * twiddleIm[w1] + im[i1] * twiddleRe[w1];
+			double s2r = re[i2] * twiddleRe[w2] - im[i2] * twiddleIm[w2];
+			double s2i = re[i2] * twiddleIm[w2] + im[i2] * twiddleRe[w2];
+			
+			double s3r = s1r + s2r;
+			double s3i = s1i + s2i;
+			double s0r = (s1r - s2r) * epi3;
+			double s0i = (s1i - s2i) * epi3;
+			
+			double hr = re[i0] - 0.5 * s3r;
+			double hi = im[i0] - 0.5 * s3i;
+			re[i0] += s3r;
+			im[i0] += s3i;
+			re[i2] = hr + s0i;
+			im[i2] = hi - s0r;
+			re[i1] = hr - s0i;
+			im[i1] = hi + s0r;
+		}
+		
+	}
+	
+	private void butterfly4(double[] re, double[] im, int out, int stride, int m) {
+		
+		for(int k = 0; k < m; k++) {
+			int i0 = out + k;
+			int i1 = i0 + m;
+			int i2 = i1 + m;
+			int i3 = i2 + m;
+			int w1 = k * stride;
+			int w2 = 2 * w1;
+			int w3 = 3 * w1;
+			
+			double s0r = re[i1] * twiddleRe[w1] - im[i1] * twiddleIm[w1];
+			double s0i = re[i1] * twiddleIm[w1] + im[i1] * twiddleRe[w1];
+			double s1r = re[i2] * twiddleRe[w2] - im[i2] * twiddleIm[w2];
+			double s1i = re[i2] * twiddleIm[w2] + im[i2] * twiddleRe[w2];
+			double s2r = re[i3] * twiddleRe[w3] - im[i3] * twiddleIm[w3];
+			double s2i = re[i3] * twiddleIm[w3] + im[i3] * twiddleRe[w3];
+			
+			double s5r = re[i0] - s1r;
+			double s5i = im[i0] - s1i;
+			double x0r = re[i0] + s1r;
+			double x0i = im[i0] + s1i;
+			double s3r = s0r + s2r;
+			double s3i = s0i + s2i;
+			double s4r = s0r - s2r;
+			double s4i = s0i - s2i;
+			
+			re[i2] = x0r - s3r;
+			im[i2] = x0i - s3i;
+			re[i0] = x0r + s3r;
+			im[i0] = x0i + s3i;
+			re[i1] = s5r + s4i;
+			im[i1] = s5i - s4r;
+			re[i3] = s5r - s4i;
+			im[i3] = s5i + s4r;
+		}
+		
+	}
+	
+	private void butterflyGeneric(double[] re, double[] im, int out, int stride, int m, int p, double[] scratch) {
+		
+		for(int u = 0; u < m; u++) {
+			
+			for(int q = 0, k = u; q < p; q++, k += m) {
+				scratch[2*q]     = re[out + k];
+				scratch[2*q + 1] = im[out + k];
+			}
+			
+			for(int q1 = 0, k = u; q1 < p; q1++, k += m) {
+				double sumRe = scratch[0];
+				double sumIm = scratch[1];
+				int w = 0;
+				for(int q = 1; q < p; q++) {
+					w += stride * k;
+					if(w >= length)
+						w -= length;
+					sumRe += scratch[2*q] * twiddleRe[w] - scratch[2*q + 1] * twiddleIm[w];
+					sumIm += scratch[2*q] * twiddleIm[w] + scratch[2*q + 1] * twiddleRe[w];
+				}
+				re[out + k] = sumRe;
+				im[out + k] = sumIm;
+			}
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,202 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Captures telemetry to disk without the GUI, so capture throughput is not limited by rendering, and it can run on a computer without a display.
+ * 
+ * Usage: java -cp "TelemetryViewer.jar" HeadlessCapture settingsFile outputFile [durationSeconds]
+ * 
+ * The settings file (exported from the GUI) defines the connection and the data structure. Its GUI settings and charts are ignored.
+ * The usual CSV or binary packet parser receives the telemetry, and the samples are stored in the memory-mapped cache files as they arrive, like in the GUI.
+ * 
+ * The cache files are deleted when the process ends, so the samples are also appended to a CSV file as they arrive, and that file is forced to disk every WRITE_PERIOD_MILLISECONDS.
+ * If the process crashes or is killed, or the computer loses power, everything except the last moment of telemetry is still in that CSV file.
+ * If the output file is a CSV file, it is that file. If the output file is a session file (its name ends with SessionFile.EXTENSION), the CSV file is named outputFile.csv,
+ * and when the duration has elapsed or the process is stopped (Ctrl-C), the session file is saved and the CSV file is deleted.
+ */
+public class HeadlessCapture {
+	
+	private static final int STATUS_PERIOD_MILLISECONDS = 10000;
+	private static final int WRITE_PERIOD_MILLISECONDS = 100;
+	private static final int MAX_ROWS_PER_WRITE = 16384;
+	
+	private static Thread writerThread;
+	private static volatile boolean capturing = true;
+	private static volatile boolean csvFileFailed = false;
+	private static boolean saved = false;
+	
+	/**
+	 * Entry point for headless capture.
+	 * 
+	 * @param args    Settings file path, output file path, and optionally the capture duration in seconds.
+	 */
+	public static void main(String[] args) {
+		
+		System.setProperty("java.awt.headless", "true"); // must be set before any AWT or Swing class is used
+		
+		if(args.length < 2 || args.length > 3) {
+			System.err.println("Usage: java -cp \"TelemetryViewer.jar\" HeadlessCapture settingsFile outputFile [durationSeconds]");
+			System.exit(1);
+		}
+		String settingsFilePath = args[0];
+		String outputFilePath = args[1];
+		long durationMilliseconds = Long.MAX_VALUE;
+		if(args.length == 3) {
+			try {
+				durationMilliseconds = (long) (Double.parseDouble(args[2]) * 1000);
+			} catch(NumberFormatException e) {
+				System.err.println("Invalid duration: " + args[2]);
+				System.exit(1);
+			}
+		}
+		
+		// create a directory for the cache, like the GUI does
+		Path cacheDir = Paths.get("cache");
+		try { Files.createDirectory(cacheDir); } catch(FileAlreadyExistsException e) {} catch(Exception e) { e.printStackTrace(); }
+		
+		// configure the data structure and connect
+		if(!CommunicationController.importSettingsFile(settingsFilePath, true))
+			System.exit(1);
+		if(CommunicationController.getPort().equals(CommunicationController.PORT_FILE)) {
+			System.err.println("The settings file must specify a UART, TCP, UDP or Test port.");
+			System.exit(1);
+		}
+		
+		// append the samples to a CSV file as they arrive
+		boolean sessionOutput = outputFilePath.endsWith(SessionFile.EXTENSION);
+		Path csvFile = Paths.get(sessionOutput ? outputFilePath + ".csv" : outputFilePath);
+		writerThread = new Thread(() -> writeCsvFile(csvFile), "Headless Capture Writer");
+		writerThread.start();
+		
+		// save the samples when stopped early
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> save(outputFilePath, csvFile, cacheDir), "Headless Capture Shutdown Thread"));
+		
+		// periodically report the capture rate
+		long startTime = System.currentTimeMillis();
+		int previousSampleCount = 0;
+		long previousTime = startTime;
+		while(System.currentTimeMillis() - startTime < durationMilliseconds) {
+			try {
+				Thread.sleep(Long.min(STATUS_PERIOD_MILLISECONDS, durationMilliseconds - (System.currentTimeMillis() - startTime)));
+			} catch(InterruptedException e) {
+				break;
+			}
+			long now = System.currentTimeMillis();
+			int sampleCount = DatasetsController.getSampleCount();
+			if(now - previousTime >= STATUS_PERIOD_MILLISECONDS) {
+				double rate = (sampleCount - previousSampleCount) * 1000.0 / (now - previousTime);
+				System.out.println(String.format("Captured %d samples (%.0f samples per second.)", sampleCount, rate));
+				previousSampleCount = sampleCount;
+				previousTime = now;
+			}
+		}
+		
+		save(outputFilePath, csvFile, cacheDir);
+		System.exit(0);
+		
+	}
+	
+	/**
+	 * Appends the samples to a CSV file as they arrive, until capturing stops, then appends any remaining samples and closes the file.
+	 * 
+	 * @param csvFile    The CSV file.
+	 */
+	private static void writeCsvFile(Path csvFile) {
+		
+		Dataset[] datasets = DatasetsController.getAllDatasets();
+		CsvFormatter formatter = new CsvFormatter(MAX_ROWS_PER_WRITE * (datasets.length + 2) * 12);
+		
+		try(FileChannel file = FileChannel.open(csvFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			
+			CommunicationController.formatCsvHeader(formatter, datasets);
+			long position = 0;
+			int writtenSampleCount = 0;
+			
+			while(true) {
+				
+				boolean finalWrite = !capturing; // tested before getting the sample count, so the final write gets every sample
+				int sampleCount = DatasetsController.getSampleCount();
+				
+				// each write is a range of rows in one Slot
+				while(writtenSampleCount < sampleCount) {
+					int lastSampleNumber = Integer.min(sampleCount, writtenSampleCount + MAX_ROWS_PER_WRITE) - 1;
+					lastSampleNumber = Integer.min(lastSampleNumber, (writtenSampleCount / DatasetsController.SLOT_SIZE + 1) * DatasetsController.SLOT_SIZE - 1);
+					CommunicationController.formatCsvRows(formatter, datasets, writtenSampleCount, lastSampleNumber);
+					ByteBuffer bytes = formatter.getBytes();
+					DatasetsController.writeFully(file, bytes, position);
+					position += bytes.limit();
+					formatter.clear();
+					writtenSampleCount = lastSampleNumber + 1;
+				}
+				if(formatter.getLength() > 0) { // the header, if no samples have arrived yet
+					ByteBuffer bytes = formatter.getBytes();
+					DatasetsController.writeFully(file, bytes, position);
+					position += bytes.limit();
+					formatter.clear();
+				}
+				file.force(false);
+				
+				if(finalWrite)
+					return;
+				try { Thread.sleep(WRITE_PERIOD_MILLISECONDS); } catch(InterruptedException e) { }
+				
+			}
+			
+		} catch(IOException e) {
+			
+			csvFileFailed = true;
+			NotificationsController.showFailureForSeconds("Unable to write " + csvFile + ". Samples will only be saved when the capture ends.\n" + e.getMessage(), 10, false);
+			
+		}
+		
+	}
+	
+	/**
+	 * Disconnects, finishes the CSV file, saves the session file if needed, and removes the cache files. This only happens once, even if called again.
+	 * If it is already in progress on another thread (such as the shutdown hook, when Ctrl-C is pressed while saving), this waits for it to finish.
+	 * 
+	 * @param outputFilePath    Session file or CSV file.
+	 * @param csvFile           The CSV file that was written while capturing.
+	 * @param cacheDir          The cache directory, which will be removed if empty.
+	 */
+	private static synchronized void save(String outputFilePath, Path csvFile, Path cacheDir) {
+		
+		if(saved)
+			return;
+		saved = true;
+		
+		CommunicationController.disconnect(null);
+		
+		capturing = false; // not interrupted, because that would close the FileChannel
+		try { writerThread.join(); } catch(InterruptedException e) { }
+		
+		int sampleCount = DatasetsController.getSampleCount();
+		if(sampleCount == 0) {
+			NotificationsController.showFailureForSeconds("No samples were captured.", 10, false);
+		} else if(outputFilePath.endsWith(SessionFile.EXTENSION)) {
+			NotificationsController.showVerboseForSeconds("Saving " + sampleCount + " samples to " + outputFilePath, 10, false);
+			// the CSV file is the only complete copy of the capture, so it is only removed after the session file has been saved
+			if(CommunicationController.exportSessionFile(outputFilePath, progress -> {})) {
+				try { Files.delete(csvFile); } catch(IOException e) { }
+				NotificationsController.showSuccessForSeconds("Saved " + sampleCount + " samples to " + outputFilePath, 10, false);
+			} else if(!csvFileFailed) {
+				NotificationsController.showFailureForSeconds("The captured samples have been kept in " + csvFile, 10, false);
+			}
+		} else {
+			if(csvFileFailed)
+				CommunicationController.exportCsvFile(outputFilePath, progress -> {});
+			NotificationsController.showSuccessForSeconds("Saved " + sampleCount + " samples to " + outputFilePath, 10, false);
+		}
+		
+		DatasetsController.removeAllDatasets();
+		try { Files.deleteIfExists(cacheDir); } catch(Exception e) { }
+		
+	}
+	
+}
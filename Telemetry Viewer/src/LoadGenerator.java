@@ -0,0 +1,367 @@
+import java.awt.Color;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generates synthetic telemetry, for stress-testing the ingest path without real hardware.
+ * 
+ * The channel count, sample rate (up to MHz), waveform of each channel, packet format and transport are all configurable:
+ *     IN_PROCESS    Samples are appended directly to the datasets, like a device that never drops anything. (The packet format is not used.)
+ *                   This is what the "Test" port uses, and it measures the ceiling of the storage path.
+ *     TCP / UDP     Packets are sent to a TCP or UDP server, such as the one started by CommunicationController or HeadlessCapture.
+ *                   This measures the whole path: network, NetworkIngest, packet parser and storage.
+ * 
+ * Samples are paced with System.nanoTime(). If sending falls behind, the backlog is sent as fast as possible,
+ * so comparing getGeneratedSampleCount() with the number of received samples shows where samples are dropped.
+ * 
+ * Binary packets are a 0xAA sync word followed by one "float32 LSB First" field per channel, with no checksum.
+ * CSV packets are one line per sample, with one column per channel.
+ * getSettings() returns a settings file that defines the matching data structure.
+ */
+public class LoadGenerator {
+	
+	public enum Waveform  { SINE, SQUARE, SAWTOOTH, NOISE, COUNTER }
+	public enum Format    { CSV, BINARY }
+	public enum Transport { IN_PROCESS, TCP, UDP }
+	
+	private static final double WAVEFORM_FREQUENCY = 1000; // Hz, for the periodic waveforms
+	private static final int MAX_BATCH_SIZE = DatasetsController.BATCH_SIZE;
+	private static final int MAX_UDP_PAYLOAD_SIZE = 1472; // fits in one Ethernet frame, and packets are never split across datagrams
+	private static final long MAX_WAIT_NANOSECONDS = 1000000; // wait at most 1ms, so slow sample rates still stop promptly
+	
+	private final int channelCount;
+	private final double sampleRate;
+	private final Waveform[] waveforms;
+	private final Format format;
+	private final Transport transport;
+	private final String host;
+	private final int port;
+	
+	private Thread thread;
+	private volatile long generatedSampleCount = 0;
+	private volatile long backlogSampleCount = 0;
+	private volatile String errorMessage = null;
+	
+	/**
+	 * Creates a generator. Nothing is generated until start() is called.
+	 * 
+	 * @param sampleRate    Samples per second, for every channel.
+	 * @param waveforms     The waveform of each channel. The number of waveforms is the number of channels.
+	 * @param format        Packet format. Ignored for IN_PROCESS.
+	 * @param transport     Where the samples go.
+	 * @param host          TCP/UDP server address. Ignored for IN_PROCESS.
+	 * @param port          TCP/UDP server port number. Ignored for IN_PROCESS.
+	 */
+	public LoadGenerator(double sampleRate, Waveform[] waveforms, Format format, Transport transport, String host, int port) {
+		
+		this.channelCount = waveforms.length;
+		this.sampleRate = sampleRate;
+		this.waveforms = Arrays.copyOf(waveforms, waveforms.length);
+		this.format = format;
+		this.transport = transport;
+		this.host = host;
+		this.port = port;
+		
+	}
+	
+	/**
+	 * Starts generating on a new thread. For IN_PROCESS, the data structure must already have one dataset per channel.
+	 */
+	public void start() {
+		
+		thread = new Thread(() -> {
+			
+			WritableByteChannel channel = null;
+			try {
+				if(transport == Transport.TCP)
+					channel = SocketChannel.open(new InetSocketAddress(host, port));
+				else if(transport == Transport.UDP)
+					channel = DatagramChannel.open().connect(new InetSocketAddress(host, port));
+				generate(channel);
+			} catch(ClosedByInterruptException e) {
+				// stopped by stop()
+			} catch(IOException e) {
+				errorMessage = e.getMessage();
+				NotificationsController.showFailureForSeconds("Load generator stopped: " + e.getMessage(), 10, false);
+			} finally {
+				try { if(channel != null) channel.close(); } catch(IOException e) { }
+			}
+			
+		});
+		thread.setPriority(Thread.MAX_PRIORITY);
+		thread.setName("Test Transmitter");
+		thread.start();
+		
+	}
+	
+	/**
+	 * Stops generating, and waits for the thread to end.
+	 */
+	public void stop() {
+		
+		if(thread != null && thread.isAlive()) {
+			thread.interrupt();
+			try { thread.join(); } catch(InterruptedException e) { }
+		}
+		
+	}
+	
+	/**
+	 * @return    True if the generator thread is running.
+	 */
+	public boolean isRunning() {
+		
+		return thread != null && thread.isAlive();
+		
+	}
+	
+	/**
+	 * @return    The error that stopped the generator, or null if there was none.
+	 */
+	public String getErrorMessage() {
+		
+		return errorMessage;
+		
+	}
+	
+	/**
+	 * @return    Number of samples (per channel) that have been generated and sent.
+	 */
+	public long getGeneratedSampleCount() {
+		
+		return generatedSampleCount;
+		
+	}
+	
+	/**
+	 * @return    Number of samples (per channel) that were due but have not been sent yet, because sending fell behind.
+	 */
+	public long getBacklogSampleCount() {
+		
+		return backlogSampleCount;
+		
+	}
+	
+	/**
+	 * Generates and sends samples until interrupted.
+	 * 
+	 * @param channel         Where to send packets, or null for IN_PROCESS.
+	 * @throws IOException    If the packets can not be sent.
+	 */
+	private void generate(WritableByteChannel channel) throws IOException {
+		
+		float[][] batch = new float[channelCount][MAX_BATCH_SIZE];
+		CsvFormatter csv = new CsvFormatter(MAX_BATCH_SIZE * channelCount * 12);
+		ByteBuffer binary = ByteBuffer.allocate(MAX_BATCH_SIZE * (1 + 4 * channelCount)).order(ByteOrder.LITTLE_ENDIAN);
+		long noiseState = 0x9E3779B97F4A7C15L;
+		
+		long startTime = System.nanoTime();
+		long sampleNumber = 0;
+		while(!Thread.interrupted()) {
+			
+			// wait until at least one sample is due
+			long elapsed = System.nanoTime() - startTime;
+			long dueSampleCount = (long) (elapsed / 1e9 * sampleRate);
+			backlogSampleCount = Long.max(dueSampleCount - sampleNumber, 0);
+			if(dueSampleCount <= sampleNumber) {
+				long nextSampleTime = (long) ((sampleNumber + 1) / sampleRate * 1e9);
+				LockSupport.parkNanos(Long.min(nextSampleTime - elapsed, MAX_WAIT_NANOSECONDS));
+				continue;
+			}
+			int count = (int) Long.min(dueSampleCount - sampleNumber, MAX_BATCH_SIZE);
+			
+			// generate the samples
+			for(int channelN = 0; channelN < channelCount; channelN++) {
+				double phase = (double) channelN / channelCount;
+				for(int i = 0; i < count; i++) {
+					long n = sampleNumber + i;
+					double cycles = n * WAVEFORM_FREQUENCY / sampleRate + phase;
+					float value;
+					switch(waveforms[channelN]) {
+						case SINE:     value = (float) Math.sin(2 * Math.PI * cycles);                  break;
+						case SQUARE:   value = (cycles - Math.floor(cycles)) < 0.5 ? 1 : -1;             break;
+						case SAWTOOTH: value = (float) (2 * (cycles - Math.floor(cycles)) - 1);          break;
+						case COUNTER:  value = n & 0xFFFFFF;                                              break; // exact as a float, so gaps reveal dropped samples
+						default:       noiseState ^= noiseState << 13; noiseState ^= noiseState >>> 7; noiseState ^= noiseState << 17;
+						               value = (noiseState >>> 40) / (float) (1 << 23) - 1;              break;
+					}
+					batch[channelN][i] = value;
+				}
+			}
+			
+			// send them
+			if(transport == Transport.IN_PROCESS) {
+				DatasetsController.appendSamples(batch, null, count);
+			} else if(format == Format.CSV) {
+				csv.clear();
+				for(int i = 0; i < count; i++) {
+					if(transport == Transport.UDP && csv.getLength() > MAX_UDP_PAYLOAD_SIZE - 16 * channelCount) {
+						sendFully(channel, csv.getBytes());
+						csv.clear();
+					}
+					for(int channelN = 0; channelN < channelCount; channelN++) {
+						if(channelN > 0)
+							csv.appendCharacter(',');
+						csv.appendFloat(batch[channelN][i]);
+					}
+					csv.appendCharacter('\n');
+				}
+				sendFully(channel, csv.getBytes());
+			} else {
+				binary.clear();
+				for(int i = 0; i < count; i++) {
+					if(transport == Transport.UDP && binary.position() + 1 + 4 * channelCount > MAX_UDP_PAYLOAD_SIZE) {
+						binary.flip();
+						sendFully(channel, binary);
+						binary.clear();
+					}
+					binary.put((byte) 0xAA);
+					for(int channelN = 0; channelN < channelCount; channelN++)
+						binary.putFloat(batch[channelN][i]);
+				}
+				binary.flip();
+				sendFully(channel, binary);
+			}
+			
+			sampleNumber += count;
+			generatedSampleCount = sampleNumber;
+			
+		}
+		
+	}
+	
+	/**
+	 * Sends all bytes in a buffer. For UDP, the bytes are sent as one datagram.
+	 */
+	private static void sendFully(WritableByteChannel channel, ByteBuffer bytes) throws IOException {
+		
+		while(bytes.hasRemaining())
+			channel.write(bytes);
+			
+	}
+	
+	/**
+	 * Defines this generator's port and data structure, then writes them with CommunicationController.writeSettings(), so the text matches a settings file saved by the GUI.
+	 * This replaces the current port settings and data structure, so it must only be used when not connected (such as by main().)
+	 * 
+	 * @return    The text of a settings file that connects to this generator's TCP/UDP port and defines the matching data structure, with no charts.
+	 */
+	public String getSettings() {
+		
+		// like importSettingsFile(), remove the datasets first, which also makes the CommunicationView select its defaults before they are replaced
+		DatasetsController.removeAllDatasets();
+		CommunicationController.setPort(transport == Transport.UDP ? CommunicationController.PORT_UDP : CommunicationController.PORT_TCP);
+		CommunicationController.setPortNumber(port);
+		CommunicationController.setPacketType(format == Format.CSV ? "CSV" : "Binary");
+		CommunicationController.setSampleRate((int) Math.round(sampleRate));
+		
+		Packet packet = (format == Format.CSV) ? PacketCsv.instance : PacketBinary.instance;
+		packet.reset();
+		BinaryFieldProcessor float32 = null;
+		for(BinaryFieldProcessor processor : PacketBinary.getBinaryFieldProcessors())
+			if(processor.toString().equals("float32 LSB First"))
+				float32 = processor;
+		for(int channelN = 0; channelN < channelCount; channelN++) {
+			String name = "Channel " + channelN + " (" + waveforms[channelN].toString().toLowerCase() + ")";
+			Color color = Color.getHSBColor((float) channelN / channelCount, 1, 1);
+			if(format == Format.CSV)
+				packet.insertField(channelN, null, name, color, "Volts", 1, 1);
+			else
+				packet.insertField(1 + 4 * channelN, float32, name, color, "Volts", 1, 1);
+		}
+		
+		StringWriter text = new StringWriter();
+		try(PrintWriter file = new PrintWriter(text)) {
+			CommunicationController.writeSettings(file);
+		}
+		return text.toString();
+		
+	}
+	
+	/**
+	 * Entry point for sending synthetic telemetry to a running instance of Telemetry Viewer (or HeadlessCapture.)
+	 * 
+	 * Usage: java -cp "TelemetryViewer.jar" LoadGenerator tcp|udp host:port csv|binary sampleRate waveform... [--seconds n] [--settings file]
+	 * 
+	 * Each waveform (sine, square, sawtooth, noise or counter) adds one channel.
+	 * The optional settings file defines the matching data structure, so it can be imported before the generator is started.
+	 * 
+	 * @param args    Command line arguments, as described above.
+	 */
+	public static void main(String[] args) {
+		
+		System.setProperty("java.awt.headless", "true");
+		
+		LoadGenerator generator = null;
+		double seconds = Double.POSITIVE_INFINITY;
+		String settingsFilePath = null;
+		try {
+			int waveformCount = 0;
+			while(4 + waveformCount < args.length && !args[4 + waveformCount].startsWith("--"))
+				waveformCount++;
+			if(args.length < 5 || waveformCount == 0)
+				throw new IllegalArgumentException("Missing arguments.");
+			Transport transport = Transport.valueOf(args[0].toUpperCase());
+			if(transport == Transport.IN_PROCESS)
+				throw new IllegalArgumentException("The in-process transport is only available through the \"Test\" port.");
+			String host = args[1].substring(0, args[1].lastIndexOf(':'));
+			int port = Integer.parseInt(args[1].substring(args[1].lastIndexOf(':') + 1));
+			Format format = Format.valueOf(args[2].toUpperCase());
+			double sampleRate = Double.parseDouble(args[3]);
+			Waveform[] waveforms = new Waveform[waveformCount];
+			for(int i = 0; i < waveformCount; i++)
+				waveforms[i] = Waveform.valueOf(args[4 + i].toUpperCase());
+			for(int i = 4 + waveformCount; i < args.length; i += 2) {
+				if(args[i].equals("--seconds"))
+					seconds = Double.parseDouble(args[i + 1]);
+				else if(args[i].equals("--settings"))
+					settingsFilePath = args[i + 1];
+				else
+					throw new IllegalArgumentException("Unknown option: " + args[i]);
+			}
+			generator = new LoadGenerator(sampleRate, waveforms, format, transport, host, port);
+		} catch(Exception e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: java -cp \"TelemetryViewer.jar\" LoadGenerator tcp|udp host:port csv|binary sampleRate waveform... [--seconds n] [--settings file]");
+			System.err.println("Waveforms: sine, square, sawtooth, noise, counter. Each waveform adds one channel.");
+			System.exit(1);
+		}
+		
+		if(settingsFilePath != null) {
+			try(PrintWriter file = new PrintWriter(settingsFilePath, "UTF-8")) {
+				file.print(generator.getSettings());
+			} catch(IOException e) {
+				System.err.println("Unable to write the settings file: " + e.getMessage());
+				System.exit(1);
+			}
+			System.out.println("Wrote " + settingsFilePath + ". Import it (or use it with HeadlessCapture) before starting the generator.");
+			if(seconds == Double.POSITIVE_INFINITY)
+				return;
+		}
+		
+		// report the throughput every second
+		generator.start();
+		long startTime = System.currentTimeMillis();
+		long previousCount = 0;
+		while(generator.isRunning() && System.currentTimeMillis() - startTime < seconds * 1000) {
+			try { Thread.sleep(1000); } catch(InterruptedException e) { break; }
+			long count = generator.getGeneratedSampleCount();
+			System.out.println(String.format("Sent %d samples (%d per second), %d behind schedule.", count, count - previousCount, generator.getBacklogSampleCount()));
+			previousCount = count;
+		}
+		generator.stop();
+		System.exit(generator.getErrorMessage() == null ? 0 : 1);
+		
+	}
+	
+}
@@ -1,6 +1,7 @@
 import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.Dimension;
+import java.awt.GraphicsEnvironment;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.dnd.DnDConstants;
 import java.awt.dnd.DropTarget;
@@ -21,7 +22,7 @@ import javax.swing.UIManager;
 
 public class Main {
 
-	static JFrame window = new JFrame("Telemetry Viewer v0.7");
+	static JFrame window = GraphicsEnvironment.isHeadless() ? null : new JFrame("Telemetry Viewer v0.7"); // null when running HeadlessCapture
 	static LogitechSmoothScrolling mouse = new LogitechSmoothScrolling();
 	
 	/**
@@ -99,10 +100,13 @@ public class Main {
 	
 	/**
 	 * Hides the charts and settings panels, then shows the data structure screen in the middle of the main window.
-	 * This method is thread-safe.
+	 * This method is thread-safe. It does nothing when running headless.
 	 */
 	public static void showDataStructureGui() {
 		
+		if(window == null)
+			return;
+		
 		SwingUtilities.invokeLater(() -> {
 			OpenGLChartsView.instance.animator.pause();
 			CommunicationView.instance.showSettings(false);
@@ -117,10 +121,13 @@ public class Main {
 	
 	/**
 	 * Hides the data structure screen and shows the charts in the middle of the main window.
-	 * This method is thread-safe.
+	 * This method is thread-safe. It does nothing when running headless.
 	 */
 	public static void hideDataStructureGui() {
 		
+		if(window == null)
+			return;
+		
 		SwingUtilities.invokeLater(() -> {
 			// do nothing if already hidden
 			for(Component c : window.getContentPane().getComponents())
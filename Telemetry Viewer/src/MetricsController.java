@@ -0,0 +1,406 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+/**
+ * A registry of live measurements of the telemetry pipeline, so when samples are being dropped it is possible to see which stage is the bottleneck.
+ * 
+ * There are three kinds of metrics:
+ *     Counters      Events or bytes, such as packets received or checksum failures. Shown as a rate and a total.
+ *     Gauges        A value that is read when needed, such as the number of bytes waiting in a buffer.
+ *     Histograms    Durations, such as the CPU time of drawChart(). Shown as the mean, 99th percentile and maximum of the last second.
+ * 
+ * Recording is cheap and lock-free, so it can be done from the receiver, parser and rendering threads for every packet or frame.
+ * Rates and percentiles are calculated when they are read, at most once per second.
+ * 
+ * The metrics are shown by the performance HUD (see SettingsController.setHudVisibility()), and exposed through JMX as "TelemetryViewer:type=Metrics",
+ * so they can also be watched with JConsole or VisualVM, including when running HeadlessCapture.
+ */
+public class MetricsController {
+	
+	private static final long WINDOW_NANOSECONDS = 1000000000L; // rates and percentiles are calculated over at least this long
+	
+	private static final Map<String, Metric> metrics = new ConcurrentSkipListMap<String, Metric>(); // sorted by name, so related metrics are listed together
+	
+	static {
+		
+		setGauge("JVM heap used bytes", () -> Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+		
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), new ObjectName("TelemetryViewer:type=Metrics"));
+		} catch(Exception e) {
+			NotificationsController.showFailureForSeconds("Unable to expose the metrics through JMX: " + e.getMessage(), 10, false);
+		}
+		
+	}
+	
+	/**
+	 * Something that can be measured.
+	 */
+	private static abstract class Metric {
+		
+		final String name;
+		
+		Metric(String name) {
+			
+			this.name = name;
+			
+		}
+		
+		/**
+		 * @return    One line of text for the HUD.
+		 */
+		abstract String getSummary();
+		
+		/**
+		 * Adds the JMX attributes of this metric.
+		 * 
+		 * @param attributes    Map of attribute names to values (Long or Double.)
+		 */
+		abstract void getAttributes(Map<String, Object> attributes);
+		
+	}
+	
+	/**
+	 * Counts events or bytes.
+	 */
+	public static class Counter extends Metric {
+		
+		private final LongAdder count = new LongAdder();
+		private long windowStartTime = System.nanoTime();
+		private long windowStartCount = 0;
+		private double rate = 0;
+		
+		private Counter(String name) {
+			
+			super(name);
+			
+		}
+		
+		/**
+		 * Counts one event.
+		 */
+		public void increment() {
+			
+			count.increment();
+			
+		}
+		
+		/**
+		 * @param amount    Number of events or bytes to count.
+		 */
+		public void add(long amount) {
+			
+			count.add(amount);
+			
+		}
+		
+		/**
+		 * @return    Total count.
+		 */
+		public long getCount() {
+			
+			return count.sum();
+			
+		}
+		
+		/**
+		 * @return    Count per second, averaged over the previous window.
+		 */
+		public synchronized double getRate() {
+			
+			long now = System.nanoTime();
+			if(now - windowStartTime >= WINDOW_NANOSECONDS) {
+				long newCount = count.sum();
+				rate = (newCount - windowStartCount) * 1e9 / (now - windowStartTime);
+				windowStartCount = newCount;
+				windowStartTime = now;
+			}
+			return rate;
+			
+		}
+		
+		@Override String getSummary() {
+			
+			return String.format("%s: %,.0f/s (%,d total)", name, getRate(), getCount());
+			
+		}
+		
+		@Override void getAttributes(Map<String, Object> attributes) {
+			
+			attributes.put(name + " per second", getRate());
+			attributes.put(name + " total", getCount());
+			
+		}
+		
+	}
+	
+	/**
+	 * Reads a value when needed.
+	 */
+	private static class Gauge extends Metric {
+		
+		private final LongSupplier supplier;
+		
+		private Gauge(String name, LongSupplier supplier) {
+			
+			super(name);
+			this.supplier = supplier;
+			
+		}
+		
+		@Override String getSummary() {
+			
+			return String.format("%s: %,d", name, supplier.getAsLong());
+			
+		}
+		
+		@Override void getAttributes(Map<String, Object> attributes) {
+			
+			attributes.put(name, supplier.getAsLong());
+			
+		}
+		
+	}
+	
+	/**
+	 * Records durations into power-of-two buckets, so percentiles can be estimated (within a factor of two) without storing every duration.
+	 */
+	public static class Histogram extends Metric {
+		
+		private static final int BUCKET_COUNT = 64; // bucket n contains durations from 2^(n-1) to 2^n-1 nanoseconds
+		
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+		private final LongAdder sum = new LongAdder();
+		private final AtomicLong max = new AtomicLong(0); // since the window started
+		
+		private final long[] windowStartBuckets = new long[BUCKET_COUNT];
+		private long windowStartTime = System.nanoTime();
+		private long windowStartSum = 0;
+		private long totalCount = 0;
+		private double windowRate = 0;
+		private double windowMean = 0;
+		private long windowP99 = 0;
+		private long windowMax = 0;
+		
+		private Histogram(String name) {
+			
+			super(name);
+			
+		}
+		
+		/**
+		 * @param nanoseconds    A duration to record.
+		 */
+		public void record(long nanoseconds) {
+			
+			if(nanoseconds < 0)
+				nanoseconds = 0;
+			buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanoseconds));
+			sum.add(nanoseconds);
+			max.accumulateAndGet(nanoseconds, Long::max);
+			
+		}
+		
+		/**
+		 * Calculates the statistics of the previous window, if it has ended.
+		 */
+		private synchronized void update() {
+			
+			long now = System.nanoTime();
+			if(now - windowStartTime < WINDOW_NANOSECONDS)
+				return;
+			
+			long[] counts = new long[BUCKET_COUNT];
+			long count = 0;
+			for(int i = 0; i < BUCKET_COUNT; i++) {
+				long bucket = buckets.get(i);
+				counts[i] = bucket - windowStartBuckets[i];
+				windowStartBuckets[i] = bucket;
+				count += counts[i];
+			}
+			long newSum = sum.sum();
+			
+			totalCount += count;
+			windowRate = count * 1e9 / (now - windowStartTime);
+			windowMean = (count == 0) ? 0 : (double) (newSum - windowStartSum) / count;
+			windowMax = max.getAndSet(0);
+			windowP99 = 0;
+			long rank = (long) Math.ceil(count * 0.99);
+			long seen = 0;
+			for(int i = 0; i < BUCKET_COUNT && count > 0; i++) {
+				seen += counts[i];
+				if(seen >= rank) {
+					windowP99 = Long.min((i == 0) ? 0 : (1L << i) - 1, windowMax); // upper end of the bucket
+					break;
+				}
+			}
+			
+			windowStartSum = newSum;
+			windowStartTime = now;
+			
+		}
+		
+		@Override synchronized String getSummary() {
+			
+			update();
+			return String.format("%s: %.3fms mean, %.3fms p99, %.3fms max (%,.0f/s)", name, windowMean / 1e6, windowP99 / 1e6, windowMax / 1e6, windowRate);
+			
+		}
+		
+		@Override synchronized void getAttributes(Map<String, Object> attributes) {
+			
+			update();
+			attributes.put(name + " mean milliseconds", windowMean / 1e6);
+			attributes.put(name + " p99 milliseconds",  windowP99 / 1e6);
+			attributes.put(name + " max milliseconds",  windowMax / 1e6);
+			attributes.put(name + " per second",        windowRate);
+			attributes.put(name + " total",             totalCount);
+			
+		}
+		
+	}
+	
+	/**
+	 * Gets a counter, creating it if it does not exist yet.
+	 * 
+	 * @param name    Name of the counter, such as "TCP packets received".
+	 * @return        The counter.
+	 */
+	public static Counter getCounter(String name) {
+		
+		Metric metric = metrics.computeIfAbsent(name, key -> new Counter(key));
+		return (metric instanceof Counter) ? (Counter) metric : new Counter(name); // a name collision gets a counter that is not registered
+		
+	}
+	
+	/**
+	 * Gets a histogram, creating it if it does not exist yet.
+	 * 
+	 * @param name    Name of the histogram, such as "Time Domain chart drawChart() CPU time".
+	 * @return        The histogram.
+	 */
+	public static Histogram getHistogram(String name) {
+		
+		Metric metric = metrics.computeIfAbsent(name, key -> new Histogram(key));
+		return (metric instanceof Histogram) ? (Histogram) metric : new Histogram(name); // a name collision gets a histogram that is not registered
+		
+	}
+	
+	/**
+	 * Adds or replaces a gauge.
+	 * 
+	 * @param name        Name of the gauge, such as "Transport buffer bytes".
+	 * @param supplier    Provides the value. This will be called from the GUI and JMX threads, so it must be thread-safe.
+	 */
+	public static void setGauge(String name, LongSupplier supplier) {
+		
+		metrics.put(name, new Gauge(name, supplier));
+		
+	}
+	
+	/**
+	 * Removes a metric, such as when a chart is removed or a connection is closed.
+	 * 
+	 * @param name    Name of the metric.
+	 */
+	public static void remove(String name) {
+		
+		metrics.remove(name);
+		
+	}
+	
+	/**
+	 * @return    One line of text for each metric, sorted by name.
+	 */
+	public static List<String> getSummary() {
+		
+		List<String> lines = new ArrayList<String>();
+		for(Metric metric : metrics.values())
+			lines.add(metric.getSummary());
+		return lines;
+		
+	}
+	
+	/**
+	 * @return    Map of JMX attribute names to values, for every metric.
+	 */
+	private static Map<String, Object> getAttributes() {
+		
+		Map<String, Object> attributes = new LinkedHashMap<String, Object>();
+		for(Metric metric : metrics.values())
+			metric.getAttributes(attributes);
+		return attributes;
+		
+	}
+	
+	/**
+	 * Exposes the metrics through JMX. The attributes change as metrics are added and removed, so this is a DynamicMBean. All attributes are read-only.
+	 */
+	private static class MetricsMBean implements DynamicMBean {
+		
+		@Override public Object getAttribute(String attribute) throws AttributeNotFoundException {
+			
+			Object value = MetricsController.getAttributes().get(attribute);
+			if(value == null)
+				throw new AttributeNotFoundException(attribute);
+			return value;
+			
+		}
+		
+		@Override public AttributeList getAttributes(String[] names) {
+			
+			Map<String, Object> attributes = MetricsController.getAttributes();
+			AttributeList list = new AttributeList();
+			for(String name : names)
+				if(attributes.containsKey(name))
+					list.add(new Attribute(name, attributes.get(name)));
+			return list;
+			
+		}
+		
+		@Override public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+			
+			throw new AttributeNotFoundException("The metrics are read-only.");
+			
+		}
+		
+		@Override public AttributeList setAttributes(AttributeList attributes) {
+			
+			return new AttributeList();
+			
+		}
+		
+		@Override public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+			
+			throw new ReflectionException(new NoSuchMethodException(actionName));
+			
+		}
+		
+		@Override public MBeanInfo getMBeanInfo() {
+			
+			List<MBeanAttributeInfo> info = new ArrayList<MBeanAttributeInfo>();
+			for(Map.Entry<String, Object> entry : MetricsController.getAttributes().entrySet())
+				info.add(new MBeanAttributeInfo(entry.getKey(), entry.getValue().getClass().getName(), entry.getKey(), true, false, false));
+			return new MBeanInfo(MetricsController.class.getName(), "Telemetry Viewer pipeline metrics", info.toArray(new MBeanAttributeInfo[0]), null, null, null);
+			
+		}
+		
+	}
+	
+}
@@ -0,0 +1,352 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * Receives telemetry from a TCP client or UDP sender, using one thread and an NIO Selector.
+ * 
+ * Only one source can send telemetry at a time. There is one data structure, one packet parser and one sample stream (DatasetsController),
+ * so samples from several devices would be interleaved into meaningless rows. Receiving from several devices at once,
+ * each with its own parser and sample stream, is not supported.
+ * While a source is active, other TCP clients are disconnected and packets from other UDP senders are ignored.
+ * A source that disconnects, or has not sent anything for MAX_IDLE_MILLISECONDS, is forgotten so another device can take its place.
+ * Only complete packets (CSV lines, or binary packets) are forwarded to the parser, so the next source never continues a partial packet.
+ * 
+ * The thread is never parked on the ring buffer that feeds the parser. If the parser falls behind, receiving is paused until there is space again,
+ * and the thread keeps handling new connections and idle sources in the meantime.
+ */
+public class NetworkIngest {
+	
+	private final static int MAX_IDLE_MILLISECONDS = 10000;
+	private final static int SELECT_TIMEOUT_MILLISECONDS = 1000; // how often idle sources are checked for
+	private final static int PAUSED_TIMEOUT_MILLISECONDS = 1;    // how often the ring buffer is checked for space while receiving is paused
+	private final static int MAX_UDP_PACKET_SIZE = 65507; // 65535 - (8byte UDP header) - (20byte IP header)
+	private final static int SOURCE_BUFFER_SIZE = 65536;  // must be larger than the largest packet
+	
+	private final boolean tcp;
+	private final Selector selector;
+	private final ServerSocketChannel tcpServer;
+	private final DatagramChannel udpServer;
+	private final ByteRingBuffer ringBuffer;
+	
+	private Source activeSource = null;
+	private boolean paused = false; // true if the ring buffer is full, so the active source is not being read from
+	private final Set<SocketAddress> rejectedUdpSenders = new HashSet<SocketAddress>(); // so each one is only reported once
+	private final ByteBuffer udpPacket = ByteBuffer.allocateDirect(MAX_UDP_PACKET_SIZE); // may contain part of a UDP packet while paused
+	
+	/**
+	 * The TCP client or UDP sender, and any partial packet received from it.
+	 */
+	private static class Source {
+		
+		final SocketAddress socketAddress;
+		final String address;
+		final SelectionKey key; // for a UDP sender, this is the key of the server
+		final ByteBuffer buffer = ByteBuffer.allocate(SOURCE_BUFFER_SIZE);
+		final MetricsController.Counter receivedBytes;
+		long lastReceivedTimestamp = System.currentTimeMillis();
+		
+		Source(SocketAddress address, SelectionKey key, boolean tcp) {
+			
+			this.socketAddress = address;
+			this.address = address.toString().substring(1); // trim leading "/" from the IP address
+			this.key = key;
+			receivedBytes = MetricsController.getCounter((tcp ? "TCP client " : "UDP client ") + this.address + " bytes received");
+			
+		}
+		
+		/**
+		 * Removes the metrics of this source, after it has disconnected or been forgotten.
+		 */
+		void forget() {
+			
+			MetricsController.remove(receivedBytes.name);
+			
+		}
+		
+	}
+	
+	/**
+	 * Opens a TCP or UDP server. Nothing is received until run() is called.
+	 * 
+	 * @param tcp           True for a TCP server, false for a UDP server.
+	 * @param port          The port number to listen on.
+	 * @param ringBuffer    Complete packets will be written into this ring buffer.
+	 * @throws IOException    If the port can not be opened.
+	 */
+	public NetworkIngest(boolean tcp, int port, ByteRingBuffer ringBuffer) throws IOException {
+		
+		this.tcp = tcp;
+		this.ringBuffer = ringBuffer;
+		udpPacket.limit(0);
+		selector = Selector.open();
+		tcpServer = tcp ? ServerSocketChannel.open() : null;
+		udpServer = tcp ? null : DatagramChannel.open();
+		
+		try {
+			if(tcp) {
+				tcpServer.bind(new InetSocketAddress(port));
+				tcpServer.configureBlocking(false);
+				tcpServer.register(selector, SelectionKey.OP_ACCEPT);
+			} else {
+				udpServer.bind(new InetSocketAddress(port));
+				udpServer.configureBlocking(false);
+				udpServer.register(selector, SelectionKey.OP_READ);
+			}
+		} catch(IOException e) {
+			close();
+			throw e;
+		}
+		
+	}
+	
+	/**
+	 * Receives telemetry until the thread is interrupted. This must only be called after the data structure has been defined.
+	 * 
+	 * @param packet    The packet parser, used to find where the complete packets end.
+	 * @throws IOException             If the server can not be used.
+	 * @throws InterruptedException    If the thread was interrupted.
+	 */
+	public void run(Packet packet) throws IOException, InterruptedException {
+		
+		try {
+			
+			long previousIdleCheckTimestamp = System.currentTimeMillis();
+			
+			while(true) {
+				
+				selector.select(paused ? PAUSED_TIMEOUT_MILLISECONDS : SELECT_TIMEOUT_MILLISECONDS);
+				
+				// test before any channel is used, because an interrupted thread would close the channel
+				if(Thread.interrupted())
+					throw new InterruptedException();
+				
+				if(paused)
+					resume(packet);
+				
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext()) {
+					SelectionKey key = keys.next();
+					keys.remove();
+					if(!key.isValid())
+						continue;
+					else if(key.isAcceptable())
+						accept();
+					else if(tcp)
+						receiveTcp(packet);
+					else
+						receiveUdp(packet);
+				}
+				
+				long timestamp = System.currentTimeMillis();
+				if(timestamp - previousIdleCheckTimestamp >= SELECT_TIMEOUT_MILLISECONDS) {
+					forgetIdleSource(timestamp);
+					previousIdleCheckTimestamp = timestamp;
+				}
+				
+			}
+			
+		} finally {
+			
+			close();
+			
+		}
+		
+	}
+	
+	/**
+	 * Accepts a new TCP client if there is no active client, otherwise disconnects it.
+	 */
+	private void accept() throws IOException {
+		
+		SocketChannel client = tcpServer.accept();
+		if(client == null)
+			return;
+		
+		if(activeSource != null) {
+			NotificationsController.showFailureForSeconds("A TCP client at " + client.getRemoteAddress().toString().substring(1) + " tried to connect, but only one client can send telemetry at a time. " +
+			                                              "It has been disconnected.", 5, true);
+			client.close();
+			return;
+		}
+		
+		client.configureBlocking(false);
+		SelectionKey key = client.register(selector, SelectionKey.OP_READ);
+		activeSource = new Source(client.getRemoteAddress(), key, true);
+		NotificationsController.showSuccessForSeconds("TCP connection established with a client at " + activeSource.address + ".", 5, true);
+		
+	}
+	
+	/**
+	 * Receives from the TCP client, and forwards any complete packets.
+	 */
+	private void receiveTcp(Packet packet) throws IOException {
+		
+		SocketChannel client = (SocketChannel) activeSource.key.channel();
+		
+		int byteCount;
+		try {
+			byteCount = client.read(activeSource.buffer);
+		} catch(IOException e) {
+			byteCount = -1; // the connection was reset
+		}
+		
+		if(byteCount < 0) {
+			NotificationsController.showVerboseForSeconds("The TCP client at " + activeSource.address + " disconnected.", 5, true);
+			forgetActiveSource();
+			return;
+		}
+		
+		activeSource.lastReceivedTimestamp = System.currentTimeMillis();
+		activeSource.receivedBytes.add(byteCount);
+		forwardCompletePackets(packet);
+		
+	}
+	
+	/**
+	 * Receives all pending UDP packets from the active sender (or from a new sender if there is no active sender), and forwards any complete packets.
+	 * Stops early if receiving gets paused, and keeps the rest of the current UDP packet for later.
+	 */
+	private void receiveUdp(Packet packet) throws IOException {
+		
+		while(true) {
+			
+			// a UDP packet usually contains complete packets, but may contain part of a packet
+			while(udpPacket.hasRemaining()) {
+				int byteCount = Integer.min(udpPacket.remaining(), activeSource.buffer.remaining());
+				int limit = udpPacket.limit();
+				udpPacket.limit(udpPacket.position() + byteCount);
+				activeSource.buffer.put(udpPacket);
+				udpPacket.limit(limit);
+				forwardCompletePackets(packet);
+				if(paused)
+					return;
+			}
+			
+			udpPacket.clear();
+			SocketAddress address = udpServer.receive(udpPacket);
+			udpPacket.flip();
+			if(address == null)
+				return;
+			
+			if(activeSource == null) {
+				activeSource = new Source(address, udpServer.keyFor(selector), false);
+				NotificationsController.showVerboseForSeconds("Receiving UDP packets from a client at " + activeSource.address + ".", 5, true);
+			} else if(!activeSource.socketAddress.equals(address)) {
+				if(rejectedUdpSenders.add(address))
+					NotificationsController.showFailureForSeconds("Ignoring UDP packets from a client at " + address.toString().substring(1) + ", because only one client can send telemetry at a time.", 5, true);
+				udpPacket.limit(0);
+				continue;
+			}
+			activeSource.lastReceivedTimestamp = System.currentTimeMillis();
+			activeSource.receivedBytes.add(udpPacket.remaining());
+			
+		}
+		
+	}
+	
+	/**
+	 * Writes as many complete packets from the active source into the ring buffer as there is space for, and keeps the rest for later.
+	 * If the ring buffer is full, receiving is paused.
+	 */
+	private void forwardCompletePackets(Packet packet) throws IOException {
+		
+		byte[] bytes = activeSource.buffer.array();
+		int length = activeSource.buffer.position();
+		
+		int completeByteCount = packet.getCompletePacketsByteCount(bytes, length);
+		
+		// if the buffer is full and still does not contain a complete packet, the bytes can not be valid, so discard them
+		if(completeByteCount == 0 && length == bytes.length) {
+			activeSource.buffer.clear();
+			return;
+		}
+		
+		if(completeByteCount == 0)
+			return;
+		
+		int byteCount = ringBuffer.tryWrite(bytes, 0, completeByteCount);
+		System.arraycopy(bytes, byteCount, bytes, 0, length - byteCount);
+		activeSource.buffer.position(length - byteCount);
+		
+		if(byteCount < completeByteCount && !paused) {
+			paused = true;
+			activeSource.key.interestOps(0);
+		}
+		
+	}
+	
+	/**
+	 * Tries to forward the packets that did not fit in the ring buffer, and resumes receiving if they all fit.
+	 */
+	private void resume(Packet packet) throws IOException {
+		
+		paused = false;
+		forwardCompletePackets(packet);
+		if(!paused && !tcp)
+			receiveUdp(packet);
+		if(!paused)
+			activeSource.key.interestOps(SelectionKey.OP_READ);
+			
+	}
+	
+	/**
+	 * Forgets the active source if it has been idle for too long. A TCP client is also disconnected.
+	 * A paused source is not idle, because it is the parser that has not kept up.
+	 */
+	private void forgetIdleSource(long timestamp) throws IOException {
+		
+		if(activeSource == null || paused || timestamp - activeSource.lastReceivedTimestamp <= MAX_IDLE_MILLISECONDS)
+			return;
+		
+		if(tcp)
+			NotificationsController.showFailureForSeconds("The TCP connection with " + activeSource.address + " was idle for too long. It has been closed so another device can connect.", 5, true);
+		forgetActiveSource();
+		
+	}
+	
+	/**
+	 * Forgets the active source, so another TCP client or UDP sender can take its place. A TCP client is also disconnected.
+	 */
+	private void forgetActiveSource() throws IOException {
+		
+		activeSource.forget();
+		if(tcp) {
+			activeSource.key.cancel();
+			activeSource.key.channel().close();
+		}
+		activeSource = null;
+		rejectedUdpSenders.clear();
+		
+	}
+	
+	/**
+	 * Closes the server, the TCP client, and the ring buffer.
+	 */
+	public void close() {
+		
+		if(activeSource != null)
+			activeSource.forget();
+		if(selector.isOpen()) {
+			for(SelectionKey key : selector.keys())
+				try { key.channel().close(); } catch(Exception e) {}
+			try { selector.close(); } catch(Exception e) {}
+		}
+		if(tcpServer != null)
+			try { tcpServer.close(); } catch(Exception e) {}
+		if(udpServer != null)
+			try { udpServer.close(); } catch(Exception e) {}
+		ringBuffer.close();
+		
+	}
+	
+}
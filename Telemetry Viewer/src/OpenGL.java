@@ -1057,6 +1057,7 @@ public class OpenGL {
 	 */
 	public static void writeTexture(GL2ES3 gl, int[] textureHandle, int width, int height, int pixelFormat, int pixelType, ByteBuffer pixels) {
 
+		gl.glPixelStorei(GL3.GL_UNPACK_ALIGNMENT, 1); // rows are tightly packed, and a downscaled camera image may have RGB rows that are not a multiple of 4 bytes
 		gl.glBindTexture(GL3.GL_TEXTURE_2D, textureHandle[0]);
 		gl.glTexImage2D(GL3.GL_TEXTURE_2D, 0, pixelFormat == GL3.GL_RGBA ? GL3.GL_RGBA : GL3.GL_RGB, width, height, 0, pixelFormat, pixelType, pixels);
 		
@@ -16,6 +16,7 @@ public class OpenGLCameraChart extends PositionedChart {
 	
 	Camera c = null;
 	long previousFrameTimestamp = 0;
+	int previousFrameWidth = 0;
 	
 	// image region on screen
 	int[] texHandle;
@@ -106,6 +107,16 @@ public class OpenGLCameraChart extends PositionedChart {
 
 	@Override public EventHandler drawChart(GL2ES3 gl, float[] chartMatrix, int width, int height, int lastSampleNumber, double zoomLevel, int mouseX, int mouseY) {
 
+		// let the camera decode at a lower resolution if this chart is small
+		if(c != null) {
+			int regionWidth  = width  - (int) (2 * Theme.tilePadding);
+			int regionHeight = height - (int) (2 * Theme.tilePadding);
+			if(rotateClockwise)
+				c.setDisplaySize(regionHeight, regionWidth);
+			else
+				c.setDisplaySize(regionWidth, regionHeight);
+		}
+		
 		// get the image
 		Camera.GLframe f = null;
 		if(c == null)
@@ -163,11 +174,13 @@ public class OpenGLCameraChart extends PositionedChart {
 			OpenGL.createTexture(gl, texHandle, f.width, f.height, f.isBgr ? GL3.GL_BGR : GL3.GL_RGB, GL3.GL_UNSIGNED_BYTE, true);
 			OpenGL.writeTexture (gl, texHandle, f.width, f.height, f.isBgr ? GL3.GL_BGR : GL3.GL_RGB, GL3.GL_UNSIGNED_BYTE, f.buffer);
 			previousFrameTimestamp = f.timestamp;
+			previousFrameWidth = f.width;
 			cameraWidget.sanityCheck();
-		} else if(f.timestamp != previousFrameTimestamp) {
-			// only replace the texture if a new image is available
+		} else if(f.timestamp != previousFrameTimestamp || f.width != previousFrameWidth) {
+			// only replace the texture if a new image (or the same image at a different resolution) is available
 			OpenGL.writeTexture(gl, texHandle, f.width, f.height, f.isBgr ? GL3.GL_BGR : GL3.GL_RGB, GL3.GL_UNSIGNED_BYTE, f.buffer);
 			previousFrameTimestamp = f.timestamp;
+			previousFrameWidth = f.width;
 		}
 		
 		     if(!mirrorX && !mirrorY) OpenGL.drawTexturedBox(gl, texHandle, false, xDisplayLeft,  yDisplayTop,     displayWidth, -displayHeight, 0, rotateClockwise);
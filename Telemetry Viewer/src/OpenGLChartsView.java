@@ -90,6 +90,12 @@ public class OpenGLChartsView extends JPanel {
 	long[] gpuTimes = new long[2];
 	boolean openGLES;
 	
+	// performance HUD
+	MetricsController.Histogram displayTime = MetricsController.getHistogram("OpenGL display() CPU time");
+	List<String> hudLines = new ArrayList<String>();
+	long hudUpdateTimestamp;
+	final long hudUpdatePeriod = 1000; // milliseconds
+	
 	JFrame parentWindow;
 	
 	float[] screenMatrix = new float[16];
@@ -226,6 +232,7 @@ public class OpenGLChartsView extends JPanel {
 
 			@Override public void display(GLAutoDrawable drawable) {
 				
+				long displayStartNanoseconds = System.nanoTime();
 				int tileWidth   = canvasWidth  / tileColumns;
 				int tileHeight  = canvasHeight / tileRows;
 				int tilesYoffset = canvasHeight - (tileHeight * tileRows);
@@ -287,15 +294,6 @@ public class OpenGLChartsView extends JPanel {
 				
 				int lastSampleNumber = liveView ? DatasetsController.getSampleCount() - 1 : nonLiveViewSampleNumber;
 				
-				// ensure active slots don't get flushed to disk
-				int lastSampleNumberOnScreen = lastSampleNumber;
-				int firstSampleNumberOnScreen = lastSampleNumberOnScreen;
-				for(PositionedChart c : ChartsController.getCharts()) {
-					if(lastSampleNumberOnScreen - c.sampleCount < firstSampleNumberOnScreen)
-						firstSampleNumberOnScreen = lastSampleNumberOnScreen - c.sampleCount;
-				}
-				DatasetsController.dontFlushRangeOnScreen(firstSampleNumberOnScreen, lastSampleNumberOnScreen);
-				
 				// draw the charts
 				//
 				// the modelview matrix is translated so the origin will be at the bottom-left for each chart.
@@ -417,7 +415,9 @@ public class OpenGLChartsView extends JPanel {
 					OpenGL.translateMatrix(chartMatrix, xOffset, yOffset, 0);
 					OpenGL.useMatrix(gl, chartMatrix);
 					
+					long drawStartNanoseconds = System.nanoTime();
 					EventHandler handler = chart.drawChart(gl, chartMatrix, width, height, lastSampleNumber, zoomLevel, mouseX - xOffset, mouseY - yOffset);
+					chart.getDrawChartTime().record(System.nanoTime() - drawStartNanoseconds);
 					
 					// draw the CPU/GPU benchmarks for this chart if benchmarking
 					// GPU benchmarking is not possible with OpenGL ES
@@ -478,6 +478,24 @@ public class OpenGLChartsView extends JPanel {
 					NotificationsController.showVerboseForSeconds(text, 1, false);
 				}
 				
+				displayTime.record(System.nanoTime() - displayStartNanoseconds);
+				
+				// show the pipeline metrics in the upper-left corner if enabled
+				if(SettingsController.getHudVisibility()) {
+					if(System.currentTimeMillis() - hudUpdateTimestamp >= hudUpdatePeriod) {
+						hudLines = MetricsController.getSummary();
+						hudUpdateTimestamp = System.currentTimeMillis();
+					}
+					float lineHeight = OpenGL.smallTextHeight + Theme.tickTextPadding;
+					float textWidth = 0;
+					for(String line : hudLines)
+						textWidth = Float.max(textWidth, OpenGL.smallTextWidth(gl, line));
+					float boxHeight = hudLines.size() * lineHeight + Theme.tickTextPadding;
+					OpenGL.drawBox(gl, Theme.neutralColor, 0, canvasHeight - boxHeight, textWidth + Theme.tickTextPadding*2, boxHeight);
+					for(int i = 0; i < hudLines.size(); i++)
+						OpenGL.drawSmallText(gl, hudLines.get(i), (int) Theme.tickTextPadding, (int) (canvasHeight - (i + 1) * lineHeight), 0);
+				}
+				
 			}
 			
 			@Override public void dispose(GLAutoDrawable drawable) {
@@ -652,6 +670,9 @@ public class OpenGLChartsView extends JPanel {
 					
 					if(nonLiveViewSampleNumber < 0)
 						nonLiveViewSampleNumber = -1;
+					
+					// if a file is being replayed, continue the replay from here
+					CommunicationController.seekReplay(liveView ? DatasetsController.getSampleCount() - 1 : nonLiveViewSampleNumber);
 				
 				} else if(mwe.isControlDown() == true) {
 					
@@ -2,6 +2,9 @@ import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
 
 import com.jogamp.common.nio.Buffers;
 import com.jogamp.opengl.GL2ES3;
@@ -10,12 +13,24 @@ import com.jogamp.opengl.GL3;
 /**
  * A class that performs DFTs, caches them, and renders them on screen.
  * All cache logic is implemented here, so you just specify what to visualize, and the cache will be updated as needed.
+ * 
+ * For the waveform and waterfall views, missing DFTs are calculated in parallel by a pool of worker threads.
+ * Only the OpenGL thread modifies the cache: it queues missing DFTs, and at the start of each frame it copies any finished DFTs into the cache.
+ * The OpenGL thread never waits for a DFT, so DFTs that are still being calculated are simply not drawn until a later frame.
  */
 public class OpenGLFrequencyDomainCache {
+	
+	private static final ForkJoinPool dftPool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)); // leave a core for the OpenGL thread
+	private static final int MAX_QUEUED_DFTS_PER_CACHE = 4 * dftPool.getParallelism();
 
-	float[][][] dfts;               // [datasetN][dftN][binN]
-	int[][][] histogram;            // used by waveform view, [datasetN][binN][powerBinN]
-	int[][] firstSampleNumberOfDft; // [datasetN][dftN]
+	float[][][] dfts;                  // [datasetN][dftN][binN]
+	int[][][] histogram;               // used by waveform view, [datasetN][binN][powerBinN]
+	int[][] firstSampleNumberOfDft;    // [datasetN][dftN]
+	int[][] queuedSampleNumberOfDft;   // [datasetN][dftN], first sample number of a DFT that is being calculated by the worker threads (or that failed, so it is not queued again until the cache is flushed), or -1
+	int generation;                    // incremented when the cache is flushed, so DFTs queued before the flush will be ignored
+	boolean dftFailureReported;        // so a failure is only reported once per generation
+	int queuedDftsCount;
+	Queue<FinishedDft> finishedDfts = new ConcurrentLinkedQueue<FinishedDft>();
 	int previousDftWindowLength;
 	int previousTotalSampleCount;
 	List<Dataset> previousDatasets;
@@ -28,9 +43,12 @@ public class OpenGLFrequencyDomainCache {
 	
 	double binSizeHz;
 	int binCount;	
+	private FFT fft;                // shared by the worker threads and the sliding DFTs, replaced when the DFT window length changes
 	
 	int firstDft;
 	int lastDft;
+	
+	SlidingDFT[] slidingDfts;       // used by live view, [datasetN]
 
 	FloatBuffer waterfallPixels;
 	FloatBuffer waveformPixels;
@@ -84,13 +102,19 @@ public class OpenGLFrequencyDomainCache {
 			
 			dfts = new float[datasetsCount][dftsCount][];
 			firstSampleNumberOfDft = new int[datasetsCount][dftsCount];
+			queuedSampleNumberOfDft = new int[datasetsCount][dftsCount];
 			for(int dataset = 0; dataset < datasetsCount; dataset++)
-				for(int dft = 0; dft < dftsCount; dft++)
+				for(int dft = 0; dft < dftsCount; dft++) {
 					firstSampleNumberOfDft[dataset][dft] = -1;
+					queuedSampleNumberOfDft[dataset][dft] = -1;
+				}
+			generation++;
+			dftFailureReported = false;
 			previousDftWindowLength = dftWindowLength;
 			previousTotalSampleCount = totalSampleCount;
 			previousDatasets = datasets;
 			previousChartType = chartType;
+			slidingDfts = null;
 			
 		}
 		
@@ -107,11 +131,20 @@ public class OpenGLFrequencyDomainCache {
 		if(chartType.equals("Live View")) {
 			
 			int endX = lastSampleNumber;
-			int startX = endX - dftWindowLength + 1;
+			
+			// the sliding DFTs are updated incrementally if only a few new samples arrived since the previous frame
+			calculateBinSizeAndCount(dftWindowLength, CommunicationController.getSampleRate());
+			if(slidingDfts == null || slidingDfts.length != datasetsCount || slidingDfts[0].length != dftWindowLength || slidingDfts[0].binCount != binCount) {
+				if(fft == null || fft.length != dftWindowLength)
+					fft = new FFT(dftWindowLength);
+				slidingDfts = new SlidingDFT[datasetsCount];
+				for(int dataset = 0; dataset < datasetsCount; dataset++)
+					slidingDfts[dataset] = new SlidingDFT(fft, binCount);
+			}
 			
 			for(int dataset = 0; dataset < datasetsCount; dataset++) {
-				float[] samples = datasets.get(dataset).getSamplesArray(startX, endX);
-				dfts[dataset][0] = calculateDFTxy(samples, CommunicationController.getSampleRate());
+				slidingDfts[dataset].update(datasets.get(dataset), endX);
+				dfts[dataset][0] = convertToLogXy(slidingDfts[dataset].getPowerLevels());
 			}
 			
 			// calculate the DFT domain
@@ -133,19 +166,53 @@ public class OpenGLFrequencyDomainCache {
 			
 		} else {
 			
-			for(int dataset = 0; dataset < datasetsCount; dataset++) {
-				for(int dft = firstDft; dft <= lastDft; dft++) {
+			// copy any DFTs that were finished by the worker threads into the cache
+			FinishedDft finishedDft = finishedDfts.poll();
+			while(finishedDft != null) {
+				queuedDftsCount--;
+				if(finishedDft.generation == generation && queuedSampleNumberOfDft[finishedDft.datasetN][finishedDft.rbIndex] == finishedDft.firstSampleNumber) {
+					if(finishedDft.powerLevels != null) {
+						queuedSampleNumberOfDft[finishedDft.datasetN][finishedDft.rbIndex] = -1;
+						dfts[finishedDft.datasetN][finishedDft.rbIndex] = finishedDft.powerLevels;
+						firstSampleNumberOfDft[finishedDft.datasetN][finishedDft.rbIndex] = finishedDft.firstSampleNumber;
+					} else if(!dftFailureReported) {
+						// leave it marked as queued, so it is not calculated again every frame
+						NotificationsController.showFailureForSeconds("Unable to calculate a DFT of " + previousDatasets.get(finishedDft.datasetN).name + ".\n" + finishedDft.exception, 10, false);
+						dftFailureReported = true;
+					}
+				}
+				finishedDft = finishedDfts.poll();
+			}
+			
+			calculateBinSizeAndCount(dftWindowLength, CommunicationController.getSampleRate());
+			if(fft == null || fft.length != dftWindowLength)
+				fft = new FFT(dftWindowLength);
+			
+			// queue the missing DFTs, newest first, without waiting for them to finish
+			for(int dft = lastDft; dft >= firstDft && queuedDftsCount < MAX_QUEUED_DFTS_PER_CACHE; dft--) {
+				for(int dataset = 0; dataset < datasetsCount && queuedDftsCount < MAX_QUEUED_DFTS_PER_CACHE; dataset++) {
 					
 					int firstSampleNumber = dft * dftWindowLength;
 					int rbIndex = dft % dftsCount;
 					
-					if(firstSampleNumberOfDft[dataset][rbIndex] != firstSampleNumber) {
+					if(firstSampleNumberOfDft[dataset][rbIndex] != firstSampleNumber && queuedSampleNumberOfDft[dataset][rbIndex] != firstSampleNumber) {
 						
-						int startX = firstSampleNumber;
-						int endX = startX + dftWindowLength - 1;
-						float[] samples = datasets.get(dataset).getSamplesArray(startX, endX);
-						dfts[dataset][rbIndex] = calculateDFT(samples, CommunicationController.getSampleRate());
-						firstSampleNumberOfDft[dataset][rbIndex] = startX;
+						queuedSampleNumberOfDft[dataset][rbIndex] = firstSampleNumber;
+						queuedDftsCount++;
+						
+						FinishedDft job = new FinishedDft(generation, dataset, rbIndex, firstSampleNumber);
+						Dataset d = datasets.get(dataset);
+						FFT f = fft;
+						int bins = binCount;
+						dftPool.execute(() -> {
+							try {
+								float[] samples = d.getSamplesArray(job.firstSampleNumber, job.firstSampleNumber + f.length - 1);
+								job.powerLevels = calculateDFT(f, bins, samples);
+							} catch(Exception e) {
+								job.exception = e; // leave powerLevels null
+							}
+							finishedDfts.add(job);
+						});
 						
 					}
 					
@@ -156,13 +223,15 @@ public class OpenGLFrequencyDomainCache {
 			// the DFTs are currently calculated from DC to Nyquist
 			// but the user can specify an arbitrary window length, so the max frequency may actually be a little below Nyquist
 			minHz = 0;
-			maxHz = (float) ((double) (dfts[0][0].length - 1) * (double) CommunicationController.getSampleRate() / (double) dftWindowLength);
+			maxHz = (float) ((double) (binCount - 1) * (double) CommunicationController.getSampleRate() / (double) dftWindowLength);
 			
-			// calculate the DFT range
-			minPower = dfts[0][firstDft % dftsCount][0];
-			maxPower = dfts[0][firstDft % dftsCount][0];
+			// calculate the DFT range, using the DFTs that have been calculated so far
+			minPower = Float.MAX_VALUE;
+			maxPower = -Float.MAX_VALUE;
 			for(int dataset = 0; dataset < datasetsCount; dataset++) {
 				for(int dft = firstDft; dft <= lastDft; dft++) {
+					if(!isDftReady(dataset, dft))
+						continue;
 					for(int i = 0; i < dfts[dataset][dft % dftsCount].length; i++) {
 						float y = dfts[dataset][dft % dftsCount][i];
 						if(y > maxPower) maxPower = y;
@@ -170,6 +239,10 @@ public class OpenGLFrequencyDomainCache {
 					}
 				}
 			}
+			if(minPower > maxPower) {
+				minPower = 0;
+				maxPower = 0;
+			}
 			
 		}
 		
@@ -241,6 +314,20 @@ public class OpenGLFrequencyDomainCache {
 		
 	}
 	
+	/**
+	 * This should only be called after calculateDfts().
+	 * 
+	 * @param datasetN    The dataset number.
+	 * @param dftN        The DFT number (not the ringbuffer index.)
+	 * @return            True if the worker threads have finished calculating that DFT.
+	 */
+	private boolean isDftReady(int datasetN, int dftN) {
+		
+		int rbIndex = dftN % dfts[datasetN].length;
+		return firstSampleNumberOfDft[datasetN][rbIndex] == dftN * previousDftWindowLength;
+		
+	}
+	
 	/**
 	 * This should only be called after calculateDfts().
 	 * 
@@ -280,15 +367,17 @@ public class OpenGLFrequencyDomainCache {
 	 * @param binN    The bin number.
 	 * @param rowN    The waterfall row (DFT number) to query.
 	 * @return        A float[] containing the bin values (one value per dataset) for that bin number / row number combination.
+	 *                A value will be NaN if that DFT is still being calculated.
 	 */
 	public float[] getBinValuesForWaterfallView(int binN, int rowN) {
 		
 		// map rowN to a row in the dfts[][][] array because it is a ringbuffer
-		int row = (lastDft - rowN) % dfts[0].length;
+		int dft = lastDft - rowN;
+		int row = dft % dfts[0].length;
 		
 		float[] binValues = new float[dfts.length];
 		for(int datasetN = 0; datasetN < binValues.length; datasetN++)
-			binValues[datasetN] = dfts[datasetN][row][binN];
+			binValues[datasetN] = isDftReady(datasetN, dft) ? dfts[datasetN][row][binN] : Float.NaN;
 		
 		return binValues;
 		
@@ -364,10 +453,14 @@ public class OpenGLFrequencyDomainCache {
 		
 		// calculate a 2D histogram for each dataset
 		int datasetsCount = datasets.size();
-		int xBinCount = dfts[0][0].length;
+		int xBinCount = binCount;
 		histogram = new int[datasetsCount][xBinCount][rowCount];
+		int[] dftCount = new int[datasetsCount];
 		for(int dataset = 0; dataset < datasetsCount; dataset++) {
 			for(int dft = firstDft; dft <= lastDft; dft++) {
+				if(!isDftReady(dataset, dft))
+					continue;
+				dftCount[dataset]++;
 				for(int xBin = 0; xBin < xBinCount; xBin++) {
 					int yBin = (int) ((dfts[dataset][dft % dfts[0].length][xBin] - minPower) / (maxPower - minPower) * rowCount);
 					if(yBin >= 0 && yBin < rowCount)
@@ -376,7 +469,6 @@ public class OpenGLFrequencyDomainCache {
 			}
 		}
 
-		float dftCount = lastDft - firstDft + 1;
 		int pixelCount = xBinCount * rowCount;
 		
 		ByteBuffer bytes = Buffers.newDirectByteBuffer(pixelCount * 4 * 4); // 4 bytes per: r,g,b,a
@@ -397,7 +489,7 @@ public class OpenGLFrequencyDomainCache {
 					float b = pixels.get(index + 2);
 					float a = pixels.get(index + 3);
 					
-					float newA = (float) histogram[dataset][x][y] / dftCount;
+					float newA = dftCount[dataset] == 0 ? 0 : (float) histogram[dataset][x][y] / (float) dftCount[dataset];
 					
 					r = (newR * newA) + (r * (1f - newA));
 					g = (newG * newA) + (g * (1f - newA));
@@ -439,7 +531,7 @@ public class OpenGLFrequencyDomainCache {
 	 */
 	public void renderWaterfallView(float[] chartMatrix, int bottomLeftX, int bottomLeftY, int width, int height, float minPower, float maxPower, GL2ES3 gl, List<Dataset> datasets) {
 		
-		int binCount = dfts[0][0].length;
+		int binCount = this.binCount;
 		int dftsCount = dfts[0].length;
 		int datasetsCount = datasets.size();
 		
@@ -457,7 +549,7 @@ public class OpenGLFrequencyDomainCache {
 			for(int y = 0; y < dftsCount; y++) {
 				int dft = lastDft - y;
 				for(int x = 0; x < binCount; x++) {
-					if(dft >= 0) {
+					if(dft >= 0 && isDftReady(dataset, dft)) {
 						int index = (x + (y * binCount)) * 4; // 4 floats per pixel
 						
 						float r = pixels.get(index + 0);
@@ -513,70 +605,53 @@ public class OpenGLFrequencyDomainCache {
 		
 	}
 	
-	private double[][] sinLUT;
-	private double[][] cosLUT;
-	
 	/**
-	 * Calculates a DFT, using look-up tables for sine and cosine.
+	 * Calculates a DFT with an FFT. This method does not modify the cache, so it can be called from the worker threads.
 	 * The returned DFT will contain a sequence of power levels. The corresponding frequencies are *not* included.
 	 * 
-	 * @param samples       A series of samples, as a float[].
-	 * @param sampleRate    Sample rate, in Hz.
-	 * @returns             The DFT. If the samples have units of Volts, these numbers will have units of log10(Watts).
+	 * @param fft         The FFT to use. Its length must equal samples.length.
+	 * @param binCount    Number of bins to calculate, starting with DC.
+	 * @param samples     A series of samples, as a float[].
+	 * @returns           The DFT. If the samples have units of Volts, these numbers will have units of log10(Watts).
 	 */
-	private float[] calculateDFT(float[] samples, int sampleRate) {
+	static float[] calculateDFT(FFT fft, int binCount, float[] samples) {
 		
-		// bin size (in Hertz) is the reciprocal of the window size (in seconds)
-		// example: 500ms window -> 1/0.5 = 2 Hz bin size
-		double samplesPerSecond = sampleRate;
-		int sampleCount = samples.length;
-		binSizeHz = 1.0 / ((double) sampleCount / samplesPerSecond);
-		
-		// maximum frequency range (in Hertz) is from 0 to the sample rate (in Hertz), divided by 2
-		// example: sampling at 1kHz -> 0 Hz to 1000/2 = 500 Hz
-		double maxFrequencyHz = samplesPerSecond / 2.0;
-		binCount = (int) (maxFrequencyHz / binSizeHz) + 1;
+		// calc the DFT, assuming the samples are in Volts, and assuming the load is a unit load (1 ohm)
+		double[] powerW = fft.powerLevels(samples, binCount);
 		
-		// generate the sine and cosine LUTs
-		if(sinLUT == null || cosLUT == null || sinLUT[0].length != sampleCount || cosLUT[0].length != sampleCount) {
-			sinLUT = new double[binCount][sampleCount];
-			cosLUT = new double[binCount][sampleCount];
-			System.gc();
-			for(int bin = 0; bin < binCount; bin++) {
-				double frequencyHz  = (double) bin * binSizeHz;
-				for(int sample = 0; sample < sampleCount; sample++) {
-					double timeSec      = (double) sample / samplesPerSecond;
-					sinLUT[bin][sample] = Math.sin(2.0 * Math.PI * frequencyHz * timeSec);
-					cosLUT[bin][sample] = Math.cos(2.0 * Math.PI * frequencyHz * timeSec);
-				}
-			}
+		float[] powerLevels = new float[binCount];
+		for(int bin = 0; bin < binCount; bin++) {
+			
+			// ensure powerW != 0, which would cause the Math.log10() below to return -Infinity
+			if(powerW[bin] == 0)
+				powerW[bin] = Double.MIN_VALUE;
+			
+			powerLevels[bin] = (float) Math.log10(powerW[bin]);
 		}
 		
-		// calc the DFT, assuming the samples are in Volts, and assuming the load is a unit load (1 ohm)
-		float[] powerLevels = new float[binCount];
+		return powerLevels;
 		
+	}
+	
+	/**
+	 * Converts power levels into a sequence of frequencies and their corresponding power levels.
+	 * This should only be called after calculateBinSizeAndCount().
+	 * 
+	 * @param powerW    The power level of each bin, in Watts.
+	 * @returns         The DFT. If the samples have units of Volts, these numbers will have units of log10(Watts).
+	 */
+	private float[] convertToLogXy(double[] powerW) {
+		
+		float[] powerLevels = new float[binCount*2];
 		for(int bin = 0; bin < binCount; bin++) {
-			double realV = 0.0;
-			double imaginaryV = 0.0;
-//			double frequencyHz = (double) bin * binSizeHz;
-			for(int x = 0; x < sampleCount; x++) {
-				double sample = samples[x];
-//				double timeSec   = (double) x / samplesPerSecond;
-//				realV      += sample * Math.cos(2.0 * Math.PI * frequencyHz * timeSec);
-//				imaginaryV += sample * Math.sin(2.0 * Math.PI * frequencyHz * timeSec);
-				realV      += sample * cosLUT[bin][x];
-				imaginaryV += sample * sinLUT[bin][x];
-			}
-			realV      /= (double) sampleCount;
-			imaginaryV /= (double) sampleCount;
-			double powerW = (realV * realV) + (imaginaryV * imaginaryV);
-			powerW *= 2; // because DFT is from -Fs to +Fs
 			
 			// ensure powerW != 0, which would cause the Math.log10() below to return -Infinity
-			if(powerW == 0)
-				powerW = Double.MIN_VALUE;
+			double power = powerW[bin];
+			if(power == 0)
+				power = Double.MIN_VALUE;
 			
-			powerLevels[bin] = (float) Math.log10(powerW);
+			powerLevels[bin*2]     = (float) ((double) bin * binSizeHz);
+			powerLevels[bin*2 + 1] = (float) Math.log10(power);
 		}
 		
 		return powerLevels;
@@ -584,19 +659,16 @@ public class OpenGLFrequencyDomainCache {
 	}
 	
 	/**
-	 * Calculates a DFT, using look-up tables for sine and cosine.
-	 * The returned DFT will contain a sequence of frequencies and their corresponding power levels.
+	 * Updates binSizeHz and binCount for a DFT window.
 	 * 
-	 * @param samples       A series of samples, as a float[].
-	 * @param sampleRate    Sample rate, in Hz.
-	 * @returns             The DFT. If the samples have units of Volts, these numbers will have units of log10(Watts).
+	 * @param sampleCount    Number of samples in the DFT window.
+	 * @param sampleRate     Sample rate, in Hz.
 	 */
-	float[] calculateDFTxy(float[] samples, int sampleRate) {
+	private void calculateBinSizeAndCount(int sampleCount, int sampleRate) {
 		
 		// bin size (in Hertz) is the reciprocal of the window size (in seconds)
 		// example: 500ms window -> 1/0.5 = 2 Hz bin size
 		double samplesPerSecond = sampleRate;
-		int sampleCount = samples.length;
 		binSizeHz = 1.0 / ((double) sampleCount / samplesPerSecond);
 		
 		// maximum frequency range (in Hertz) is from 0 to the sample rate (in Hertz), divided by 2
@@ -604,51 +676,27 @@ public class OpenGLFrequencyDomainCache {
 		double maxFrequencyHz = samplesPerSecond / 2.0;
 		binCount = (int) (maxFrequencyHz / binSizeHz) + 1;
 		
-		// generate the sine and cosine LUTs
-		if(sinLUT == null || cosLUT == null || sinLUT[0].length != sampleCount || cosLUT[0].length != sampleCount) {
-			sinLUT = new double[binCount][sampleCount];
-			cosLUT = new double[binCount][sampleCount];
-			System.gc();
-			for(int bin = 0; bin < binCount; bin++) {
-				double frequencyHz  = (double) bin * binSizeHz;
-				for(int sample = 0; sample < sampleCount; sample++) {
-					double timeSec      = (double) sample / samplesPerSecond;
-					sinLUT[bin][sample] = Math.sin(2.0 * Math.PI * frequencyHz * timeSec);
-					cosLUT[bin][sample] = Math.cos(2.0 * Math.PI * frequencyHz * timeSec);
-				}
-			}
-		}
-		
-		// calc the DFT, assuming the samples are in Volts, and assuming the load is a unit load (1 ohm)
-		float[] powerLevels = new float[binCount*2];
-		
-		for(int bin = 0; bin < binCount; bin++) {
-			double realV = 0.0;
-			double imaginaryV = 0.0;
-			double frequencyHz = (double) bin * binSizeHz;
-			for(int x = 0; x < sampleCount; x++) {
-				double sample = samples[x];
-//				double timeSec   = (double) x / samplesPerSecond;
-//				realV      += sample * Math.cos(2.0 * Math.PI * frequencyHz * timeSec);
-//				imaginaryV += sample * Math.sin(2.0 * Math.PI * frequencyHz * timeSec);
-				realV      += sample * cosLUT[bin][x];
-				imaginaryV += sample * sinLUT[bin][x];
-			}
-			realV      /= (double) sampleCount;
-			imaginaryV /= (double) sampleCount;
-			double powerW = (realV * realV) + (imaginaryV * imaginaryV);
-			powerW *= 2; // because DFT is from -Fs to +Fs
-			
-			// ensure powerW != 0, which would cause the Math.log10() below to return -Infinity
-			if(powerW == 0)
-				powerW = Double.MIN_VALUE;
-			
-			powerLevels[bin*2]     = (float) frequencyHz;
-			powerLevels[bin*2 + 1] = (float) Math.log10(powerW);
+	}
+	
+	/**
+	 * A DFT that was queued for the worker threads. The worker thread fills in powerLevels, then adds it to the finishedDfts queue.
+	 */
+	private static class FinishedDft {
+		
+		final int generation;
+		final int datasetN;
+		final int rbIndex;
+		final int firstSampleNumber;
+		float[] powerLevels; // null if the DFT could not be calculated
+		Exception exception; // why the DFT could not be calculated
+		
+		FinishedDft(int generation, int datasetN, int rbIndex, int firstSampleNumber) {
+			this.generation = generation;
+			this.datasetN = datasetN;
+			this.rbIndex = rbIndex;
+			this.firstSampleNumber = firstSampleNumber;
 		}
 		
-		return powerLevels;
-		
 	}
 	
 }
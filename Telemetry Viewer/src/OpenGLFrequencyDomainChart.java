@@ -644,7 +644,7 @@ public class OpenGLFrequencyDomainChart extends PositionedChart {
 					text[1] = "(Samples " + rowFirstSampleNumber + " to " + rowLastSampleNumber + ")";
 					colors[1] = new Color(Theme.tooltipBackgroundColor[0], Theme.tooltipBackgroundColor[1], Theme.tooltipBackgroundColor[2], Theme.tooltipBackgroundColor[3]);
 					for(int i = 0; i < datasets.size(); i++) {
-						text[i + 2] = "1e" + ChartUtils.formattedNumber(binValues[i], 4) + " Watts";
+						text[i + 2] = Float.isNaN(binValues[i]) ? "(Calculating...)" : "1e" + ChartUtils.formattedNumber(binValues[i], 4) + " Watts";
 						colors[i + 2] = datasets.get(i).color;
 					}
 					anchorY = (int) (((float) waterfallRowN + 0.5f) / (float) waterfallRowCount * plotHeight + yPlotBottom);
@@ -84,6 +84,16 @@ public abstract class Packet {
 		
 	}
 	
+	/**
+	 * Finds where the complete packets end in a buffer of received bytes.
+	 * This is used when bytes from several sources are merged into one stream, so a partial packet from one source is never followed by bytes from another source.
+	 * 
+	 * @param bytes     Received bytes.
+	 * @param length    Number of received bytes.
+	 * @return          Number of bytes at the start of the buffer that end with a complete packet, or 0 if there is no complete packet yet.
+	 */
+	public abstract int getCompletePacketsByteCount(byte[] bytes, int length);
+	
 	public abstract JPanel getDataStructureGui();
 	public abstract void startReceivingData(InputStream stream);
 	public abstract void stopReceivingData();
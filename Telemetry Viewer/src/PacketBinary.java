@@ -14,7 +14,6 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
 import java.awt.font.FontRenderContext;
-import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Collections;
@@ -414,75 +413,75 @@ public class PacketBinary extends Packet {
 		
 		processors[0] = new BinaryFieldProcessor() {
 			
-			@Override public String toString()                   { return "uint16 LSB First"; }
-			@Override public int getByteCount()                  { return 2; }
-			@Override public float extractValue(byte[] rawBytes) { return (float) (((0xFF & rawBytes[0]) << 0) |
-					                                                               ((0xFF & rawBytes[1]) << 8));}
+			@Override public String toString()                               { return "uint16 LSB First"; }
+			@Override public int getByteCount()                              { return 2; }
+			@Override public float extractValue(byte[] rawBytes, int offset) { return (float) (((0xFF & rawBytes[offset + 0]) << 0) |
+			                                                                                  ((0xFF & rawBytes[offset + 1]) << 8));}
 			
 		};
 		
 		processors[1] = new BinaryFieldProcessor() {
 			
-			@Override public String toString()                   { return "uint16 MSB First"; }
-			@Override public int getByteCount()                  { return 2; }
-			@Override public float extractValue(byte[] rawBytes) { return (float) (((0xFF & rawBytes[1]) << 0) |
-			                                                                       ((0xFF & rawBytes[0]) << 8));}
+			@Override public String toString()                               { return "uint16 MSB First"; }
+			@Override public int getByteCount()                              { return 2; }
+			@Override public float extractValue(byte[] rawBytes, int offset) { return (float) (((0xFF & rawBytes[offset + 1]) << 0) |
+			                                                                                  ((0xFF & rawBytes[offset + 0]) << 8));}
 			
 		};
 		
 		processors[2] = new BinaryFieldProcessor() {
 			
-			@Override public String toString()                   { return "int16 LSB First"; }
-			@Override public int getByteCount()                  { return 2; }
-			@Override public float extractValue(byte[] rawBytes) { return (float)(short) (((0xFF & rawBytes[0]) << 0) |
-					                                                                      ((0xFF & rawBytes[1]) << 8));}
+			@Override public String toString()                               { return "int16 LSB First"; }
+			@Override public int getByteCount()                              { return 2; }
+			@Override public float extractValue(byte[] rawBytes, int offset) { return (float)(short) (((0xFF & rawBytes[offset + 0]) << 0) |
+			                                                                                         ((0xFF & rawBytes[offset + 1]) << 8));}
 			
 		};
 		
 		processors[3] = new BinaryFieldProcessor() {
 			
-			@Override public String toString()                   { return "int16 MSB First"; }
-			@Override public int getByteCount()                  { return 2; }
-			@Override public float extractValue(byte[] rawBytes) { return (float)(short) (((0xFF & rawBytes[1]) << 0) |
-			                                                                              ((0xFF & rawBytes[0]) << 8));}
+			@Override public String toString()                               { return "int16 MSB First"; }
+			@Override public int getByteCount()                              { return 2; }
+			@Override public float extractValue(byte[] rawBytes, int offset) { return (float)(short) (((0xFF & rawBytes[offset + 1]) << 0) |
+			                                                                                         ((0xFF & rawBytes[offset + 0]) << 8));}
 			
 		};
 		
 		processors[4] = new BinaryFieldProcessor() {
 			
-			@Override public String toString()                { return "float32 LSB First"; }
-			@Override public int getByteCount()               { return 4; }
-			@Override public float extractValue(byte[] bytes) { return Float.intBitsToFloat(((0xFF & bytes[0]) <<  0) |
-			                                                                                ((0xFF & bytes[1]) <<  8) |
-			                                                                                ((0xFF & bytes[2]) << 16) |
-			                                                                                ((0xFF & bytes[3]) << 24));}
+			@Override public String toString()                            { return "float32 LSB First"; }
+			@Override public int getByteCount()                           { return 4; }
+			@Override public float extractValue(byte[] bytes, int offset) { return Float.intBitsToFloat(((0xFF & bytes[offset + 0]) <<  0) |
+			                                                                                           ((0xFF & bytes[offset + 1]) <<  8) |
+			                                                                                           ((0xFF & bytes[offset + 2]) << 16) |
+			                                                                                           ((0xFF & bytes[offset + 3]) << 24));}
 			
 		};
 		
 		processors[5] = new BinaryFieldProcessor() {
 			
-			@Override public String toString()                { return "float32 MSB First"; }
-			@Override public int getByteCount()               { return 4; }
-			@Override public float extractValue(byte[] bytes) { return Float.intBitsToFloat(((0xFF & bytes[3]) <<  0) |
-                                                                                            ((0xFF & bytes[2]) <<  8) |
-                                                                                            ((0xFF & bytes[1]) << 16) |
-                                                                                            ((0xFF & bytes[0]) << 24));}
+			@Override public String toString()                            { return "float32 MSB First"; }
+			@Override public int getByteCount()                           { return 4; }
+			@Override public float extractValue(byte[] bytes, int offset) { return Float.intBitsToFloat(((0xFF & bytes[offset + 3]) <<  0) |
+			                                                                                           ((0xFF & bytes[offset + 2]) <<  8) |
+			                                                                                           ((0xFF & bytes[offset + 1]) << 16) |
+			                                                                                           ((0xFF & bytes[offset + 0]) << 24));}
 			
 		};
 		
 		processors[6] = new BinaryFieldProcessor() {
 			
-			@Override public String toString()                { return "Bitfield: 8 Bits"; }
-			@Override public int getByteCount()               { return 1; }
-			@Override public float extractValue(byte[] bytes) { return (float) (0xFF & bytes[0]);}
+			@Override public String toString()                            { return "Bitfield: 8 Bits"; }
+			@Override public int getByteCount()                           { return 1; }
+			@Override public float extractValue(byte[] bytes, int offset) { return (float) (0xFF & bytes[offset]);}
 			
 		};
 		
 		processors[7] = new BinaryFieldProcessor() {
 			
-			@Override public String toString()                { return "uint8"; }
-			@Override public int getByteCount()               { return 1; }
-			@Override public float extractValue(byte[] bytes) { return (float) (0xFF & bytes[0]);}
+			@Override public String toString()                            { return "uint8"; }
+			@Override public int getByteCount()                           { return 1; }
+			@Override public float extractValue(byte[] bytes, int offset) { return (float) (0xFF & bytes[offset]);}
 			
 		};
 		
@@ -499,9 +498,9 @@ public class PacketBinary extends Packet {
 		
 		processors[0] = new BinaryChecksumProcessor() {
 			
-			@Override public String toString()                              { return "uint16 Checksum LSB First"; }
-			@Override public int getByteCount()                             { return 2; }
-			@Override public boolean testChecksum(byte[] bytes, int length) {
+			@Override public String toString()                                          { return "uint16 Checksum LSB First"; }
+			@Override public int getByteCount()                                         { return 2; }
+			@Override public boolean testChecksum(byte[] bytes, int offset, int length) {
 				
 				// sanity check: a 16bit checksum requires an even number of bytes
 				if(length % 2 != 0)
@@ -514,14 +513,14 @@ public class PacketBinary extends Packet {
 				int lsb = 0;
 				int msb = 0;
 				for(int i = 0; i < wordCount; i++) {
-					lsb = 0xFF & bytes[i*2];
-					msb = 0xFF & bytes[i*2 + 1];
+					lsb = 0xFF & bytes[offset + i*2];
+					msb = 0xFF & bytes[offset + i*2 + 1];
 					sum += (msb << 8 | lsb);
 				}
 				
 				// extract the reported checksum
-				lsb = 0xFF & bytes[wordCount*2];
-				msb = 0xFF & bytes[wordCount*2 + 1];
+				lsb = 0xFF & bytes[offset + wordCount*2];
+				msb = 0xFF & bytes[offset + wordCount*2 + 1];
 				int checksum = (msb << 8 | lsb);
 				
 				// test
@@ -538,6 +537,29 @@ public class PacketBinary extends Packet {
 		
 	}
 	
+	/**
+	 * Finds where the last complete packet ends in a buffer of received bytes.
+	 * Packets are found the same way the Binary Packet Processor thread finds them, by skipping to the sync word.
+	 * 
+	 * @param bytes     Received bytes.
+	 * @param length    Number of received bytes.
+	 * @return          Number of bytes up to the end of the last complete packet, or 0 if there is no complete packet yet.
+	 */
+	@Override public int getCompletePacketsByteCount(byte[] bytes, int length) {
+		
+		int completeByteCount = 0;
+		int i = 0;
+		while(true) {
+			while(i < length && bytes[i] != syncWord)
+				i++;
+			if(length - i < packetSize)
+				return completeByteCount;
+			i += packetSize;
+			completeByteCount = i;
+		}
+		
+	}
+	
 	/**
 	 * Spawns a new thread that listens for incoming data, processes it, and populates the datasets.
 	 * This method should only be called after a connection has been made.
@@ -559,8 +581,32 @@ public class PacketBinary extends Packet {
 				}
 			}
 				
-			byte[] rx_buffer = new byte[packetSize];
-			BufferedInputStream bStream = new BufferedInputStream(stream, 2 * packetSize);
+			// look up the fields once, instead of for every packet
+			Dataset[] datasets = DatasetsController.getAllDatasets();
+			BinaryFieldProcessor[] processors = new BinaryFieldProcessor[datasets.length];
+			int[] offsets = new int[datasets.length]; // relative to the sync word
+			for(int i = 0; i < datasets.length; i++) {
+				processors[i] = datasets[i].processor;
+				offsets[i] = datasets[i].location;
+			}
+			
+			// packets are decoded into a batch, and the whole batch is appended to the datasets at once
+			float[][] batch = new float[datasets.length][DatasetsController.BATCH_SIZE];
+			int batchCount = 0;
+			
+			// measure this stage of the pipeline
+			String source = CommunicationController.getPort();
+			MetricsController.Counter receivedBytes   = MetricsController.getCounter(source + " bytes received");
+			MetricsController.Counter receivedPackets = MetricsController.getCounter(source + " packets received");
+			MetricsController.Counter checksumFailures = MetricsController.getCounter(source + " checksum failures");
+			MetricsController.setGauge("Transport buffer bytes", () -> {
+				try { return stream.available(); } catch(IOException e) { return 0; }
+			});
+			
+			// many packets are received into this buffer at once, then processed in place
+			byte[] rx_buffer = new byte[Integer.max(65536, 2 * packetSize)];
+			int rx_start = 0; // first unprocessed byte
+			int rx_end = 0;   // one past the last received byte
 			
 			// tell the user we're connected
 			String waitingForTelemetry = CommunicationController.getPort().startsWith(CommunicationController.PORT_UART) ? CommunicationController.getPort().substring(6) + " is connected. Send telemetry." :
@@ -587,45 +633,61 @@ public class PacketBinary extends Packet {
 				try {
 				
 					// wait for data to arrive
-					while(bStream.available() < packetSize)
-						Thread.sleep(1);
-					
-					// wait for the sync word
-					bStream.read(rx_buffer, 0, 1);
-					while(rx_buffer[0] != syncWord)
-						bStream.read(rx_buffer, 0, 1);
+					int available = ByteRingBuffer.awaitAvailable(stream);
 					
-					// get rest of packet after the sync word
-					bStream.read(rx_buffer, 0, packetSize - 1); // -1 for syncWord
-					
-					// test checksum if enabled
-					boolean checksumPassed = true;
-					if(checksumProcessor != null)
-						checksumPassed = checksumProcessor.testChecksum(rx_buffer, packetSize - 1); // -1 for syncWord
-					if(!checksumPassed) {
-						NotificationsController.showVerboseForSeconds("Checksum failed.", 1, false);
-						continue;
+					// move any partial packet to the front of the buffer, then receive as much as possible
+					if(rx_start > 0) {
+						System.arraycopy(rx_buffer, rx_start, rx_buffer, 0, rx_end - rx_start);
+						rx_end -= rx_start;
+						rx_start = 0;
 					}
+					int byteCount = stream.read(rx_buffer, rx_end, Integer.min(available, rx_buffer.length - rx_end));
+					if(byteCount < 0)
+						throw new IOException();
+					rx_end += byteCount;
+					receivedBytes.add(byteCount);
 					
-					// extract raw numbers and insert them into the datasets
-					for(Dataset dataset : DatasetsController.getAllDatasets()) {
-						BinaryFieldProcessor processor = dataset.processor;
-						int byteOffset = dataset.location;
-						int byteCount  = processor.getByteCount();
+					// process each complete packet
+					while(true) {
+						
+						// skip to the sync word
+						while(rx_start < rx_end && rx_buffer[rx_start] != syncWord)
+							rx_start++;
+						if(rx_end - rx_start < packetSize)
+							break;
 						
-						byte[] buffer = new byte[byteCount];
-						for(int i = 0; i < byteCount; i++)
-							buffer[i] = rx_buffer[byteOffset + i - 1]; // -1 for syncWord
+						int packetStart = rx_start;
+						rx_start += packetSize;
+						
+						// test checksum if enabled
+						boolean checksumPassed = true;
+						if(checksumProcessor != null)
+							checksumPassed = checksumProcessor.testChecksum(rx_buffer, packetStart + 1, packetSize - 1); // +1 and -1 for syncWord
+						if(!checksumPassed) {
+							checksumFailures.increment();
+							NotificationsController.showVerboseForSeconds("Checksum failed.", 1, false);
+							continue;
+						}
+						
+						// extract raw numbers into the batch
+						for(int i = 0; i < datasets.length; i++)
+							batch[i][batchCount] = processors[i].extractValue(rx_buffer, packetStart + offsets[i]);
+						batchCount++;
+						receivedPackets.increment();
+						if(batchCount == DatasetsController.BATCH_SIZE) {
+							DatasetsController.appendSamples(batch, null, batchCount);
+							batchCount = 0;
+						}
 						
-						float rawNumber = processor.extractValue(buffer);
-						dataset.add(rawNumber);
 					}
-					DatasetsController.incrementSampleCount();
+					DatasetsController.appendSamples(batch, null, batchCount);
+					batchCount = 0;
 				
 				} catch(IOException | InterruptedException e) {
 					
 					// stop and end this thread
-					try { bStream.close(); } catch(IOException e2) { }
+					MetricsController.remove("Transport buffer bytes");
+					try { stream.close(); } catch(IOException e2) { }
 					NotificationsController.showVerboseForSeconds("The Binary Packet Processor thread is stopping.", 5, false);
 					return;
 					
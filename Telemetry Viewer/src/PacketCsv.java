@@ -10,11 +10,8 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.font.FontRenderContext;
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.net.SocketTimeoutException;
 import java.util.ArrayList;
 import java.util.List;
 import javax.swing.Box;
@@ -241,6 +238,23 @@ public class PacketCsv extends Packet {
 		
 	}
 
+	/**
+	 * Finds where the last complete line ends in a buffer of received bytes.
+	 * 
+	 * @param bytes     Received bytes.
+	 * @param length    Number of received bytes.
+	 * @return          Number of bytes up to and including the last line ending, or 0 if there is no complete line yet.
+	 */
+	@Override public int getCompletePacketsByteCount(byte[] bytes, int length) {
+		
+		for(int i = length - 1; i >= 0; i--)
+			if(bytes[i] == '\n' || bytes[i] == '\r')
+				return i + 1;
+		
+		return 0;
+		
+	}
+	
 	/**
 	 * Spawns a new thread that listens for incoming data, processes it, and populates the datasets.
 	 * This method should only be called after the data structure has been defined and a connection has been made.
@@ -250,8 +264,6 @@ public class PacketCsv extends Packet {
 	@Override public void startReceivingData(InputStream stream) {
 		
 		thread = new Thread(() -> {
-				
-			BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
 			
 			// wait for the data structure to be defined
 			while(!dataStructureDefined) {
@@ -260,7 +272,7 @@ public class PacketCsv extends Packet {
 				} catch (InterruptedException e) {
 					// stop and end this thread
 					NotificationsController.showVerboseForSeconds("The CSV Packet Processor thread is stopping.", 5, false);
-					try { reader.close(); } catch(Exception e1) { }
+					try { stream.close(); } catch(Exception e1) { }
 					return;
 				}
 			}
@@ -284,34 +296,65 @@ public class PacketCsv extends Packet {
 			t.setRepeats(false);
 			t.start();
 			
+			// look up the columns once, instead of for every line
+			Dataset[] datasets = DatasetsController.getAllDatasets();
+			int[] columns = new int[datasets.length];
+			for(int i = 0; i < datasets.length; i++)
+				columns[i] = datasets[i].location;
+			
+			// lines are parsed into a batch, and the whole batch is appended to the datasets at once
+			float[][] batch = new float[datasets.length][DatasetsController.BATCH_SIZE];
+			int batchCount = 0;
+			
+			// measure this stage of the pipeline
+			String source = CommunicationController.getPort();
+			MetricsController.Counter receivedBytes   = MetricsController.getCounter(source + " bytes received");
+			MetricsController.Counter receivedLines   = MetricsController.getCounter(source + " lines received");
+			MetricsController.Counter parseErrors     = MetricsController.getCounter(source + " CSV parse errors");
+			MetricsController.setGauge("Transport buffer bytes", () -> {
+				try { return stream.available(); } catch(IOException e) { return 0; }
+			});
+			
+			CsvTokenizer tokenizer = new CsvTokenizer(stream);
+			
 			// parse the telemetry
 			while(true) {
 				
 				try {
 					
 					// wait for text to arrive
-					while(!reader.ready())
-						Thread.sleep(1);
-					
-					// parse received text
-					String line = reader.readLine();
-					String[] tokens = line.split(",");
-					// ensure they can all be parsed as floats before populating the datasets
-					for(Dataset dataset : DatasetsController.getAllDatasets())
-						Float.parseFloat(tokens[dataset.location]);
-					for(Dataset dataset : DatasetsController.getAllDatasets())
-						dataset.add(Float.parseFloat(tokens[dataset.location]));
-					DatasetsController.incrementSampleCount();
+					int available = ByteRingBuffer.awaitAvailable(stream);
+					int byteCount = tokenizer.receive(available);
+					if(byteCount < 0)
+						throw new IOException();
+					receivedBytes.add(byteCount);
 					
-				} catch(NumberFormatException | NullPointerException | ArrayIndexOutOfBoundsException | SocketTimeoutException e1) {
-					
-					NotificationsController.showVerboseForSeconds("A corrupt or incomplete line was received.", 5, false);
+					// parse each complete line
+					while(tokenizer.nextLine()) {
+						try {
+							// the line is only added to the batch if every column can be parsed as a float
+							for(int i = 0; i < datasets.length; i++)
+								batch[i][batchCount] = tokenizer.getFloat(columns[i]);
+							batchCount++;
+							receivedLines.increment();
+						} catch(NumberFormatException e1) {
+							parseErrors.increment();
+							NotificationsController.showVerboseForSeconds("A corrupt or incomplete line was received.", 5, false);
+						}
+						if(batchCount == DatasetsController.BATCH_SIZE) {
+							DatasetsController.appendSamples(batch, null, batchCount);
+							batchCount = 0;
+						}
+					}
+					DatasetsController.appendSamples(batch, null, batchCount);
+					batchCount = 0;
 					
 				} catch(IOException | InterruptedException e2) {
 					
 					// stop and end this thread
+					MetricsController.remove("Transport buffer bytes");
 					NotificationsController.showVerboseForSeconds("The CSV Packet Processor thread is stopping.", 5, false);
-					try { reader.close(); } catch(Exception e) { }
+					try { stream.close(); } catch(Exception e) { }
 					return;
 					
 				}
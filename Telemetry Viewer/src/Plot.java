@@ -1,6 +1,8 @@
+import java.nio.FloatBuffer;
 import java.util.List;
 import java.util.Map;
 
+import com.jogamp.common.nio.Buffers;
 import com.jogamp.opengl.GL2ES3;
 
 public abstract class Plot {
@@ -115,6 +117,37 @@ public abstract class Plot {
 	 */
 	abstract TooltipInfo getTooltip(int mouseX, float plotWidth);
 	
+	/**
+	 * When there are more samples than pixels, the samples are drawn as a min/max envelope instead of drawing every sample.
+	 * This is used if there are more than this many samples per pixel.
+	 */
+	static final int ENVELOPE_SAMPLES_PER_PIXEL = 2;
+	
+	/**
+	 * Converts a min/max envelope into a line strip that draws a vertical line from the min to the max of each column.
+	 * 
+	 * @param envelope    The envelope, as {min0, max0, min1, max1, ...} from Dataset.getEnvelope(). Columns that are NaN are skipped.
+	 * @param columnX     The x-axis value of each column.
+	 * @return            Vertex buffer containing (x1,y1,...) The limit is set to the end of the vertices.
+	 */
+	static FloatBuffer getEnvelopeLineStrip(float[] envelope, float[] columnX) {
+		
+		FloatBuffer buffer = Buffers.newDirectFloatBuffer(2 * envelope.length);
+		
+		for(int column = 0; column < columnX.length; column++) {
+			float min = envelope[2 * column];
+			float max = envelope[2 * column + 1];
+			if(Float.isNaN(min))
+				continue;
+			buffer.put(columnX[column]).put(min);
+			buffer.put(columnX[column]).put(max);
+		}
+		
+		buffer.flip();
+		return buffer;
+		
+	}
+	
 	final int getPlotSampleCount() { return plotSampleCount; }
 	
 	static class TooltipInfo {
@@ -15,6 +15,7 @@ public class PlotMilliseconds extends Plot {
 	// for non-cached mode
 	FloatBuffer   bufferX;
 	FloatBuffer[] buffersY;
+	FloatBuffer[] envelopesXy; // null unless there are more samples than pixels
 	
 	// for cached mode
 	CachedModeDraw draw1 = new CachedModeDraw();
@@ -114,11 +115,7 @@ public class PlotMilliseconds extends Plot {
 		maxSampleNumber = lastSampleNumber;
 		minSampleNumber = maxSampleNumber - 1;
 		long startTimestamp = DatasetsController.getTimestamp(maxSampleNumber) - plotDomain;
-		for(int sampleN = maxSampleNumber - 1; sampleN >= 0; sampleN--) { // FIXME change this to a binary search?
-			minSampleNumber = sampleN;
-			if(DatasetsController.getTimestamp(sampleN) < startTimestamp)
-				break;
-		}
+		minSampleNumber = Integer.max(0, DatasetsController.getFirstSampleNumberAtOrAfter(startTimestamp, 0, maxSampleNumber - 1) - 1);
 		
 		// calculate the domain
 		plotMaxX = DatasetsController.getTimestamp(maxSampleNumber);
@@ -328,13 +325,42 @@ public class PlotMilliseconds extends Plot {
 	@Override public void acquireSamplesNonCachedMode(float plotMinY, float plotMaxY, int plotWidth, int plotHeight) {
 		
 		events = new BitfieldEvents(true, true, bitfieldEdges, bitfieldLevels, minSampleNumber, maxSampleNumber);
-			
-		bufferX = DatasetsController.getTimestampsBuffer(minSampleNumber, maxSampleNumber, plotMinX);
 		
-		buffersY = new FloatBuffer[datasets.size()];
-		for(int datasetN = 0; datasetN < datasets.size(); datasetN++)
-			if(!datasets.get(datasetN).isBitfield)
-				buffersY[datasetN] = datasets.get(datasetN).getBuffer(minSampleNumber, maxSampleNumber);
+		// if there are more samples than pixels, only acquire the min/max envelope of each pixel column
+		if(plotSampleCount > ENVELOPE_SAMPLES_PER_PIXEL * plotWidth) {
+			
+			// each column covers an equal amount of time, so find the first sample in each column
+			// the extra column at the start only contains the sample before plotMinX (if any), so the envelope continues off the left edge like the line does
+			int[] columnFirstSampleNumbers = new int[plotWidth + 1];
+			float[] columnX = new float[plotWidth + 1];
+			columnFirstSampleNumbers[0] = minSampleNumber;
+			columnX[0] = (float) (DatasetsController.getTimestamp(minSampleNumber) - plotMinX);
+			int sampleNumber = minSampleNumber;
+			for(int column = 0; column < plotWidth; column++) {
+				long columnStartTimestamp = plotMinX + (long) Math.ceil((double) column * plotDomain / plotWidth);
+				sampleNumber = DatasetsController.getFirstSampleNumberAtOrAfter(columnStartTimestamp, sampleNumber, maxSampleNumber);
+				columnFirstSampleNumbers[column + 1] = sampleNumber;
+				columnX[column + 1] = (float) ((column + 0.5) * plotDomain / plotWidth);
+			}
+			
+			bufferX = null;
+			buffersY = null;
+			envelopesXy = new FloatBuffer[datasets.size()];
+			for(int datasetN = 0; datasetN < datasets.size(); datasetN++)
+				if(!datasets.get(datasetN).isBitfield)
+					envelopesXy[datasetN] = getEnvelopeLineStrip(datasets.get(datasetN).getEnvelope(columnFirstSampleNumbers, maxSampleNumber), columnX);
+					
+		} else {
+			
+			envelopesXy = null;
+			bufferX = DatasetsController.getTimestampsBuffer(minSampleNumber, maxSampleNumber, plotMinX);
+			
+			buffersY = new FloatBuffer[datasets.size()];
+			for(int datasetN = 0; datasetN < datasets.size(); datasetN++)
+				if(!datasets.get(datasetN).isBitfield)
+					buffersY[datasetN] = datasets.get(datasetN).getBuffer(minSampleNumber, maxSampleNumber);
+					
+		}
 		
 	}
 	
@@ -396,12 +422,7 @@ public class PlotMilliseconds extends Plot {
 		} else {
 			
 			// 2 draw calls required because we need to wrap around the ring buffer
-			int midSampleNumber = firstSampleNumber;
-			for(int sampleN = firstSampleNumber + 1; sampleN <= lastSampleNumber; sampleN++) {
-				midSampleNumber++;
-				if(DatasetsController.getTimestamp(sampleN) > fbRightTimestamp)
-					break;
-			}
+			int midSampleNumber = Integer.min(lastSampleNumber, DatasetsController.getFirstSampleNumberAtOrAfter(fbRightTimestamp + 1, firstSampleNumber + 1, lastSampleNumber));
 			long leftTimestamp  = Long.max(plotMinX,         DatasetsController.getTimestamp(firstSampleNumber));
 			long rightTimestamp = Long.min(fbRightTimestamp, DatasetsController.getTimestamp(midSampleNumber));
 			draw1.enableAndAcquire(datasets, firstSampleNumber, midSampleNumber, leftTimestamp, rightTimestamp, plotWidth, plotHeight);
@@ -471,14 +492,10 @@ public class PlotMilliseconds extends Plot {
 		long extraMillisecondsNeeded = (int) Math.ceil(millisecondsPerPixel * Theme.lineWidth);
 		long requiredTimestamp = DatasetsController.getTimestamp(sampleNumber) - extraMillisecondsNeeded;
 		
-		int extraSamplesNeeded = 0;
-		for(int sampleN = sampleNumber; sampleN >= 0; sampleN--) {
-			extraSamplesNeeded++;
-			if(DatasetsController.getTimestamp(sampleN) < requiredTimestamp)
-				break;
-		}
+		// include the last sample before the required timestamp
+		int firstSampleNumber = Integer.max(0, DatasetsController.getFirstSampleNumberAtOrAfter(requiredTimestamp, 0, sampleNumber) - 1);
 		
-		return extraSamplesNeeded;
+		return sampleNumber - firstSampleNumber + 1;
 		
 	}
 	
@@ -493,16 +510,15 @@ public class PlotMilliseconds extends Plot {
 		
 		double millisecondsPerPixel = (double) plotDomain / (double) plotWidth;
 		long extraMillisecondsNeeded = (int) Math.ceil(millisecondsPerPixel * Theme.lineWidth);
+		if(sampleNumber > maxSampleNumber)
+			return 0;
+		
 		long requiredTimestamp = DatasetsController.getTimestamp(sampleNumber) + extraMillisecondsNeeded;
 		
-		int extraSamplesNeeded = 0;
-		for(int sampleN = sampleNumber; sampleN <= maxSampleNumber; sampleN++) {
-			extraSamplesNeeded++;
-			if(DatasetsController.getTimestamp(sampleN) > requiredTimestamp)
-				break;
-		}
+		// include the first sample after the required timestamp
+		int lastSampleNumber = Integer.min(maxSampleNumber, DatasetsController.getFirstSampleNumberAtOrAfter(requiredTimestamp + 1, sampleNumber, maxSampleNumber));
 		
-		return extraSamplesNeeded;
+		return lastSampleNumber - sampleNumber + 1;
 		
 	}
 	
@@ -544,6 +560,12 @@ public class PlotMilliseconds extends Plot {
 				if(datasets.get(i).isBitfield)
 					continue;
 				
+				// draw the min/max envelope if there are more samples than pixels
+				if(envelopesXy != null) {
+					OpenGL.drawLinesXy(gl, GL3.GL_LINE_STRIP, datasets.get(i).glColor, envelopesXy[i], envelopesXy[i].limit() / 2);
+					continue;
+				}
+				
 				OpenGL.drawLinesX_Y(gl, GL3.GL_LINE_STRIP, datasets.get(i).glColor, bufferX, buffersY[i], plotSampleCount);
 				
 				// also draw points if there are relatively few samples on screen
@@ -712,12 +734,7 @@ public class PlotMilliseconds extends Plot {
 			if(mouseTimestamp < DatasetsController.getFirstTimestamp())
 				return new TooltipInfo(false, 0, "", 0);
 			
-			int closestSampleNumberBefore = maxSampleNumber;
-			for(int sampleN = maxSampleNumber - 1; sampleN >= 0; sampleN--) { // FIXME change this to a binary search?
-				closestSampleNumberBefore = sampleN;
-				if(DatasetsController.getTimestamp(sampleN) < mouseTimestamp)
-					break;
-			}
+			int closestSampleNumberBefore = Integer.max(0, DatasetsController.getFirstSampleNumberAtOrAfter(mouseTimestamp, 0, maxSampleNumber - 1) - 1);
 			int closestSampleNumberAfter = closestSampleNumberBefore + 1;
 			if(closestSampleNumberAfter > maxSampleNumber)
 				closestSampleNumberAfter = maxSampleNumber;
@@ -11,6 +11,7 @@ public class PlotSampleCount extends Plot {
 	
 	// for non-cached mode
 	FloatBuffer[] buffersY;
+	FloatBuffer[] envelopesXy; // null unless there are more samples than pixels
 	
 	// for cached mode
 	CachedModeDraw draw1 = new CachedModeDraw();
@@ -171,10 +172,33 @@ public class PlotSampleCount extends Plot {
 		
 		events = new BitfieldEvents(true, false, bitfieldEdges, bitfieldLevels, minSampleNumber, maxSampleNumber);
 		
-		buffersY = new FloatBuffer[datasets.size()];
-		for(int datasetN = 0; datasetN < datasets.size(); datasetN++)
-			if(!datasets.get(datasetN).isBitfield)
-				buffersY[datasetN] = datasets.get(datasetN).getBuffer(minSampleNumber, maxSampleNumber);
+		// if there are more samples than pixels, only acquire the min/max envelope of each pixel column
+		if(plotSampleCount > ENVELOPE_SAMPLES_PER_PIXEL * plotWidth) {
+			
+			int[] columnFirstSampleNumbers = new int[plotWidth];
+			float[] columnX = new float[plotWidth];
+			for(int column = 0; column < plotWidth; column++)
+				columnFirstSampleNumbers[column] = minSampleNumber + (int) ((long) column * plotSampleCount / plotWidth);
+			for(int column = 0; column < plotWidth; column++) {
+				int lastSampleNumberInColumn = (column == plotWidth - 1) ? maxSampleNumber : columnFirstSampleNumbers[column + 1] - 1;
+				columnX[column] = (columnFirstSampleNumbers[column] + lastSampleNumberInColumn) / 2f - plotMinX;
+			}
+			
+			buffersY = null;
+			envelopesXy = new FloatBuffer[datasets.size()];
+			for(int datasetN = 0; datasetN < datasets.size(); datasetN++)
+				if(!datasets.get(datasetN).isBitfield)
+					envelopesXy[datasetN] = getEnvelopeLineStrip(datasets.get(datasetN).getEnvelope(columnFirstSampleNumbers, maxSampleNumber), columnX);
+					
+		} else {
+			
+			envelopesXy = null;
+			buffersY = new FloatBuffer[datasets.size()];
+			for(int datasetN = 0; datasetN < datasets.size(); datasetN++)
+				if(!datasets.get(datasetN).isBitfield)
+					buffersY[datasetN] = datasets.get(datasetN).getBuffer(minSampleNumber, maxSampleNumber);
+					
+		}
 		
 	}
 	
@@ -332,6 +356,12 @@ public class PlotSampleCount extends Plot {
 				// do not draw bitfields
 				if(datasets.get(i).isBitfield)
 					continue;
+				
+				// draw the min/max envelope if there are more samples than pixels
+				if(envelopesXy != null) {
+					OpenGL.drawLinesXy(gl, GL3.GL_LINE_STRIP, datasets.get(i).glColor, envelopesXy[i], envelopesXy[i].limit() / 2);
+					continue;
+				}
 
 				OpenGL.drawLinesY(gl, GL3.GL_LINE_STRIP, datasets.get(i).glColor, buffersY[i], plotSampleCount, (int) (plotMinX >= 0 ? 0 : plotMinX * -1));
 				
@@ -16,6 +16,8 @@ public abstract class PositionedChart {
 	List<Dataset.Bitfield.State> bitfieldLevels;
 	Widget[] widgets;
 	
+	private MetricsController.Histogram drawChartTime;
+	
 	public PositionedChart(int x1, int y1, int x2, int y2) {
 		
 		topLeftX     = x1 < x2 ? x1 : x2;
@@ -72,6 +74,18 @@ public abstract class PositionedChart {
 	
 	public abstract String toString();
 	
+	/**
+	 * @return    The histogram of CPU times for drawChart(), for the performance HUD.
+	 */
+	final public MetricsController.Histogram getDrawChartTime() {
+		
+		if(drawChartTime == null)
+			drawChartTime = MetricsController.getHistogram("Chart " + toString() + " at (" + topLeftX + "," + topLeftY + ") drawChart() CPU time");
+		
+		return drawChartTime;
+		
+	}
+	
 	/**
 	 * Schedules the chart to be disposed.
 	 * Non-GPU resources (cache files, etc.) will be released immediately.
@@ -81,6 +95,8 @@ public abstract class PositionedChart {
 		
 		disposeNonGpu();
 		OpenGLChartsView.instance.chartsToDispose.add(this);
+		if(drawChartTime != null)
+			MetricsController.remove(drawChartTime.name);
 		
 	}
 	
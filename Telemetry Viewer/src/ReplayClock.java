@@ -0,0 +1,78 @@
+/**
+ * The playback position of a log file that is being replayed, so a replay can run at any speed, be paused, or seek.
+ * 
+ * The position is a file timestamp (milliseconds since 1970-01-01, like the timestamps in the file) that advances with the wall-clock time.
+ * The wall-clock time is measured with System.nanoTime(), so pacing is not limited to millisecond resolution and is not affected by changes to the system clock.
+ * 
+ * This class is thread-safe: the file import thread reads the position while the GUI changes the speed or seeks.
+ */
+public class ReplayClock {
+	
+	private long anchorNanoTime;     // wall-clock time when the speed or position last changed
+	private double anchorTimestamp;  // position at anchorNanoTime
+	private double speed;            // 1.0 = real time, 0 = paused
+	
+	/**
+	 * @param timestamp    Initial position.
+	 * @param speed        Speed multiplier. 1.0 = real time, 0 = paused.
+	 */
+	public ReplayClock(long timestamp, double speed) {
+		
+		anchorNanoTime = System.nanoTime();
+		anchorTimestamp = timestamp;
+		this.speed = speed;
+		
+	}
+	
+	/**
+	 * @return    The current position, as a file timestamp.
+	 */
+	public synchronized double getTimestamp() {
+		
+		return anchorTimestamp + (System.nanoTime() - anchorNanoTime) / 1000000.0 * speed;
+		
+	}
+	
+	/**
+	 * Changes the speed without changing the current position.
+	 * 
+	 * @param newSpeed    Speed multiplier. 1.0 = real time, 0 = paused.
+	 */
+	public synchronized void setSpeed(double newSpeed) {
+		
+		long now = System.nanoTime();
+		anchorTimestamp += (now - anchorNanoTime) / 1000000.0 * speed;
+		anchorNanoTime = now;
+		speed = newSpeed;
+		
+	}
+	
+	/**
+	 * Moves the position without changing the speed.
+	 * 
+	 * @param timestamp    New position, as a file timestamp.
+	 */
+	public synchronized void seek(long timestamp) {
+		
+		anchorNanoTime = System.nanoTime();
+		anchorTimestamp = timestamp;
+		
+	}
+	
+	/**
+	 * @param timestamp    A file timestamp.
+	 * @return             Number of nanoseconds until the position reaches the timestamp, 0 if it already has, or Long.MAX_VALUE if paused.
+	 */
+	public synchronized long getNanosecondsUntil(long timestamp) {
+		
+		double milliseconds = timestamp - getTimestamp();
+		if(milliseconds <= 0)
+			return 0;
+		if(speed == 0)
+			return Long.MAX_VALUE;
+		
+		return (long) Math.min(milliseconds * 1000000.0 / speed, Long.MAX_VALUE);
+		
+	}
+	
+}
@@ -0,0 +1,166 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Saves and reopens sessions in a native binary format, which is much faster than exporting and importing a CSV file.
+ * 
+ * The file contains:
+ *     A header: magic number, version, byte order, sample count, dataset count, and the settings text (the same text as a settings file.)
+ *     Padding, so the samples start at a multiple of the page size.
+ *     The samples, min/max pyramids, timestamps and bitfield state transitions, as written by DatasetsController.writeSamples().
+ * 
+ * The samples are stored with the same layout they have in the cache files, so they are written with large sequential writes,
+ * and reopening a session just memory-maps them (read-only.) The charts can be used immediately, and the OS pages samples in as they are needed.
+ * The bitfield state transitions are saved too, so reopening never has to read every sample to find them.
+ * Values are stored in the native byte order, so a session can only be reopened on a computer with the same byte order.
+ */
+public class SessionFile {
+	
+	public static final String EXTENSION = ".tvs";
+	
+	private static final long MAGIC_NUMBER = 0x5456536573736E31L; // "TVSessn1"
+	private static final int VERSION = 2;
+	private static final int HEADER_BYTE_COUNT = 8 + 4 + 4 + 4 + 4 + 4; // magic number, version, byte order, sample count, dataset count, settings text byte count
+	private static final int PAGE_SIZE = 4096;
+	
+	/**
+	 * Saves the settings and all samples.
+	 * 
+	 * The session is written to a temporary file in the same directory, which then replaces the target file.
+	 * The target may be the session file that is currently open (memory-mapped), and truncating that file would destroy the samples that are being saved.
+	 * Replacing it leaves the open file's contents in place until it is unmapped.
+	 * 
+	 * @param filepath           Full path with file name.
+	 * @param settings           The settings text, so the data structure and charts can be restored.
+	 * @param progressTracker    Consumer<Double> that will be notified as progress is made. (0.0 = 0%, 1.0 = 100%.)
+	 * @throws IOException       If the file can not be written.
+	 */
+	public static void export(String filepath, String settings, Consumer<Double> progressTracker) throws IOException {
+		
+		int sampleCount = DatasetsController.getSampleCount();
+		byte[] settingsBytes = settings.getBytes(StandardCharsets.UTF_8);
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTE_COUNT + settingsBytes.length).order(ByteOrder.BIG_ENDIAN);
+		header.putLong(MAGIC_NUMBER);
+		header.putInt(VERSION);
+		header.putInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1);
+		header.putInt(sampleCount);
+		header.putInt(DatasetsController.getDatasetsCount());
+		header.putInt(settingsBytes.length);
+		header.put(settingsBytes);
+		header.flip();
+		
+		Path target = Paths.get(filepath).toAbsolutePath();
+		Path temporary = Paths.get(target + ".tmp"); // not Files.createTempFile(), because that would make the session file only readable by its owner
+		try {
+			FileChannel file = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+			try {
+				DatasetsController.writeFully(file, header, 0);
+				DatasetsController.writeSamples(file, getSamplesPosition(settingsBytes.length), sampleCount, progressTracker);
+				file.force(false);
+			} finally {
+				file.close();
+			}
+			Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			Files.deleteIfExists(temporary);
+		}
+		
+	}
+	
+	/**
+	 * Reads the settings from a session file, so the data structure and charts can be restored before the samples are opened.
+	 * 
+	 * @param filepath       Full path with file name.
+	 * @return               The lines of settings text.
+	 * @throws IOException   If the file can not be read, or is not a session file, or was saved on a computer with a different byte order.
+	 */
+	public static List<String> readSettings(String filepath) throws IOException {
+		
+		FileChannel file = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = readHeader(file);
+			byte[] settingsBytes = new byte[header.getInt(HEADER_BYTE_COUNT - 4)];
+			ByteBuffer buffer = ByteBuffer.wrap(settingsBytes);
+			while(buffer.hasRemaining())
+				if(file.read(buffer, HEADER_BYTE_COUNT + buffer.position()) < 0)
+					throw new IOException("The session file is incomplete.");
+			return Arrays.asList(new String(settingsBytes, StandardCharsets.UTF_8).split("\r?\n"));
+		} finally {
+			file.close();
+		}
+		
+	}
+	
+	/**
+	 * Replaces all samples with the samples in a session file, by memory-mapping them.
+	 * The settings must have already been restored with readSettings(), and all samples must have already been removed.
+	 * 
+	 * @param filepath       Full path with file name.
+	 * @throws IOException   If the file can not be read, or does not match the current data structure.
+	 */
+	public static void open(String filepath) throws IOException {
+		
+		FileChannel file = FileChannel.open(Paths.get(filepath), StandardOpenOption.READ);
+		try {
+			ByteBuffer header = readHeader(file);
+			int sampleCount       = header.getInt(16);
+			int datasetCount      = header.getInt(20);
+			int settingsByteCount = header.getInt(24);
+			if(datasetCount != DatasetsController.getDatasetsCount())
+				throw new IOException("The session file does not match the current data structure.");
+			DatasetsController.mapSamples(file, getSamplesPosition(settingsByteCount), sampleCount);
+		} finally {
+			file.close(); // the mappings remain valid
+		}
+		
+	}
+	
+	/**
+	 * Reads and checks the header.
+	 * 
+	 * @param file           The session file.
+	 * @return               The header, without the settings text.
+	 * @throws IOException   If the file can not be read, or is not a session file, or was saved on a computer with a different byte order.
+	 */
+	private static ByteBuffer readHeader(FileChannel file) throws IOException {
+		
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTE_COUNT).order(ByteOrder.BIG_ENDIAN);
+		while(header.hasRemaining())
+			if(file.read(header, header.position()) < 0)
+				throw new IOException("The file is not a session file.");
+		
+		if(header.getLong(0) != MAGIC_NUMBER)
+			throw new IOException("The file is not a session file.");
+		if(header.getInt(8) != VERSION)
+			throw new IOException("The session file was saved by an incompatible version of Telemetry Viewer.");
+		if(header.getInt(12) != (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 0 : 1))
+			throw new IOException("The session file was saved on a computer with a different byte order. Export it as a CSV file instead.");
+		
+		return header;
+		
+	}
+	
+	/**
+	 * @param settingsByteCount    Size of the settings text.
+	 * @return                     Where the samples start, after the header and padding.
+	 */
+	private static long getSamplesPosition(int settingsByteCount) {
+		
+		long headerEnd = HEADER_BYTE_COUNT + settingsByteCount;
+		return (headerEnd + PAGE_SIZE - 1) / PAGE_SIZE * PAGE_SIZE;
+		
+	}
+	
+}
@@ -41,6 +41,9 @@ public class SettingsController {
 	// if the FPS and period should be drawn
 	private static boolean fpsVisibility = false;
 	
+	// if the performance HUD (pipeline metrics) should be drawn
+	private static boolean hudVisibility = false;
+	
 	// which chart to measure for CPU/GPU times, or null to not measure
 	private static PositionedChart chartForBenchmarks = null;
 	private static boolean awaitingChartForBenchmark = false;
@@ -300,6 +303,27 @@ public class SettingsController {
 		
 	}
 	
+	/**
+	 * Changes the performance HUD visibility.
+	 * 
+	 * @param value    True to enable, false to disable.
+	 */
+	public static void setHudVisibility(boolean value) {
+		
+		hudVisibility = value;
+		SettingsView.instance.showHudCheckbox.setSelected(value);
+		
+	}
+	
+	/**
+	 * @return    True if the performance HUD should be drawn.
+	 */
+	public static boolean getHudVisibility() {
+		
+		return hudVisibility;
+		
+	}
+	
 	/**
 	 * Call this function to indicate that the a chart needs to be selected for benchmarking.
 	 */
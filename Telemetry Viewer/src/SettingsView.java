@@ -31,6 +31,7 @@ public class SettingsView extends JPanel {
 	JCheckBox enableSmoothScrollingCheckbox;
 	JSlider   antialiasingLevelSlider;
 	JCheckBox showFpsCheckbox;
+	JCheckBox showHudCheckbox;
 	JCheckBox showBenchmarksCheckbox;
 	
 	Dimension preferredSize;
@@ -116,6 +117,13 @@ public class SettingsView extends JPanel {
 		
 		add(showFpsCheckbox, "span 2");
 		
+		// performance HUD
+		showHudCheckbox = new JCheckBox("Show Performance HUD", SettingsController.getHudVisibility());
+		showHudCheckbox.setAlignmentX(Component.LEFT_ALIGNMENT);
+		showHudCheckbox.addActionListener(event -> SettingsController.setHudVisibility(showHudCheckbox.isSelected()));
+		
+		add(showHudCheckbox, "span 2");
+		
 		// CPU and GPU times
 		showBenchmarksCheckbox = new JCheckBox("Show Chart Benchmarks", SettingsController.getBenchmarkedChart() != null);		
 		showBenchmarksCheckbox.setAlignmentX(Component.LEFT_ALIGNMENT);
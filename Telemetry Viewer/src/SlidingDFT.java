@@ -0,0 +1,128 @@
+/**
+ * Maintains the DFT of the most recent samples of one dataset, for the "Live View" frequency domain chart.
+ * 
+ * When only a few new samples have arrived since the previous update, each bin is updated with the sliding DFT recurrence:
+ *     X[k] = (X[k] - oldestSample + newestSample) * e^(2*pi*i*k/N)
+ * For M new samples that costs M*binCount bin updates, so it is only used when that is cheaper than an FFT of the whole window (about N*log2(N) butterflies,
+ * or much more for a length that needs Bluestein's algorithm.) For a power-of-two window the break-even point is around M = 6*log2(N),
+ * but for a window length that is a large prime number it can be hundreds of samples per update.
+ * Otherwise, and periodically to prevent rounding errors from accumulating, the DFT is recalculated from scratch with an FFT.
+ */
+public class SlidingDFT {
+	
+	final int length;
+	final int binCount;
+	
+	private static final double BUTTERFLY_COST = 3; // an FFT butterfly costs about as much as this many bin updates of the recurrence (measured with HotSpot on x86-64)
+	
+	private final FFT fft;
+	private final int maxSlidingSampleCount; // if more samples than this arrive between updates, an FFT is cheaper
+	private final double[] rotationRe;       // rotation[k] = e^(2*pi*i*k/length)
+	private final double[] rotationIm;
+	private final double[] re;               // the current DFT bins
+	private final double[] im;
+	
+	private int lastSampleNumber = -1;
+	private int epoch = 0;
+	private int slidSampleCount = 0;         // number of samples applied with the recurrence since the last FFT
+	
+	/**
+	 * Creates an empty sliding DFT. The first call to update() will calculate the DFT with an FFT.
+	 * 
+	 * @param fft         FFT to use when recalculating the DFT. Its length is the window length.
+	 * @param binCount    Number of bins to maintain, starting with DC.
+	 */
+	public SlidingDFT(FFT fft, int binCount) {
+		
+		this.fft = fft;
+		this.length = fft.length;
+		this.binCount = binCount;
+		
+		// M new samples cost M*binCount bin updates, while an FFT costs its butterflies plus copying the window into it
+		maxSlidingSampleCount = (int) ((BUTTERFLY_COST * fft.getCost() + length) / binCount);
+		
+		rotationRe = new double[binCount];
+		rotationIm = new double[binCount];
+		for(int k = 0; k < binCount; k++) {
+			double angle = 2.0 * Math.PI * k / length;
+			rotationRe[k] = Math.cos(angle);
+			rotationIm[k] = Math.sin(angle);
+		}
+		
+		re = new double[binCount];
+		im = new double[binCount];
+		
+	}
+	
+	/**
+	 * Updates the DFT so it covers the window of samples ending at lastSampleNumber.
+	 * 
+	 * @param dataset             The dataset to transform.
+	 * @param lastSampleNumber    The last sample number in the window. Must be >= length - 1.
+	 */
+	public void update(Dataset dataset, int lastSampleNumber) {
+		
+		int newSampleCount = lastSampleNumber - this.lastSampleNumber;
+		
+		// nothing to do if the window has not moved
+		if(newSampleCount == 0 && epoch == DatasetsController.getEpoch())
+			return;
+		
+		// recalculate from scratch if this is the first update, or the window moved backwards or too far, or the data was replaced
+		boolean recalculate = this.lastSampleNumber < 0 ||
+		                      newSampleCount < 0 ||
+		                      newSampleCount > maxSlidingSampleCount ||
+		                      slidSampleCount + newSampleCount > length ||
+		                      epoch != DatasetsController.getEpoch();
+		
+		if(recalculate) {
+			
+			float[] samples = dataset.getSamplesArray(lastSampleNumber - length + 1, lastSampleNumber);
+			double[] fftRe = new double[length];
+			double[] fftIm = new double[length];
+			for(int i = 0; i < length; i++)
+				fftRe[i] = samples[i];
+			fft.transform(fftRe, fftIm);
+			System.arraycopy(fftRe, 0, re, 0, binCount);
+			System.arraycopy(fftIm, 0, im, 0, binCount);
+			slidSampleCount = 0;
+			
+		} else {
+			
+			for(int sampleNumber = this.lastSampleNumber + 1; sampleNumber <= lastSampleNumber; sampleNumber++) {
+				double delta = dataset.getSample(sampleNumber) - dataset.getSample(sampleNumber - length);
+				for(int k = 0; k < binCount; k++) {
+					double r = re[k] + delta;
+					double i = im[k];
+					re[k] = r * rotationRe[k] - i * rotationIm[k];
+					im[k] = r * rotationIm[k] + i * rotationRe[k];
+				}
+			}
+			slidSampleCount += newSampleCount;
+			
+		}
+		
+		this.lastSampleNumber = lastSampleNumber;
+		epoch = DatasetsController.getEpoch();
+		
+	}
+	
+	/**
+	 * Converts each bin into a power level, assuming the samples are in Volts, and assuming the load is a unit load (1 ohm.)
+	 * 
+	 * @return    The power level of each bin, in Watts.
+	 */
+	public double[] getPowerLevels() {
+		
+		double[] powerW = new double[binCount];
+		for(int bin = 0; bin < binCount; bin++) {
+			double realV      = re[bin] / length;
+			double imaginaryV = im[bin] / length;
+			powerW[bin] = 2 * ((realV * realV) + (imaginaryV * imaginaryV)); // *2 because DFT is from -Fs to +Fs
+		}
+		
+		return powerW;
+		
+	}
+	
+}
@@ -0,0 +1,86 @@
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+/**
+ * Checks that CsvTokenizer.getFloat() always returns exactly what Float.parseFloat() returns, including for the numbers that are hardest to round.
+ */
+public class CsvTokenizerTest {
+	
+	/**
+	 * Parses each number as the only column of a line, and compares the bits of the result with Float.parseFloat().
+	 * 
+	 * @param numbers    The numbers, as text.
+	 */
+	private static void assertSameAsParseFloat(List<String> numbers) throws IOException {
+		
+		StringBuilder text = new StringBuilder();
+		for(String number : numbers)
+			text.append(number).append('\n');
+		CsvTokenizer tokenizer = new CsvTokenizer(ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.US_ASCII)));
+		
+		for(String number : numbers) {
+			tokenizer.readLine();
+			float expected = Float.parseFloat(number);
+			float actual = tokenizer.getFloat(0);
+			assertEquals(number, Float.floatToRawIntBits(expected), Float.floatToRawIntBits(actual));
+		}
+		
+	}
+	
+	@Test public void typicalTelemetry() throws IOException {
+		
+		List<String> numbers = new ArrayList<String>();
+		Random random = new Random(0);
+		for(int i = 0; i < 100000; i++) {
+			int digits = 1 + random.nextInt(8);
+			int decimals = random.nextInt(digits + 1);
+			long mantissa = (long) (random.nextDouble() * Math.pow(10, digits));
+			String number = BigDecimal.valueOf(mantissa, decimals).toPlainString();
+			numbers.add(random.nextBoolean() ? number : "-" + number);
+		}
+		assertSameAsParseFloat(numbers);
+		
+	}
+	
+	@Test public void roundingMidpoints() throws IOException {
+		
+		// the numbers halfway between two adjacent floats, and the numbers just above and below them, with 6 to 17 significant digits
+		List<String> numbers = new ArrayList<String>();
+		Random random = new Random(0);
+		for(int i = 0; i < 20000; i++) {
+			float f = Float.intBitsToFloat(random.nextInt(0x7F000000)); // any positive finite float
+			BigDecimal midpoint = new BigDecimal(f).add(new BigDecimal(Math.nextUp(f))).divide(BigDecimal.valueOf(2));
+			int digits = 6 + random.nextInt(12);
+			numbers.add(midpoint.round(new MathContext(digits)).toString());
+			numbers.add(midpoint.round(new MathContext(digits)).toPlainString());
+			numbers.add(Double.toString(midpoint.doubleValue()));
+			numbers.add(Double.toString(Math.nextUp(midpoint.doubleValue())));
+			numbers.add(Double.toString(Math.nextDown(midpoint.doubleValue())));
+		}
+		numbers.add("51.32668495178223");
+		assertSameAsParseFloat(numbers);
+		
+	}
+	
+	@Test public void unusualNumbers() throws IOException {
+		
+		List<String> numbers = new ArrayList<String>();
+		String[] values = {"0", "-0", "+0", "0.0", "-0.0", "1", "16777216", "16777217", "16777218", "0.1", "1e10", "1e-10", "1e11", "1e-11",
+		                   "1.5E3", "1.5e+3", "2.5e-3", "123456789012345678901234567890", "0.000000000000000000000000000001",
+		                   "3.4028235e38", "3.4028236e38", "1e39", "1.4e-45", "7e-46", "1e-50", ".5", "5.", "-.5", "NaN", "Infinity", "-Infinity"};
+		for(String value : values)
+			numbers.add(value);
+		assertSameAsParseFloat(numbers);
+		
+	}
+	
+}